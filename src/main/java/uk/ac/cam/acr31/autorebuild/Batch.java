@@ -0,0 +1,219 @@
+/*
+ * Copyright © 2019 Andrew Rice (acr31@cam.ac.uk)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.ac.cam.acr31.autorebuild;
+
+import com.google.auto.value.AutoValue;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import uk.ac.cam.acr31.autorebuild.clazzinfo.ClassFile;
+import uk.ac.cam.acr31.autorebuild.metrics.Metrics;
+
+// Rebuilds many projects which share third party libraries. The library roots are scanned once into
+// an index that every project searches alongside its own classes, and the projects are rebuilt
+// concurrently, each with its own repository.
+public class Batch {
+
+  private static final String USAGE =
+      "Usage: Batch [--library=<dir>]... [--threads=<count>]"
+          + " [--strategy=greedy|minimal_closure] [--metrics-json=<file>] <manifest>";
+
+  @AutoValue
+  abstract static class Project {
+
+    abstract Path projectRoot();
+
+    abstract Path targetRoot();
+
+    static Project create(Path projectRoot, Path targetRoot) {
+      return new AutoValue_Batch_Project(projectRoot, targetRoot);
+    }
+  }
+
+  public static void main(String[] args) throws IOException {
+    List<Path> libraries = new ArrayList<>();
+    int threads = Runtime.getRuntime().availableProcessors();
+    SearchOptions.Builder searchOptions = SearchOptions.builder();
+    Path metricsJson = null;
+    List<String> positional = new ArrayList<>();
+    for (String arg : args) {
+      if (!arg.startsWith("--")) {
+        positional.add(arg);
+        continue;
+      }
+      int split = arg.indexOf('=');
+      if (split == -1) {
+        throw new IllegalArgumentException("Missing value for " + arg + "\n" + USAGE);
+      }
+      String name = arg.substring(2, split);
+      String value = arg.substring(split + 1);
+      switch (name) {
+        case "library":
+          libraries.add(Paths.get(value));
+          break;
+        case "threads":
+          threads = Integer.parseInt(value);
+          break;
+        case "strategy":
+          searchOptions.setStrategy(SearchOptions.Strategy.valueOf(value.toUpperCase()));
+          break;
+        case "metrics-json":
+          metricsJson = Paths.get(value);
+          break;
+        default:
+          throw new IllegalArgumentException("Unknown option " + arg + "\n" + USAGE);
+      }
+    }
+    if (positional.size() != 1) {
+      throw new IllegalArgumentException(USAGE);
+    }
+
+    ImmutableList<Project> projects = readManifest(Paths.get(positional.get(0)));
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    ImmutableMap<Project, SearchResult> results;
+    try {
+      results = rebuild(projects, libraries, searchOptions.build(), executor);
+    } finally {
+      executor.shutdownNow();
+    }
+    if (metricsJson != null) {
+      Metrics.global().writeJson(metricsJson);
+    }
+    if (results.size() != projects.size()) {
+      System.exit(1);
+    }
+  }
+
+  // Each line of the manifest is a project root and a target root separated by a tab
+  static ImmutableList<Project> readManifest(Path manifest) throws IOException {
+    ImmutableList.Builder<Project> projects = ImmutableList.builder();
+    try (BufferedReader r = Files.newBufferedReader(manifest, StandardCharsets.UTF_8)) {
+      String line;
+      while ((line = r.readLine()) != null) {
+        if (line.isEmpty()) {
+          continue;
+        }
+        List<String> fields = Splitter.on('\t').splitToList(line);
+        if (fields.size() != 2) {
+          throw new IllegalArgumentException("Invalid manifest entry: " + line);
+        }
+        projects.add(Project.create(Paths.get(fields.get(0)), Paths.get(fields.get(1))));
+      }
+    }
+    return projects.build();
+  }
+
+  // The results of the projects that were rebuilt. Failures are reported and left out.
+  static ImmutableMap<Project, SearchResult> rebuild(
+      List<Project> projects, List<Path> libraries, SearchOptions options, ExecutorService executor)
+      throws IOException {
+    long start = System.nanoTime();
+    StandardLibrary standardLibrary = new StandardLibrary();
+    ClassPathCache classPathCache = new ClassPathCache();
+
+    List<ClassFile> libraryClasses = new ArrayList<>();
+    Set<String> sharedDigests = new HashSet<>();
+    for (Path library : libraries) {
+      OriginalProject loaded =
+          OriginalProject.load(library, classPathCache, ScanOptions.defaults());
+      for (ClassFile classFile : loaded.classFiles()) {
+        if (sharedDigests.add(classFile.digest())) {
+          libraryClasses.add(classFile);
+        }
+      }
+    }
+    FrozenClassFileStore shared = FrozenClassFileStore.of(libraryClasses, standardLibrary);
+    System.out.printf(
+        "Scanned %d library classes in %d ms%n",
+        sharedDigests.size(), (System.nanoTime() - start) / 1_000_000);
+
+    Map<Project, Future<SearchResult>> futures = new LinkedHashMap<>();
+    for (Project project : projects) {
+      futures.put(
+          project,
+          executor.submit(
+              () ->
+                  rebuild(
+                      project, shared, sharedDigests, standardLibrary, classPathCache, options)));
+    }
+    ImmutableMap.Builder<Project, SearchResult> results = ImmutableMap.builder();
+    for (Map.Entry<Project, Future<SearchResult>> entry : futures.entrySet()) {
+      try {
+        results.put(entry.getKey(), entry.getValue().get());
+      } catch (ExecutionException e) {
+        System.out.printf("%s: failed %s%n", entry.getKey().projectRoot(), e.getCause());
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        break;
+      }
+    }
+    System.out.printf(
+        "Rebuilt %d projects in %d ms%n", projects.size(), (System.nanoTime() - start) / 1_000_000);
+    return results.build();
+  }
+
+  private static SearchResult rebuild(
+      Project project,
+      FrozenClassFileStore shared,
+      Set<String> sharedDigests,
+      StandardLibrary standardLibrary,
+      ClassPathCache classPathCache,
+      SearchOptions options)
+      throws IOException {
+    long start = System.nanoTime();
+    OriginalProject originalProject =
+        OriginalProject.load(project.projectRoot(), classPathCache, ScanOptions.defaults());
+    // Copies of the shared libraries inside the project would only be extra candidates
+    List<ClassFile> own = new ArrayList<>();
+    for (ClassFile classFile : originalProject.classFiles()) {
+      if (!sharedDigests.contains(classFile.digest())) {
+        own.add(classFile);
+      }
+    }
+    SearchResult result =
+        Searcher.search(
+            originalProject.generatedClasses(),
+            shared.layer(own, standardLibrary),
+            standardLibrary,
+            options);
+    TargetWriter.write(originalProject, result.repository(), project.targetRoot());
+    System.out.printf(
+        "%s: %d classes, %d unresolvable, %s in %d ms%n",
+        project.projectRoot(),
+        result.repository().classes().size(),
+        result.repository().unresolvable().size(),
+        result.stopReason().name().toLowerCase(),
+        (System.nanoTime() - start) / 1_000_000);
+    return result;
+  }
+}
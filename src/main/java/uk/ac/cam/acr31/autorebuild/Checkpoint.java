@@ -0,0 +1,140 @@
+/*
+ * Copyright © 2019 Andrew Rice (acr31@cam.ac.uk)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.ac.cam.acr31.autorebuild;
+
+import com.google.auto.value.AutoValue;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSetMultimap;
+import com.google.common.collect.ImmutableSortedSet;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.Set;
+import uk.ac.cam.acr31.autorebuild.clazzinfo.ClassFile;
+import uk.ac.cam.acr31.autorebuild.clazzinfo.Identifier;
+
+// The whole state of a search in progress, from which it can carry on where it left off. Unlike a
+// Solution this includes what is still unresolved and every version of a class still in contention.
+@AutoValue
+abstract class Checkpoint {
+
+  // descriptor -> digest of every class in the repository
+  abstract ImmutableSetMultimap<String, String> classes();
+
+  abstract ImmutableSet<Identifier> used();
+
+  // digest of a referring class -> the identifiers it uses
+  abstract ImmutableSetMultimap<String, Identifier> usedBy();
+
+  abstract ImmutableSet<Identifier> unresolved();
+
+  // digest of a referring class -> the identifiers it needs
+  abstract ImmutableSetMultimap<String, Identifier> unresolvedBy();
+
+  abstract ImmutableSortedSet<Identifier> unresolvable();
+
+  static Checkpoint of(
+      Iterable<ClassFile> classes,
+      IdentifierStore used,
+      IdentifierStore unresolved,
+      Set<Identifier> unresolvable) {
+    Builder builder = builder();
+    for (ClassFile classFile : classes) {
+      builder.classesBuilder().put(classFile.descriptor(), classFile.digest());
+    }
+    builder.usedBuilder().addAll(used.identifiers());
+    for (Map.Entry<Identifier, ClassFile> entry : used.referents().entries()) {
+      builder.usedByBuilder().put(entry.getValue().digest(), entry.getKey());
+    }
+    builder.unresolvedBuilder().addAll(unresolved.identifiers());
+    for (Map.Entry<Identifier, ClassFile> entry : unresolved.referents().entries()) {
+      builder.unresolvedByBuilder().put(entry.getValue().digest(), entry.getKey());
+    }
+    return builder.setUnresolvable(ImmutableSortedSet.copyOf(unresolvable)).build();
+  }
+
+  // Writes to a temporary file first so that a reader never sees a partly written checkpoint
+  void write(Path path) throws IOException {
+    Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+    try (PrintWriter w =
+        new PrintWriter(Files.newBufferedWriter(temporary, StandardCharsets.UTF_8))) {
+      for (Map.Entry<String, String> entry : classes().entries()) {
+        TabSeparated.write(w, "class", entry.getKey(), entry.getValue());
+      }
+      for (Identifier identifier : used()) {
+        TabSeparated.write(w, "used", identifier);
+      }
+      for (Map.Entry<String, Identifier> entry : usedBy().entries()) {
+        TabSeparated.write(w, "usedby", entry.getKey(), entry.getValue());
+      }
+      for (Identifier identifier : unresolved()) {
+        TabSeparated.write(w, "unresolved", identifier);
+      }
+      for (Map.Entry<String, Identifier> entry : unresolvedBy().entries()) {
+        TabSeparated.write(w, "unresolvedby", entry.getKey(), entry.getValue());
+      }
+      for (Identifier identifier : unresolvable()) {
+        TabSeparated.write(w, "unresolvable", identifier);
+      }
+    }
+    Files.move(
+        temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  static Checkpoint read(Path path) throws IOException {
+    Builder builder = builder();
+    ImmutableSortedSet.Builder<Identifier> unresolvable = ImmutableSortedSet.naturalOrder();
+    TabSeparated.reader("checkpoint")
+        .on("class", 3, f -> builder.classesBuilder().put(f.get(1), f.get(2)))
+        .on("used", 3, f -> builder.usedBuilder().add(TabSeparated.identifier(f, 1)))
+        .on("usedby", 4, f -> builder.usedByBuilder().put(f.get(1), TabSeparated.identifier(f, 2)))
+        .on("unresolved", 3, f -> builder.unresolvedBuilder().add(TabSeparated.identifier(f, 1)))
+        .on(
+            "unresolvedby",
+            4,
+            f -> builder.unresolvedByBuilder().put(f.get(1), TabSeparated.identifier(f, 2)))
+        .on("unresolvable", 3, f -> unresolvable.add(TabSeparated.identifier(f, 1)))
+        .read(path);
+    return builder.setUnresolvable(unresolvable.build()).build();
+  }
+
+  static Builder builder() {
+    return new AutoValue_Checkpoint.Builder();
+  }
+
+  @AutoValue.Builder
+  abstract static class Builder {
+
+    abstract ImmutableSetMultimap.Builder<String, String> classesBuilder();
+
+    abstract ImmutableSet.Builder<Identifier> usedBuilder();
+
+    abstract ImmutableSetMultimap.Builder<String, Identifier> usedByBuilder();
+
+    abstract ImmutableSet.Builder<Identifier> unresolvedBuilder();
+
+    abstract ImmutableSetMultimap.Builder<String, Identifier> unresolvedByBuilder();
+
+    abstract Builder setUnresolvable(ImmutableSortedSet<Identifier> unresolvable);
+
+    abstract Checkpoint build();
+  }
+}
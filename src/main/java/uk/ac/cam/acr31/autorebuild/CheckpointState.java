@@ -0,0 +1,93 @@
+/*
+ * Copyright © 2019 Andrew Rice (acr31@cam.ac.uk)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.ac.cam.acr31.autorebuild;
+
+import java.util.LinkedHashSet;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+import uk.ac.cam.acr31.autorebuild.clazzinfo.ClassFile;
+import uk.ac.cam.acr31.autorebuild.clazzinfo.Identifier;
+
+// A copy of the state a checkpoint records, kept in step with a repository by replaying the changes
+// made to it. The search thread only queues each change, and the thread writing checkpoints applies
+// them, so that taking a checkpoint never copies the whole repository on the search thread.
+final class CheckpointState {
+
+  // Marks the point in the changes that the next checkpoint is taken at
+  private static final Consumer<CheckpointState> MARK = state -> {
+  };
+
+  private final Queue<Consumer<CheckpointState>> changes = new ConcurrentLinkedQueue<>();
+
+  // Only used by the thread applying the changes
+  private final Set<ClassFile> classes;
+  private final IdentifierStore used;
+  private final IdentifierStore unresolved;
+  private final TreeSet<Identifier> unresolvable;
+
+  CheckpointState(
+      Iterable<ClassFile> classes,
+      IdentifierStore used,
+      IdentifierStore unresolved,
+      Set<Identifier> unresolvable) {
+    this.classes = new LinkedHashSet<>();
+    classes.forEach(this.classes::add);
+    this.used = used.copy();
+    this.unresolved = unresolved.copy();
+    this.unresolvable = new TreeSet<>(unresolvable);
+  }
+
+  void classAdded(ClassFile classFile) {
+    changes.add(state -> state.classes.add(classFile));
+  }
+
+  void classRemoved(ClassFile classFile) {
+    changes.add(state -> state.classes.remove(classFile));
+  }
+
+  void usedChanged(Consumer<IdentifierStore> change) {
+    changes.add(state -> change.accept(state.used));
+  }
+
+  void unresolvedChanged(Consumer<IdentifierStore> change) {
+    changes.add(state -> change.accept(state.unresolved));
+  }
+
+  void unresolvable(Identifier identifier) {
+    changes.add(state -> state.unresolvable.add(identifier));
+  }
+
+  // Called on the search thread between changes to the repository
+  void mark() {
+    changes.add(MARK);
+  }
+
+  // Applies the changes up to the oldest mark not yet captured and returns the state they leave
+  Checkpoint capture() {
+    Consumer<CheckpointState> change;
+    while ((change = changes.poll()) != MARK) {
+      if (change == null) {
+        throw new IllegalStateException("No checkpoint has been marked");
+      }
+      change.accept(this);
+    }
+    return Checkpoint.of(classes, used, unresolved, unresolvable);
+  }
+}
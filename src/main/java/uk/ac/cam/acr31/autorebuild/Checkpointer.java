@@ -0,0 +1,137 @@
+/*
+ * Copyright © 2019 Andrew Rice (acr31@cam.ac.uk)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.ac.cam.acr31.autorebuild;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import uk.ac.cam.acr31.autorebuild.metrics.Counter;
+import uk.ac.cam.acr31.autorebuild.metrics.Metrics;
+import uk.ac.cam.acr31.autorebuild.metrics.Timer;
+
+// Periodically writes checkpoints of a search. The search thread only marks the point in the
+// repository's changes to checkpoint at, and the writer thread brings its own copy of the state up
+// to that point and writes it out. If the last checkpoint is still being written when the next one
+// is due then the next one is skipped rather than making the search wait.
+class Checkpointer implements AutoCloseable {
+
+  private static final Counter WRITES =
+      Metrics.global().counter("checkpoint_writes", "Checkpoints written");
+  private static final Counter SKIPPED =
+      Metrics.global()
+          .counter("checkpoint_skipped", "Checkpoints skipped while the last was being written");
+  private static final Timer CAPTURE_TIME =
+      Metrics.global()
+          .timer("checkpoint_capture", "Time the search spent handing over a checkpoint");
+  private static final Timer WRITE_TIME =
+      Metrics.global()
+          .timer("checkpoint_write", "Time spent bringing a checkpoint up to date and writing it");
+
+  private final Optional<Path> path;
+  private final long intervalNanos;
+  private final ExecutorService writer;
+  private Optional<CheckpointState> state = Optional.empty();
+  private long lastCapture;
+  private Future<?> pending;
+
+  private Checkpointer(Optional<Path> path, Duration interval) {
+    this.path = path;
+    this.intervalNanos = interval.toNanos();
+    this.writer =
+        Executors.newSingleThreadExecutor(
+            runnable -> {
+              Thread thread = new Thread(runnable, "checkpoint-writer");
+              thread.setDaemon(true);
+              return thread;
+            });
+    this.lastCapture = System.nanoTime();
+  }
+
+  static Checkpointer create(SearchOptions options) {
+    return new Checkpointer(options.checkpoint(), options.checkpointInterval());
+  }
+
+  // Called from the search loop, which is cheap unless a checkpoint is due
+  void maybeCheckpoint(Repository repository) {
+    if (!path.isPresent()) {
+      return;
+    }
+    track(repository);
+    if (System.nanoTime() - lastCapture < intervalNanos) {
+      return;
+    }
+    if (pending != null && !pending.isDone()) {
+      SKIPPED.increment();
+      return;
+    }
+    submit();
+  }
+
+  // Writes the final state and waits for it to be on disk
+  void finish(Repository repository) {
+    if (!path.isPresent()) {
+      return;
+    }
+    track(repository);
+    submit();
+    try {
+      pending.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException e) {
+      throw new IllegalStateException(e.getCause());
+    }
+  }
+
+  // The repository is only copied in full the first time, after which its changes are followed
+  private void track(Repository repository) {
+    if (!state.isPresent()) {
+      state = Optional.of(repository.trackCheckpointState());
+    }
+  }
+
+  private void submit() {
+    long start = System.nanoTime();
+    CheckpointState checkpointState = state.get();
+    checkpointState.mark();
+    CAPTURE_TIME.recordSince(start);
+    lastCapture = System.nanoTime();
+    pending =
+        writer.submit(
+            () -> {
+              long writeStart = System.nanoTime();
+              try {
+                checkpointState.capture().write(path.get());
+                WRITES.increment();
+              } catch (IOException e) {
+                // A later checkpoint may still succeed so this does not stop the search
+                System.err.printf("Failed to write checkpoint: %s%n", e);
+              }
+              WRITE_TIME.recordSince(writeStart);
+            });
+  }
+
+  @Override
+  public void close() {
+    writer.shutdown();
+  }
+}
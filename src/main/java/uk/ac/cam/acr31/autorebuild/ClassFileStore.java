@@ -16,111 +16,129 @@
 
 package uk.ac.cam.acr31.autorebuild;
 
-import static com.google.common.collect.ImmutableSet.toImmutableSet;
-
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.MultimapBuilder;
 import com.google.common.collect.SetMultimap;
-import java.util.Deque;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import uk.ac.cam.acr31.autorebuild.clazzinfo.ClassFile;
 import uk.ac.cam.acr31.autorebuild.clazzinfo.Identifier;
+import uk.ac.cam.acr31.autorebuild.metrics.Metrics;
+import uk.ac.cam.acr31.autorebuild.metrics.Timer;
+
+public class ClassFileStore implements ClassFileLookup {
 
-public class ClassFileStore {
+  private static final Timer DEFINED_NAMES =
+      Metrics.global().timer("search_defined_names", "Time to collect the names a class defines");
 
   private final SetMultimap<String, ClassFile> classFiles;
   private final StandardLibrary standardLibrary;
+  private final Providers providers;
+
+  // Ancestors as seen by definedNames, where versions in this store hide the standard library
+  private final HierarchyIndex hierarchy;
+
+  // digest -> the result of definedNames, dropped along with the closure it came from
+  private final Map<String, ImmutableMap<String, Identifier>> definedNames = new HashMap<>();
+
+  // Ancestors as seen by provides, which looks at the standard library as well
+  private final HierarchyIndex providersHierarchy;
 
   public ClassFileStore(StandardLibrary standardLibrary) {
     this.standardLibrary = standardLibrary;
     classFiles = MultimapBuilder.hashKeys().hashSetValues().build();
+    hierarchy = new HierarchyIndex(this::versionsOrLibrary);
+    providersHierarchy = Providers.hierarchy(this, standardLibrary);
+    providers = new Providers(this, standardLibrary, Optional.of(providersHierarchy));
+  }
+
+  @Override
+  public Set<ClassFile> get(String descriptor) {
+    return classFiles.get(descriptor);
   }
 
   public ImmutableSet<ClassFile> entries() {
-    return classFiles.asMap().entrySet().stream()
-        .map(e -> Iterables.getFirst(e.getValue(), null))
-        .collect(toImmutableSet());
+    ImmutableSet.Builder<ClassFile> result =
+        ImmutableSet.builderWithExpectedSize(classFiles.keySet().size());
+    for (Collection<ClassFile> versions : classFiles.asMap().values()) {
+      result.add(Iterables.getFirst(versions, null));
+    }
+    return result.build();
   }
 
   public ImmutableSet<ClassFile> entries(String descriptor) {
     return ImmutableSet.copyOf(classFiles.get(descriptor));
   }
 
+  // The versions of the descriptor without copying them. The view must not be held while the store
+  // changes.
+  Set<ClassFile> versions(String descriptor) {
+    return Collections.unmodifiableSet(classFiles.get(descriptor));
+  }
+
   public void add(ClassFile classFile) {
-    classFiles.put(classFile.descriptor(), classFile);
+    if (classFiles.put(classFile.descriptor(), classFile)) {
+      changed(classFile.descriptor());
+    }
   }
 
   public Map<String, Identifier> definedNames(ClassFile classFile) {
-    Deque<ClassFile> queue = new LinkedList<>();
-    queue.add(classFile);
-    Map<String, Identifier> result = new HashMap<>();
-    while (!queue.isEmpty()) {
-      ClassFile next = queue.pollFirst();
-      for (Identifier declared : next.declared()) {
-        result.putIfAbsent(declared.name(), declared);
-      }
-      for (String parent : next.ancestors()) {
-        Set<ClassFile> c = classFiles.get(parent);
-        if (c.isEmpty()) {
-          standardLibrary.load(parent).ifPresent(queue::add);
-        } else {
-          queue.addAll(c);
+    long start = System.nanoTime();
+    ImmutableMap<String, Identifier> result = definedNames.get(classFile.digest());
+    if (result == null) {
+      Map<String, Identifier> names = new HashMap<>();
+      for (ClassFile next : hierarchy.closure(classFile)) {
+        for (Identifier declared : next.declared()) {
+          names.putIfAbsent(declared.name(), declared);
         }
       }
+      result = ImmutableMap.copyOf(names);
+      definedNames.put(classFile.digest(), result);
     }
+    DEFINED_NAMES.recordSince(start);
     return result;
   }
 
-  public void remove(ClassFile classFile) {
-    classFiles.remove(classFile.descriptor(), classFile);
+  private Iterable<ClassFile> versionsOrLibrary(String descriptor) {
+    Set<ClassFile> versions = classFiles.get(descriptor);
+    if (!versions.isEmpty()) {
+      return versions;
+    }
+    return standardLibrary.load(descriptor).map(ImmutableList::of).orElse(ImmutableList.of());
   }
 
-  public ImmutableSet<ClassFile> provides(Identifier unresolved) {
-
-    String owner = unresolved.owner();
-    String name = unresolved.name();
+  // every version of every class, where entries() has only one of each
+  ImmutableSet<ClassFile> allEntries() {
+    return ImmutableSet.copyOf(classFiles.values());
+  }
 
-    return classFiles.get(owner).stream()
-        .filter(classFile -> provides(classFile, name, classFiles))
-        .collect(toImmutableSet());
+  int size() {
+    return classFiles.size();
   }
 
-  private boolean provides(
-      ClassFile classFile, String name, SetMultimap<String, ClassFile> classFiles) {
-    if (classFile.declares(name)) {
-      return true;
-    }
-    for (String parent : classFile.ancestors()) {
-      Optional<ClassFile> lib = standardLibrary.load(parent);
-      if (lib.isPresent() && provides(lib.get(), name, classFiles)) {
-        return true;
-      }
-      for (ClassFile parentClassFile : classFiles.get(parent)) {
-        if (provides(parentClassFile, name, classFiles)) {
-          return true;
-        }
-      }
+  public void remove(ClassFile classFile) {
+    if (classFiles.remove(classFile.descriptor(), classFile)) {
+      changed(classFile.descriptor());
     }
-    return false;
+  }
+
+  private void changed(String descriptor) {
+    hierarchy.invalidate(descriptor).forEach(definedNames::remove);
+    providersHierarchy.invalidate(descriptor);
+  }
+
+  public ImmutableSet<ClassFile> provides(Identifier unresolved) {
+    return providers.provides(unresolved);
   }
 
   public boolean providedByClassPath(Identifier i) {
-    Deque<String> queue = new LinkedList<>();
-    queue.add(i.owner());
-    while (!queue.isEmpty()) {
-      Optional<ClassFile> classFile = standardLibrary.load(queue.pollFirst());
-      if (classFile.isPresent()) {
-        if (classFile.get().declares(i.name())) {
-          return true;
-        }
-        queue.addAll(classFile.get().ancestors());
-      }
-    }
-    return false;
+    return standardLibrary.provides(i);
   }
 }
@@ -0,0 +1,110 @@
+/*
+ * Copyright © 2019 Andrew Rice (acr31@cam.ac.uk)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.ac.cam.acr31.autorebuild;
+
+import com.google.auto.value.AutoValue;
+import com.google.common.collect.ImmutableList;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import uk.ac.cam.acr31.autorebuild.clazzinfo.ClassFile;
+
+// Parsed class files for each class or jar file, reused while the file is unchanged and it is read
+// with the same options
+class ClassPathCache {
+
+  interface Loader {
+    ImmutableList<ClassFile> load(Path file) throws IOException;
+  }
+
+  private final ConcurrentMap<Path, Entry> entries;
+
+  ClassPathCache() {
+    entries = new ConcurrentHashMap<>();
+  }
+
+  ImmutableList<ClassFile> load(
+      Path file, BasicFileAttributes attrs, ScanOptions options, Loader loader)
+      throws IOException {
+    Optional<ImmutableList<ClassFile>> cached = getIfPresent(file, attrs, options);
+    if (cached.isPresent()) {
+      return cached.get();
+    }
+    ImmutableList<ClassFile> classFiles = loader.load(file);
+    put(file, attrs, options, classFiles);
+    return classFiles;
+  }
+
+  Optional<ImmutableList<ClassFile>> getIfPresent(
+      Path file, BasicFileAttributes attrs, ScanOptions options) {
+    Entry entry = entries.get(file.toAbsolutePath());
+    if (entry != null
+        && entry.lastModified().equals(attrs.lastModifiedTime())
+        && entry.size() == attrs.size()
+        && entry.options().equals(options)) {
+      return Optional.of(entry.classFiles());
+    }
+    return Optional.empty();
+  }
+
+  void put(
+      Path file,
+      BasicFileAttributes attrs,
+      ScanOptions options,
+      ImmutableList<ClassFile> classFiles) {
+    entries.put(
+        file.toAbsolutePath(),
+        Entry.create(attrs.lastModifiedTime(), attrs.size(), options, classFiles));
+  }
+
+  void invalidate(Path path) {
+    Path key = path.toAbsolutePath();
+    entries.keySet().removeIf(p -> p.startsWith(key));
+  }
+
+  void clear() {
+    entries.clear();
+  }
+
+  int size() {
+    return entries.size();
+  }
+
+  @AutoValue
+  abstract static class Entry {
+
+    abstract FileTime lastModified();
+
+    abstract long size();
+
+    abstract ScanOptions options();
+
+    abstract ImmutableList<ClassFile> classFiles();
+
+    static Entry create(
+        FileTime lastModified,
+        long size,
+        ScanOptions options,
+        ImmutableList<ClassFile> classFiles) {
+      return new AutoValue_ClassPathCache_Entry(lastModified, size, options, classFiles);
+    }
+  }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright © 2019 Andrew Rice (acr31@cam.ac.uk)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.ac.cam.acr31.autorebuild;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Evicts ClassPathCache entries as soon as files beneath the watched roots change. The cache
+// checks modification times itself so this only keeps it from holding on to stale entries.
+class ClassPathWatcher implements Closeable {
+
+  private final ClassPathCache cache;
+  private final WatchService watchService;
+  private final Map<WatchKey, Path> directories;
+  private final Set<Path> roots;
+  private final Thread thread;
+
+  ClassPathWatcher(ClassPathCache cache) throws IOException {
+    this.cache = cache;
+    this.watchService = FileSystems.getDefault().newWatchService();
+    this.directories = new ConcurrentHashMap<>();
+    this.roots = ConcurrentHashMap.newKeySet();
+    this.thread = new Thread(this::run, "classpath-watcher");
+    this.thread.setDaemon(true);
+    this.thread.start();
+  }
+
+  void watch(Path root) throws IOException {
+    Path absolute = root.toAbsolutePath();
+    if (roots.stream().anyMatch(absolute::startsWith)) {
+      return;
+    }
+    roots.add(absolute);
+    register(absolute);
+  }
+
+  private void register(Path root) throws IOException {
+    Files.walkFileTree(
+        root,
+        new SimpleFileVisitor<>() {
+          @Override
+          public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs)
+              throws IOException {
+            WatchKey key = dir.register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+            directories.put(key, dir);
+            return FileVisitResult.CONTINUE;
+          }
+        });
+  }
+
+  private void run() {
+    try {
+      while (true) {
+        WatchKey key = watchService.take();
+        Path dir = directories.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+          if (event.kind() == OVERFLOW) {
+            cache.clear();
+            continue;
+          }
+          Path changed = dir.resolve((Path) event.context());
+          cache.invalidate(changed);
+          if (event.kind() == ENTRY_CREATE && Files.isDirectory(changed)) {
+            register(changed);
+          }
+        }
+        if (!key.reset()) {
+          directories.remove(key);
+        }
+      }
+    } catch (InterruptedException | ClosedWatchServiceException e) {
+      // shutting down
+    } catch (IOException e) {
+      System.err.println("Stopped watching for changes: " + e.getMessage());
+      cache.clear();
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    watchService.close();
+    thread.interrupt();
+  }
+}
@@ -0,0 +1,246 @@
+/*
+ * Copyright © 2019 Andrew Rice (acr31@cam.ac.uk)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.ac.cam.acr31.autorebuild;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
+import com.google.common.io.BaseEncoding;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+
+// Keeps the parsed class path and standard library warm between rebuilds. Requests are a single
+// line of tab separated Main arguments sent to a loopback socket and are served one at a time.
+// Any local user can connect to the socket, so each request must start with a token which the
+// daemon writes to a file that only its owner can read.
+public class Daemon {
+
+  // how long a client has to send its request before the daemon moves on to the next one
+  private static final int READ_TIMEOUT_MILLIS = 10_000;
+
+  private final Path tokenDirectory;
+  private final ClassPathCache classPathCache;
+  private final ClassPathWatcher watcher;
+  private final StandardLibrary standardLibrary;
+
+  Daemon(Path tokenDirectory) throws IOException {
+    this.tokenDirectory = tokenDirectory;
+    classPathCache = new ClassPathCache();
+    watcher = new ClassPathWatcher(classPathCache);
+    standardLibrary = new StandardLibrary();
+  }
+
+  public static void main(String[] args) throws IOException {
+    if (args.length < 1) {
+      throw new IllegalArgumentException("Usage: Daemon <port> [<scanRoot>...]");
+    }
+    Daemon daemon = new Daemon(defaultTokenDirectory());
+    for (int i = 1; i < args.length; i++) {
+      OriginalProject.load(Paths.get(args[i]), daemon.classPathCache, ScanOptions.defaults());
+      daemon.watcher.watch(Paths.get(args[i]));
+    }
+    System.out.printf("Warmed %d class path entries%n", daemon.classPathCache.size());
+    daemon.serve(Integer.parseInt(args[0]));
+  }
+
+  private void serve(int port) throws IOException {
+    try (ServerSocket serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress())) {
+      String token = writeToken(serverSocket.getLocalPort());
+      System.out.printf("Listening on %s%n", serverSocket.getLocalSocketAddress());
+      serve(serverSocket, token);
+    }
+  }
+
+  // Serves requests until the socket is closed
+  void serve(ServerSocket serverSocket, String token) throws IOException {
+    while (!serverSocket.isClosed()) {
+      try (Socket socket = serverSocket.accept()) {
+        handle(socket, token);
+      } catch (IOException e) {
+        if (serverSocket.isClosed()) {
+          return;
+        }
+        // A client that hangs up or stalls only loses its own request
+        System.err.printf("Dropped request: %s%n", e);
+      }
+    }
+  }
+
+  // Writes a new random token for the daemon on this port, readable only by its owner
+  String writeToken(int port) throws IOException {
+    byte[] bytes = new byte[32];
+    new SecureRandom().nextBytes(bytes);
+    String token = BaseEncoding.base16().encode(bytes);
+    Files.createDirectories(
+        tokenDirectory,
+        PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+    Path file = tokenFile(tokenDirectory, port);
+    Files.deleteIfExists(file);
+    Files.createFile(
+        file, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+    Files.write(file, token.getBytes(StandardCharsets.UTF_8));
+    return token;
+  }
+
+  static Path defaultTokenDirectory() {
+    return Paths.get(System.getProperty("user.home"), ".autorebuild");
+  }
+
+  static Path tokenFile(Path tokenDirectory, int port) {
+    return tokenDirectory.resolve("daemon-" + port + ".token");
+  }
+
+  private void handle(Socket socket, String token) throws IOException {
+    socket.setSoTimeout(READ_TIMEOUT_MILLIS);
+    BufferedReader reader = reader(socket);
+    PrintWriter writer = writer(socket);
+    String sentToken = reader.readLine();
+    if (sentToken == null) {
+      return;
+    }
+    if (!MessageDigest.isEqual(
+        sentToken.getBytes(StandardCharsets.UTF_8), token.getBytes(StandardCharsets.UTF_8))) {
+      writer.printf("error invalid token%n");
+      return;
+    }
+    String request = reader.readLine();
+    if (request == null) {
+      return;
+    }
+    try {
+      Options options =
+          Options.parse(Splitter.on('\t').splitToList(request).toArray(new String[0]));
+      checkTargetRoot(options);
+      watcher.watch(options.projectRoot());
+      SearchResult result = Main.rebuild(options, classPathCache, standardLibrary);
+      writer.printf(
+          "ok classes=%d unresolvable=%d stopped=%s remaining=%d%n",
+          result.repository().classes().size(),
+          result.repository().unresolvable().size(),
+          result.stopReason().name().toLowerCase(),
+          result.remaining().size());
+    } catch (IOException | RuntimeException e) {
+      writer.printf("error %s%n", e);
+    }
+  }
+
+  // The target root is deleted before the rebuild is written to it
+  private static void checkTargetRoot(Options options) {
+    Path targetRoot = options.targetRoot();
+    if (!targetRoot.isAbsolute()) {
+      throw new IllegalArgumentException("Target root is not absolute: " + targetRoot);
+    }
+    if (options.projectRoot().toAbsolutePath().normalize().startsWith(targetRoot.normalize())) {
+      throw new IllegalArgumentException("Target root contains the project root: " + targetRoot);
+    }
+  }
+
+  static void send(int port, Options options) throws IOException {
+    send(defaultTokenDirectory(), port, options);
+  }
+
+  static void send(Path tokenDirectory, int port, Options options) throws IOException {
+    List<String> request = new ArrayList<>();
+    if (options.solution().isPresent()) {
+      request.add("--solution=" + options.solution().get().toAbsolutePath());
+    }
+    request.add("--scan=" + options.scanMode().name().toLowerCase());
+    request.add("--extractor=" + options.extractor().name().toLowerCase());
+    request.add("--strategy=" + options.strategy().name().toLowerCase());
+    if (options.release().isPresent()) {
+      request.add("--release=" + options.release().getAsInt());
+    }
+    if (options.timeBudget().isPresent()) {
+      request.add("--time-budget-ms=" + options.timeBudget().get().toMillis());
+    }
+    if (options.iterationBudget().isPresent()) {
+      request.add("--iteration-budget=" + options.iterationBudget().getAsLong());
+    }
+    if (options.heapBudget().isPresent()) {
+      request.add("--heap-budget-mb=" + (options.heapBudget().getAsLong() >> 20));
+    }
+    if (options.checkpoint().isPresent()) {
+      request.add("--checkpoint=" + options.checkpoint().get().toAbsolutePath());
+    }
+    if (options.checkpointInterval().isPresent()) {
+      request.add("--checkpoint-interval-ms=" + options.checkpointInterval().get().toMillis());
+    }
+    if (options.resume().isPresent()) {
+      request.add("--resume=" + options.resume().get().toAbsolutePath());
+    }
+    if (options.trace().isPresent()) {
+      request.add("--trace=" + options.trace().get().toAbsolutePath());
+    }
+    if (options.workers().isPresent()) {
+      request.add("--workers=" + options.workers().getAsInt());
+    }
+    if (options.snapshot().isPresent()) {
+      request.add("--snapshot=" + options.snapshot().get().toAbsolutePath());
+    }
+    if (options.writeSnapshot().isPresent()) {
+      request.add("--write-snapshot=" + options.writeSnapshot().get().toAbsolutePath());
+    }
+    if (options.stdlibCache().isPresent()) {
+      request.add("--stdlib-cache=" + options.stdlibCache().get().toAbsolutePath());
+    }
+    if (options.metricsJson().isPresent()) {
+      request.add("--metrics-json=" + options.metricsJson().get().toAbsolutePath());
+    }
+    if (options.metricsPrometheus().isPresent()) {
+      request.add("--metrics-prometheus=" + options.metricsPrometheus().get().toAbsolutePath());
+    }
+    request.add(options.projectRoot().toAbsolutePath().toString());
+    request.add(options.targetRoot().toAbsolutePath().toString());
+
+    String token =
+        new String(Files.readAllBytes(tokenFile(tokenDirectory, port)), StandardCharsets.UTF_8);
+    try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+      PrintWriter writer = writer(socket);
+      writer.println(token);
+      writer.println(Joiner.on('\t').join(request));
+      String response = reader(socket).readLine();
+      if (response == null || !response.startsWith("ok")) {
+        throw new IOException("Rebuild failed: " + response);
+      }
+      System.out.println(response);
+    }
+  }
+
+  private static BufferedReader reader(Socket socket) throws IOException {
+    return new BufferedReader(
+        new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+  }
+
+  private static PrintWriter writer(Socket socket) throws IOException {
+    return new PrintWriter(
+        new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8), true);
+  }
+}
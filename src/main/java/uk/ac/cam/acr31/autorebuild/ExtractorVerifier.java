@@ -0,0 +1,270 @@
+/*
+ * Copyright © 2019 Andrew Rice (acr31@cam.ac.uk)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.ac.cam.acr31.autorebuild;
+
+import com.google.auto.value.AutoValue;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import uk.ac.cam.acr31.autorebuild.clazzinfo.ClassFile;
+import uk.ac.cam.acr31.autorebuild.clazzinfo.Extractor;
+import uk.ac.cam.acr31.autorebuild.clazzinfo.Identifier;
+
+// Runs every extractor over the class files and jars beneath the given paths and reports each
+// class for which the constant pool extractor disagrees with the visitor, along with how long
+// each extractor took.
+public class ExtractorVerifier {
+
+  @AutoValue
+  abstract static class Mismatch {
+
+    // a class file path or jar!/entry
+    abstract String location();
+
+    abstract String property();
+
+    abstract ImmutableSet<String> visitorOnly();
+
+    abstract ImmutableSet<String> constantPoolOnly();
+  }
+
+  @AutoValue
+  abstract static class Report {
+
+    abstract long classes();
+
+    abstract long bytes();
+
+    // classes that the visitor itself could not parse, which are not compared
+    abstract long unreadable();
+
+    abstract long fallbacks();
+
+    // time spent in each extractor summed over all threads
+    abstract ImmutableMap<Extractor, Long> nanos();
+
+    abstract ImmutableList<Mismatch> mismatches();
+
+    void print(PrintStream out) {
+      for (Mismatch mismatch : mismatches()) {
+        out.printf("%s %s%n", mismatch.location(), mismatch.property());
+        mismatch.visitorOnly().forEach(i -> out.printf("  visitor only: %s%n", i));
+        mismatch.constantPoolOnly().forEach(i -> out.printf("  constant pool only: %s%n", i));
+      }
+      out.printf(
+          "%d classes (%d bytes), %d unreadable, %d fallbacks, %d mismatches%n",
+          classes(), bytes(), unreadable(), fallbacks(), mismatches().size());
+      for (Map.Entry<Extractor, Long> entry : nanos().entrySet()) {
+        double seconds = entry.getValue() / 1e9;
+        out.printf(
+            "%s: %.0f ms, %.0f classes/s, %.1f MB/s per thread%n",
+            entry.getKey(),
+            seconds * 1000,
+            classes() / seconds,
+            bytes() / seconds / 1e6);
+      }
+    }
+  }
+
+  private final LongAdder classes = new LongAdder();
+  private final LongAdder bytes = new LongAdder();
+  private final LongAdder unreadable = new LongAdder();
+  private final Map<Extractor, LongAdder> nanos = new EnumMap<>(Extractor.class);
+  private final Queue<Mismatch> mismatches = new ConcurrentLinkedQueue<>();
+
+  private ExtractorVerifier() {
+    for (Extractor extractor : Extractor.values()) {
+      nanos.put(extractor, new LongAdder());
+    }
+  }
+
+  public static void main(String[] args) throws IOException {
+    if (args.length == 0) {
+      throw new IllegalArgumentException("Usage: ExtractorVerifier <directory|jar>...");
+    }
+    List<Path> paths = new ArrayList<>();
+    for (String arg : args) {
+      paths.add(Paths.get(arg));
+    }
+    ExecutorService executor =
+        Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+    Report report;
+    try {
+      report = verify(paths, executor);
+    } finally {
+      executor.shutdownNow();
+    }
+    report.print(System.out);
+    if (!report.mismatches().isEmpty()) {
+      System.exit(1);
+    }
+  }
+
+  static Report verify(List<Path> paths, ExecutorService executor) throws IOException {
+    List<Path> classFiles = new ArrayList<>();
+    List<Path> jarFiles = new ArrayList<>();
+    for (Path path : paths) {
+      if (Files.isDirectory(path)) {
+        ProjectFiles files = ProjectFiles.list(path);
+        classFiles.addAll(files.classFiles());
+        jarFiles.addAll(files.jarFiles());
+      } else if (OriginalProject.JAR_FILE_MATCHER.matches(path)) {
+        jarFiles.add(path);
+      } else {
+        classFiles.add(path);
+      }
+    }
+
+    ExtractorVerifier verifier = new ExtractorVerifier();
+    final long fallbacksBefore = ClassFile.extractorFallbacks();
+    List<Future<Void>> futures = new ArrayList<>();
+    for (Path jarFile : jarFiles) {
+      futures.add(executor.submit(task(() -> verifier.verifyJar(jarFile))));
+    }
+    for (Path classFile : classFiles) {
+      futures.add(
+          executor.submit(
+              task(
+                  () ->
+                      verifier.verifyClass(
+                          classFile.toString(), Files.readAllBytes(classFile)))));
+    }
+    for (Future<Void> future : futures) {
+      try {
+        future.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Interrupted verifying extractors", e);
+      } catch (ExecutionException e) {
+        throw new IOException("Failed to verify extractors", e.getCause());
+      }
+    }
+
+    ImmutableMap.Builder<Extractor, Long> totals = ImmutableMap.builder();
+    verifier.nanos.forEach((extractor, total) -> totals.put(extractor, total.sum()));
+    return new AutoValue_ExtractorVerifier_Report(
+        verifier.classes.sum(),
+        verifier.bytes.sum(),
+        verifier.unreadable.sum(),
+        ClassFile.extractorFallbacks() - fallbacksBefore,
+        totals.build(),
+        ImmutableList.sortedCopyOf(
+            Comparator.comparing(Mismatch::location).thenComparing(Mismatch::property),
+            verifier.mismatches));
+  }
+
+  private interface IoAction {
+    void run() throws IOException;
+  }
+
+  private static Callable<Void> task(IoAction action) {
+    return () -> {
+      action.run();
+      return null;
+    };
+  }
+
+  private void verifyJar(Path file) throws IOException {
+    try (JarFile jarFile = JarEntries.open(file, Runtime.version().feature())) {
+      for (JarEntry entry : JarEntries.classEntries(jarFile)) {
+        try (InputStream is = jarFile.getInputStream(entry)) {
+          verifyClass(
+              file + JarEntries.NESTED_SEPARATOR + entry.getRealName(), is.readAllBytes());
+        }
+      }
+    }
+  }
+
+  private void verifyClass(String location, byte[] classBytes) throws IOException {
+    ClassFile visitor;
+    try {
+      visitor = extract(Extractor.VISITOR, location, classBytes);
+    } catch (RuntimeException e) {
+      unreadable.increment();
+      return;
+    }
+    ClassFile constantPool = extract(Extractor.CONSTANT_POOL, location, classBytes);
+    classes.increment();
+    bytes.add(classBytes.length);
+
+    boolean matched =
+        compare(location, "declared", names(visitor.declared()), names(constantPool.declared()));
+    matched &=
+        compare(
+            location, "referenced", names(visitor.referenced()), names(constantPool.referenced()));
+    matched &= compare(location, "ancestors", visitor.ancestors(), constantPool.ancestors());
+    if (matched && !visitor.equals(constantPool)) {
+      compare(
+          location,
+          "classFile",
+          ImmutableSet.of(visitor.toString()),
+          ImmutableSet.of(constantPool.toString()));
+    }
+  }
+
+  private ClassFile extract(Extractor extractor, String location, byte[] classBytes)
+      throws IOException {
+    final long start = System.nanoTime();
+    ClassFile classFile =
+        ClassFile.create(extractor, location, new ByteArrayInputStream(classBytes));
+    nanos.get(extractor).add(System.nanoTime() - start);
+    return classFile;
+  }
+
+  private boolean compare(
+      String location, String property, ImmutableSet<String> visitor, ImmutableSet<String> other) {
+    if (visitor.equals(other)) {
+      return true;
+    }
+    mismatches.add(
+        new AutoValue_ExtractorVerifier_Mismatch(
+            location,
+            property,
+            Sets.difference(visitor, other).immutableCopy(),
+            Sets.difference(other, visitor).immutableCopy()));
+    return false;
+  }
+
+  private static ImmutableSet<String> names(ImmutableSet<Identifier> identifiers) {
+    return identifiers.stream()
+        .map(i -> i.name().isEmpty() ? i.owner() : i.owner() + "." + i.name())
+        .collect(ImmutableSet.toImmutableSet());
+  }
+}
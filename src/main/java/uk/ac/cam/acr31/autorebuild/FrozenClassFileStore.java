@@ -0,0 +1,240 @@
+/*
+ * Copyright © 2019 Andrew Rice (acr31@cam.ac.uk)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.ac.cam.acr31.autorebuild;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSetMultimap;
+import com.google.common.collect.Sets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import uk.ac.cam.acr31.autorebuild.clazzinfo.ClassFile;
+import uk.ac.cam.acr31.autorebuild.metrics.Metrics;
+import uk.ac.cam.acr31.autorebuild.metrics.Timer;
+
+// An immutable store of candidate classes for searches to look things up in. Nothing changes after
+// it is built, so any number of searches can share it without locking. The classes each one
+// inherits from are worked out up front, which makes finding the providers of an identifier a scan
+// of a flat list rather than a walk up the hierarchy. A store can be layered over another so that
+// several searches share the closures of the classes they have in common, with only the classes a
+// layer adds, and those whose ancestry they change, worked out again.
+final class FrozenClassFileStore implements ClassFileLookup {
+
+  private static final Timer FREEZE_TIME =
+      Metrics.global().timer("store_freeze", "Time to build a frozen class file store");
+
+  private final Optional<FrozenClassFileStore> base;
+  private final ImmutableSetMultimap<String, ClassFile> classFiles;
+
+  // digest -> the class followed by every version of every ancestor, including standard library
+  // classes
+  private final ImmutableMap<String, ImmutableList<ClassFile>> closures;
+
+  // descriptor -> the classes whose closures would take in another version of it
+  private final ImmutableSetMultimap<String, ClassFile> dependents;
+
+  private FrozenClassFileStore(
+      Optional<FrozenClassFileStore> base,
+      ImmutableSetMultimap<String, ClassFile> classFiles,
+      ImmutableMap<String, ImmutableList<ClassFile>> closures,
+      ImmutableSetMultimap<String, ClassFile> dependents) {
+    this.base = base;
+    this.classFiles = classFiles;
+    this.closures = closures;
+    this.dependents = dependents;
+  }
+
+  static FrozenClassFileStore of(Iterable<ClassFile> classFiles, StandardLibrary standardLibrary) {
+    final long start = System.nanoTime();
+    ImmutableSetMultimap.Builder<String, ClassFile> builder = ImmutableSetMultimap.builder();
+    for (ClassFile classFile : classFiles) {
+      builder.put(classFile.descriptor(), classFile);
+    }
+    ImmutableSetMultimap<String, ClassFile> byDescriptor = builder.build();
+    Ancestries ancestries = new Ancestries(byDescriptor::get, standardLibrary);
+    Map<String, ImmutableList<ClassFile>> closures = new HashMap<>();
+    ImmutableSetMultimap.Builder<String, ClassFile> dependents = ImmutableSetMultimap.builder();
+    for (ClassFile classFile : byDescriptor.values()) {
+      if (closures.containsKey(classFile.digest())) {
+        continue;
+      }
+      ImmutableList<ClassFile> closure = ancestries.closure(classFile);
+      closures.put(classFile.digest(), closure);
+      for (ClassFile c : closure) {
+        for (String parent : c.ancestors()) {
+          dependents.put(parent, classFile);
+        }
+      }
+    }
+    FrozenClassFileStore store =
+        new FrozenClassFileStore(
+            Optional.empty(), byDescriptor, ImmutableMap.copyOf(closures), dependents.build());
+    FREEZE_TIME.recordSince(start);
+    return store;
+  }
+
+  // A store holding these classes as well as everything in this one. Only the closures of the new
+  // classes, and of the classes here that inherit from a descriptor they add a version of, are
+  // worked out; the rest are read from this store.
+  FrozenClassFileStore layer(Iterable<ClassFile> classFiles, StandardLibrary standardLibrary) {
+    if (base.isPresent()) {
+      throw new IllegalStateException("Only a single layer is supported");
+    }
+    final long start = System.nanoTime();
+    ImmutableSetMultimap.Builder<String, ClassFile> builder = ImmutableSetMultimap.builder();
+    for (ClassFile classFile : classFiles) {
+      builder.put(classFile.descriptor(), classFile);
+    }
+    ImmutableSetMultimap<String, ClassFile> added = builder.build();
+    Ancestries ancestries =
+        new Ancestries(
+            descriptor -> Sets.union(added.get(descriptor), get(descriptor)), standardLibrary);
+    Map<String, ImmutableList<ClassFile>> closures = new HashMap<>();
+    for (ClassFile classFile : added.values()) {
+      closures.computeIfAbsent(classFile.digest(), d -> ancestries.closure(classFile));
+    }
+    for (String descriptor : added.keySet()) {
+      for (ClassFile stale : dependents.get(descriptor)) {
+        closures.computeIfAbsent(stale.digest(), d -> ancestries.closure(stale));
+      }
+    }
+    FrozenClassFileStore store =
+        new FrozenClassFileStore(
+            Optional.of(this), added, ImmutableMap.copyOf(closures), ImmutableSetMultimap.of());
+    FREEZE_TIME.recordSince(start);
+    return store;
+  }
+
+  @Override
+  public Set<ClassFile> get(String descriptor) {
+    if (base.isPresent()) {
+      return Sets.union(classFiles.get(descriptor), base.get().get(descriptor));
+    }
+    return classFiles.get(descriptor);
+  }
+
+  int size() {
+    return classFiles.size() + base.map(FrozenClassFileStore::size).orElse(0);
+  }
+
+  // Whether the class or anything it inherits from declares the name. Empty if the class is not in
+  // this store.
+  Optional<Boolean> provides(ClassFile classFile, String name) {
+    ImmutableList<ClassFile> closure = closure(classFile.digest());
+    if (closure == null) {
+      return Optional.empty();
+    }
+    for (ClassFile c : closure) {
+      if (c.declares(name)) {
+        return Optional.of(true);
+      }
+    }
+    return Optional.of(false);
+  }
+
+  private ImmutableList<ClassFile> closure(String digest) {
+    ImmutableList<ClassFile> closure = closures.get(digest);
+    if (closure == null && base.isPresent()) {
+      return base.get().closures.get(digest);
+    }
+    return closure;
+  }
+
+  // Works out what each descriptor inherits from, reusing the ancestries of shared ancestors. An
+  // ancestry cut short by a cycle is not kept since what it is missing depends on where the cycle
+  // was entered.
+  private static final class Ancestries {
+
+    private final ClassFileLookup classFiles;
+    private final StandardLibrary standardLibrary;
+    private final Map<String, ImmutableList<ClassFile>> done = new HashMap<>();
+    private final Set<String> inProgress = new HashSet<>();
+    private boolean cut;
+
+    Ancestries(ClassFileLookup classFiles, StandardLibrary standardLibrary) {
+      this.classFiles = classFiles;
+      this.standardLibrary = standardLibrary;
+    }
+
+    // The class followed by everything it inherits from
+    ImmutableList<ClassFile> closure(ClassFile classFile) {
+      Closure closure = new Closure();
+      closure.add(classFile);
+      for (String parent : classFile.ancestors()) {
+        closure.addAll(of(parent));
+      }
+      return closure.build();
+    }
+
+    // Every version of the descriptor and everything they inherit from
+    private ImmutableList<ClassFile> of(String descriptor) {
+      ImmutableList<ClassFile> result = done.get(descriptor);
+      if (result != null) {
+        return result;
+      }
+      if (!inProgress.add(descriptor)) {
+        cut = true;
+        return ImmutableList.of();
+      }
+      final boolean outerCut = cut;
+      cut = false;
+      List<ClassFile> versions = new ArrayList<>();
+      standardLibrary.load(descriptor).ifPresent(versions::add);
+      versions.addAll(classFiles.get(descriptor));
+      Closure closure = new Closure();
+      closure.addAll(versions);
+      for (ClassFile version : versions) {
+        for (String parent : version.ancestors()) {
+          closure.addAll(of(parent));
+        }
+      }
+      inProgress.remove(descriptor);
+      result = closure.build();
+      if (!cut) {
+        done.put(descriptor, result);
+      }
+      cut |= outerCut;
+      return result;
+    }
+  }
+
+  // A list of classes without repeats
+  private static final class Closure {
+
+    private final ImmutableList.Builder<ClassFile> classFiles = ImmutableList.builder();
+    private final Set<String> digests = new HashSet<>();
+
+    void add(ClassFile classFile) {
+      if (digests.add(classFile.digest())) {
+        classFiles.add(classFile);
+      }
+    }
+
+    void addAll(Iterable<ClassFile> more) {
+      more.forEach(this::add);
+    }
+
+    ImmutableList<ClassFile> build() {
+      return classFiles.build();
+    }
+  }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright © 2019 Andrew Rice (acr31@cam.ac.uk)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package uk.ac.cam.acr31.autorebuild;
+
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.SetMultimap;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import uk.ac.cam.acr31.autorebuild.clazzinfo.ClassFile;
+import uk.ac.cam.acr31.autorebuild.metrics.Counter;
+import uk.ac.cam.acr31.autorebuild.metrics.Metrics;
+
+// Caches the classes each class version inherits from so that looking for a name up the hierarchy
+// is a scan of a flat list. What a class inherits from depends on which versions of its ancestors
+// are around, so whoever owns the versions must invalidate a descriptor whenever its versions
+// change.
+final class HierarchyIndex {
+
+  private static final Counter HITS =
+      Metrics.global().counter("hierarchy_hits", "Ancestor closures served from cache");
+  private static final Counter MISSES =
+      Metrics.global().counter("hierarchy_misses", "Ancestor closures computed");
+
+  private final Function<String, ? extends Iterable<ClassFile>> versions;
+
+  // digest -> the class followed by everything it inherits from, nearest first
+  private final Map<String, ImmutableList<ClassFile>> closures = new HashMap<>();
+
+  // descriptor -> digests of the classes whose closure looked up its versions
+  private final SetMultimap<String, String> dependents = HashMultimap.create();
+
+  HierarchyIndex(Function<String, ? extends Iterable<ClassFile>> versions) {
+    this.versions = versions;
+  }
+
+  synchronized ImmutableList<ClassFile> closure(ClassFile classFile) {
+    ImmutableList<ClassFile> closure = closures.get(classFile.digest());
+    if (closure != null) {
+      HITS.increment();
+      return closure;
+    }
+    MISSES.increment();
+    closure = compute(classFile);
+    closures.put(classFile.digest(), closure);
+    return closure;
+  }
+
+  // Returns the digests of the classes whose closures were dropped
+  synchronized Set<String> invalidate(String descriptor) {
+    Set<String> digests = dependents.removeAll(descriptor);
+    for (String digest : digests) {
+      closures.remove(digest);
+    }
+    return digests;
+  }
+
+  private ImmutableList<ClassFile> compute(ClassFile classFile) {
+    ImmutableList.Builder<ClassFile> result = ImmutableList.builder();
+    Set<String> seen = new HashSet<>();
+    Deque<ClassFile> queue = new ArrayDeque<>();
+    seen.add(classFile.digest());
+    queue.add(classFile);
+    while (!queue.isEmpty()) {
+      ClassFile next = queue.pollFirst();
+      result.add(next);
+      for (String parent : next.ancestors()) {
+        dependents.put(parent, classFile.digest());
+        for (ClassFile version : versions.apply(parent)) {
+          if (seen.add(version.digest())) {
+            queue.add(version);
+          }
+        }
+      }
+    }
+    return result.build();
+  }
+}
@@ -16,22 +16,31 @@
 
 package uk.ac.cam.acr31.autorebuild;
 
-import static com.google.common.collect.ImmutableSet.toImmutableSet;
-
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSetMultimap;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.MultimapBuilder;
 import com.google.common.collect.SetMultimap;
+import java.util.Collections;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
+import java.util.function.Consumer;
 import uk.ac.cam.acr31.autorebuild.clazzinfo.ClassFile;
 import uk.ac.cam.acr31.autorebuild.clazzinfo.Identifier;
 
 public class IdentifierStore {
 
+  // Told of each change to a store as a function which makes the same change to a copy of it
+  interface Changes {
+    void changed(Consumer<IdentifierStore> change);
+  }
+
   private SetMultimap<String, Identifier> ownerToIdentifier;
   private SetMultimap<Identifier, ClassFile> identifierToReferent;
   private SetMultimap<ClassFile, Identifier> referentToIdentifier;
+  private Optional<Changes> changes = Optional.empty();
 
   IdentifierStore() {
     ownerToIdentifier = MultimapBuilder.linkedHashKeys().hashSetValues().build();
@@ -39,43 +48,101 @@ public class IdentifierStore {
     referentToIdentifier = MultimapBuilder.hashKeys().hashSetValues().build();
   }
 
+  // A copy which keeps the order that next() returns identifiers in, but not the changes listener
+  IdentifierStore copy() {
+    IdentifierStore copy = new IdentifierStore();
+    copy.ownerToIdentifier.putAll(ownerToIdentifier);
+    copy.identifierToReferent.putAll(identifierToReferent);
+    copy.referentToIdentifier.putAll(referentToIdentifier);
+    return copy;
+  }
+
+  void recordChanges(Changes changes) {
+    this.changes = Optional.of(changes);
+  }
+
   int size() {
     return ownerToIdentifier.size();
   }
 
+  ImmutableSet<Identifier> identifiers() {
+    return ImmutableSet.copyOf(ownerToIdentifier.values());
+  }
+
   ImmutableSet<Identifier> identifiers(String descriptor) {
     return ImmutableSet.copyOf(ownerToIdentifier.get(descriptor));
   }
 
-  ImmutableSet<String> names(String descriptor) {
-    return ownerToIdentifier.get(descriptor).stream()
-        .map(Identifier::name)
-        .collect(toImmutableSet());
+  // The identifiers with the given owner without copying them. The view must not be held while
+  // the store changes.
+  Set<Identifier> identifiersView(String descriptor) {
+    return Collections.unmodifiableSet(ownerToIdentifier.get(descriptor));
+  }
+
+  // True if every identifier with the given owner has one of the names
+  boolean namesWithin(String descriptor, Set<String> names) {
+    for (Identifier identifier : ownerToIdentifier.get(descriptor)) {
+      if (!names.contains(identifier.name())) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // An identifier with no referring classes, which only happens when they have been removed
+  void add(Identifier identifier) {
+    if (changes.isPresent()) {
+      changes.get().changed(copy -> copy.add(identifier));
+    }
+    ownerToIdentifier.put(identifier.owner(), identifier);
   }
 
   void add(Identifier identifier, ClassFile referent) {
+    if (changes.isPresent()) {
+      changes.get().changed(copy -> copy.add(identifier, referent));
+    }
     ownerToIdentifier.put(identifier.owner(), identifier);
     identifierToReferent.put(identifier, referent);
     referentToIdentifier.put(referent, identifier);
   }
 
   void add(Identifier identifier, Iterable<ClassFile> referring) {
+    if (changes.isPresent()) {
+      // referring is often a view of another store, which will have changed by the time the copy
+      // is made
+      ImmutableList<ClassFile> referringNow = ImmutableList.copyOf(referring);
+      changes.get().changed(copy -> copy.add(identifier, referringNow));
+    }
     ownerToIdentifier.put(identifier.owner(), identifier);
     identifierToReferent.putAll(identifier, referring);
     referring.forEach(r -> referentToIdentifier.put(r, identifier));
   }
 
+  boolean contains(Identifier identifier) {
+    return ownerToIdentifier.containsEntry(identifier.owner(), identifier);
+  }
+
   Set<ClassFile> referents(Identifier identifier) {
     return identifierToReferent.get(identifier);
   }
 
+  ImmutableSetMultimap<Identifier, ClassFile> referents() {
+    return ImmutableSetMultimap.copyOf(identifierToReferent);
+  }
+
   void remove(Identifier identifier) {
+    if (changes.isPresent()) {
+      changes.get().changed(copy -> copy.remove(identifier));
+    }
     ownerToIdentifier.remove(identifier.owner(), identifier);
     Set<ClassFile> referents = identifierToReferent.removeAll(identifier);
     referents.forEach(r -> referentToIdentifier.remove(r, identifier));
   }
 
   void removeReferredFrom(ClassFile classFile) {
+    if (changes.isPresent()) {
+      changes.get().changed(copy -> copy.removeReferredFrom(classFile));
+    }
     for (Identifier identifier : referentToIdentifier.get(classFile)) {
       identifierToReferent.remove(identifier, classFile);
     }
@@ -87,6 +154,9 @@ public class IdentifierStore {
   }
 
   Identifier next() {
+    if (changes.isPresent()) {
+      changes.get().changed(IdentifierStore::next);
+    }
     Map.Entry<String, Identifier> entry = Iterables.getFirst(ownerToIdentifier.entries(), null);
     Set<Identifier> identifiers = ownerToIdentifier.removeAll(entry.getKey());
     ownerToIdentifier.putAll(entry.getKey(), identifiers);
@@ -0,0 +1,81 @@
+/*
+ * Copyright © 2019 Andrew Rice (acr31@cam.ac.uk)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.ac.cam.acr31.autorebuild;
+
+import com.google.common.collect.ImmutableList;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.zip.ZipFile;
+
+// Chooses which entries of a jar are class files for a given release. A multi-release jar
+// contributes only the best variant of each class for that release, and module descriptors are
+// never offered since they do not define any members.
+final class JarEntries {
+
+  private static final String META_INF = "META-INF/";
+
+  // Separates the entry name of a nested archive from the archive containing it
+  static final String NESTED_SEPARATOR = "!/";
+
+  private JarEntries() {
+  }
+
+  static JarFile open(Path jar, int release) throws IOException {
+    return new JarFile(
+        jar.toFile(), true, ZipFile.OPEN_READ, Runtime.Version.parse(Integer.toString(release)));
+  }
+
+  // The class entries to read from a jar opened with open. getRealName() on each entry gives the
+  // name to record, which is under META-INF/versions for a release specific variant.
+  static ImmutableList<JarEntry> classEntries(JarFile jarFile) {
+    ImmutableList.Builder<JarEntry> entries = ImmutableList.builder();
+    jarFile
+        .versionedStream()
+        .filter(entry -> isClassEntry(entry.getName()))
+        .forEach(
+            entry -> {
+              if (!entry.getRealName().equals(entry.getName())) {
+                ScanMetrics.VERSIONED_ENTRIES.increment();
+              }
+              entries.add(entry);
+            });
+    return entries.build();
+  }
+
+  // Nested archives, such as the libraries under BOOT-INF/lib or WEB-INF/lib, whose classes are
+  // read by streaming the entry rather than extracting it
+  static ImmutableList<JarEntry> nestedArchives(JarFile jarFile) {
+    ImmutableList.Builder<JarEntry> entries = ImmutableList.builder();
+    jarFile.stream().filter(entry -> isNestedArchive(entry.getName())).forEach(entries::add);
+    return entries.build();
+  }
+
+  static boolean isNestedArchive(String name) {
+    return name.endsWith(".jar") || name.endsWith(".war");
+  }
+
+  // Whether a jar entry name is a class that could be loaded under that name. Anything beneath
+  // META-INF, including the variants of a jar which is not multi-release, is ignored.
+  static boolean isClassEntry(String name) {
+    return name.endsWith(".class")
+        && !name.endsWith("package-info.class")
+        && !name.endsWith("module-info.class")
+        && !name.startsWith(META_INF);
+  }
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright © 2019 Andrew Rice (acr31@cam.ac.uk)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.ac.cam.acr31.autorebuild;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.cache.RemovalListener;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import java.io.Closeable;
+import java.io.IOError;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.jar.JarFile;
+import java.util.zip.ZipEntry;
+import uk.ac.cam.acr31.autorebuild.clazzinfo.ClassFile;
+
+// A project whose jars are only parsed for the owners that the search actually asks about
+class LazyProject implements ClassFileLookup, Closeable {
+
+  private static final int OPEN_JARS = 64;
+
+  private final ImmutableSet<SourceFile> sourceFiles;
+  private final OwnerDirectory directory;
+  private final Map<String, ImmutableSet<ClassFile>> loaded;
+  private final Set<String> usedDigests;
+  private final ImmutableSet<ClassFile> looseClassFiles;
+  private final LoadingCache<Path, JarFile> jarFiles;
+  private final ScanOptions options;
+  private int parsedEntries;
+
+  private LazyProject(
+      ImmutableSet<SourceFile> sourceFiles,
+      ImmutableSet<ClassFile> looseClassFiles,
+      OwnerDirectory directory,
+      ScanOptions options) {
+    this.sourceFiles = sourceFiles;
+    this.options = options;
+    this.directory = directory;
+    this.loaded = new HashMap<>();
+    this.usedDigests = new HashSet<>();
+    looseClassFiles.forEach(c -> usedDigests.add(c.digest()));
+    this.looseClassFiles = looseClassFiles;
+    this.jarFiles =
+        CacheBuilder.newBuilder()
+            .maximumSize(OPEN_JARS)
+            .removalListener((RemovalListener<Path, JarFile>) n -> closeQuietly(n.getValue()))
+            .build(CacheLoader.from(jar -> openJar(jar, options.release())));
+  }
+
+  static LazyProject open(Path projectRoot, ScanOptions options) throws IOException {
+    ProjectFiles files = ProjectFiles.list(projectRoot);
+    ImmutableSet.Builder<SourceFile> sourceFiles = ImmutableSet.builder();
+    for (Path file : files.sourceFiles()) {
+      sourceFiles.add(SourceFile.create(file));
+    }
+    ImmutableSet.Builder<ClassFile> classFiles = ImmutableSet.builder();
+    for (Path file : files.classFiles()) {
+      classFiles.add(ClassFile.create(options.extractor(), file));
+    }
+    return new LazyProject(
+        sourceFiles.build(),
+        classFiles.build(),
+        OwnerDirectory.read(files.jarFiles(), options.release()),
+        options);
+  }
+
+  ImmutableSet<ClassFile> generatedClasses() {
+    // Only jar entries named after one of our source files can have been compiled from it
+    Set<String> sourceDescriptors = new HashSet<>();
+    for (SourceFile sourceFile : sourceFiles) {
+      String fileName = sourceFile.fileName();
+      sourceDescriptors.add(
+          sourceFile.packageName().replace('.', '/')
+              + "/"
+              + fileName.substring(0, fileName.length() - ".java".length()));
+    }
+    OriginalProject.Builder candidates =
+        OriginalProject.builder().addSourceFiles(sourceFiles).addClassFiles(looseClassFiles);
+    for (String descriptor : directory.descriptors()) {
+      int dollar = descriptor.indexOf('$');
+      String outer = dollar == -1 ? descriptor : descriptor.substring(0, dollar);
+      if (sourceDescriptors.contains(outer)) {
+        candidates.addClassFiles(get(descriptor));
+      }
+    }
+    return candidates.build().generatedClasses();
+  }
+
+  @Override
+  public synchronized Set<ClassFile> get(String descriptor) {
+    ImmutableSet<ClassFile> result = loaded.get(descriptor);
+    if (result == null) {
+      result = load(descriptor);
+      loaded.put(descriptor, result);
+    }
+    return result;
+  }
+
+  private ImmutableSet<ClassFile> load(String descriptor) {
+    ImmutableSet.Builder<ClassFile> result = ImmutableSet.builder();
+    for (ClassFile classFile : looseClassFiles) {
+      if (classFile.descriptor().equals(descriptor)) {
+        result.add(classFile);
+      }
+    }
+    for (OwnerDirectory.Entry entry : directory.entries(descriptor)) {
+      ClassFile classFile = parse(entry);
+      parsedEntries++;
+      if (usedDigests.add(classFile.digest())) {
+        result.add(classFile);
+      } else {
+        ScanMetrics.DUPLICATES.increment();
+      }
+    }
+    return result.build();
+  }
+
+  private ClassFile parse(OwnerDirectory.Entry entry) {
+    try {
+      JarFile jarFile = jarFiles.get(entry.jar());
+      ZipEntry zipEntry = jarFile.getEntry(entry.name());
+      try (InputStream is = jarFile.getInputStream(zipEntry)) {
+        return ClassFile.create(options.extractor(), entry.jar().toString(), entry.name(), is);
+      }
+    } catch (IOException e) {
+      throw new IOError(e);
+    } catch (ExecutionException | UncheckedExecutionException e) {
+      throw new IOError(e.getCause());
+    }
+  }
+
+  synchronized OriginalProject toOriginalProject() {
+    OriginalProject.Builder builder =
+        OriginalProject.builder().addSourceFiles(sourceFiles).addClassFiles(looseClassFiles);
+    loaded.values().forEach(builder::addClassFiles);
+    return builder.build();
+  }
+
+  synchronized String statistics() {
+    return String.format(
+        "Parsed %d of %d jar entries for %d owners",
+        parsedEntries, directory.size(), loaded.size());
+  }
+
+  @Override
+  public void close() {
+    jarFiles.invalidateAll();
+  }
+
+  private static JarFile openJar(Path jar, int release) {
+    ScanMetrics.JARS.increment();
+    try {
+      return JarEntries.open(jar, release);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private static void closeQuietly(JarFile jarFile) {
+    try {
+      jarFile.close();
+    } catch (IOException e) {
+      // nothing more we can do
+    }
+  }
+}
@@ -16,108 +16,131 @@
 
 package uk.ac.cam.acr31.autorebuild;
 
-import com.google.common.collect.ImmutableMap;
-import com.google.common.collect.Maps;
-import com.google.common.collect.MultimapBuilder;
-import com.google.common.collect.Multimaps;
-import com.google.common.collect.SetMultimap;
-import com.ibm.icu.text.CharsetDetector;
-import com.ibm.icu.text.CharsetMatch;
-import java.io.BufferedInputStream;
-import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.Reader;
-import java.io.Writer;
-import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.util.Enumeration;
-import java.util.Map;
-import java.util.Set;
-import java.util.jar.JarEntry;
-import java.util.jar.JarFile;
-import uk.ac.cam.acr31.autorebuild.clazzinfo.ClassFile;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import uk.ac.cam.acr31.autorebuild.metrics.Metrics;
 
 public class Main {
 
   public static void main(String[] args) throws IOException {
+    Options options = Options.parse(args);
+    if (options.daemonPort().isPresent()) {
+      Daemon.send(options.daemonPort().getAsInt(), options);
+      return;
+    }
+    rebuild(options, new ClassPathCache(), new StandardLibrary());
+  }
 
-    // todo(acr31) exclude source files that are not compiled
-
-    Path projectRoot = Paths.get(args[0]);
-    Path targetRoot = Paths.get(args[1]);
-    OriginalProject originalProject = OriginalProject.load(projectRoot);
-    System.out.println("Loaded project");
-    final Repository repository = Searcher.search(originalProject);
+  static SearchResult rebuild(
+      Options options, ClassPathCache classPathCache, StandardLibrary standardLibrary)
+      throws IOException {
 
-    Files.walk(targetRoot)
-        .map(Path::toFile)
-        .sorted((o1, o2) -> -o1.compareTo(o2))
-        .forEach(File::delete);
+    // todo(acr31) exclude source files that are not compiled
 
-    Files.createDirectories(targetRoot.resolve("src"));
-    Files.createDirectories(targetRoot.resolve("lib"));
-    for (SourceFile sourceFile : originalProject.sourceFiles()) {
-      Path source = Paths.get(sourceFile.directory(), sourceFile.fileName());
-      Path target = targetRoot.resolve("src");
-      for (String packagePart : sourceFile.packageName().split("\\.")) {
-        target = target.resolve(packagePart);
-      }
-      target = target.resolve(sourceFile.fileName());
-      Files.createDirectories(target.getParent());
+    final Metrics metricsBefore = Metrics.global().snapshot();
+    Optional<Snapshot> snapshot = Optional.empty();
+    if (options.snapshot().isPresent()) {
+      snapshot = Optional.of(Snapshot.read(options.snapshot().get()));
+      System.out.println("Loaded snapshot");
+    }
 
-      try (BufferedInputStream bis = new BufferedInputStream(Files.newInputStream(source))) {
-        CharsetDetector cd = new CharsetDetector();
-        cd.setText(bis);
-        CharsetMatch cm = cd.detect();
-        if (cm != null && !cm.getName().equals("UTF-8")) {
-          try (Reader reader = cm.getReader();
-              Writer writer = Files.newBufferedWriter(target, StandardCharsets.UTF_8)) {
-            reader.transferTo(writer);
-          }
-        } else {
-          Files.copy(source, target);
-        }
-      }
+    SearchOptions.Builder searchOptions = SearchOptions.builder().setStrategy(options.strategy());
+    options.timeBudget().ifPresent(searchOptions::setTimeBudget);
+    options.iterationBudget().ifPresent(searchOptions::setIterationBudget);
+    options.heapBudget().ifPresent(searchOptions::setHeapBudget);
+    options.checkpoint().ifPresent(searchOptions::setCheckpoint);
+    options.checkpointInterval().ifPresent(searchOptions::setCheckpointInterval);
+    options.trace().ifPresent(searchOptions::setTrace);
+    if (options.resume().isPresent()) {
+      searchOptions.setResumeFrom(Checkpoint.read(options.resume().get()));
+      System.out.println("Loaded checkpoint");
+    }
+    // a solution file takes precedence over one stored in the snapshot
+    snapshot.flatMap(Snapshot::solution).ifPresent(searchOptions::setPreviousSolution);
+    if (options.solution().isPresent() && Files.exists(options.solution().get())) {
+      searchOptions.setPreviousSolution(Solution.read(options.solution().get()));
     }
 
-    SetMultimap<String, ClassFile> jarEntries = MultimapBuilder.hashKeys().hashSetValues().build();
-    for (ClassFile classFile : repository.classes()) {
-      if (classFile.classFileJar().isPresent()) {
-        jarEntries.put(classFile.classFileJar().get(), classFile);
-      } else {
-        Path source = Paths.get(classFile.classFileName());
-        Path target = targetRoot.resolve("lib");
-        for (String packagePart : classFile.packageName().split("\\.")) {
-          target = target.resolve(packagePart);
-        }
-        target = target.resolve(source.getFileName());
-        Files.createDirectories(target.getParent());
-        Files.copy(source, target);
-      }
+    if (options.stdlibCache().isPresent() && Files.exists(options.stdlibCache().get())) {
+      standardLibrary.readProvidesCache(options.stdlibCache().get());
     }
 
-    for (Map.Entry<String, Set<ClassFile>> entry : Multimaps.asMap(jarEntries).entrySet()) {
-      JarFile jarFile = new JarFile(entry.getKey());
-      ImmutableMap<String, ClassFile> classes =
-          Maps.uniqueIndex(entry.getValue(), ClassFile::classFileName);
-      for (Enumeration<JarEntry> em = jarFile.entries(); em.hasMoreElements(); ) {
-        JarEntry jarEntry = em.nextElement();
-        ClassFile classFile = classes.get(jarEntry.getName());
-        if (classFile != null) {
-          Path target = targetRoot.resolve("lib");
-          for (String packagePart : classFile.packageName().split("\\.")) {
-            target = target.resolve(packagePart);
+    OriginalProject originalProject;
+    SearchResult result;
+    if (snapshot.isPresent()) {
+      originalProject = snapshot.get().originalProject();
+      result = Searcher.search(originalProject, standardLibrary, searchOptions.build());
+    } else {
+      switch (options.scanMode()) {
+        case STREAMING:
+          ExecutorService executor =
+              Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+          try {
+            StreamingScan scan =
+                StreamingScan.start(
+                    options.projectRoot(), classPathCache, options.scanOptions(), executor);
+            System.out.println("Started scan");
+            result = Searcher.search(scan, standardLibrary, searchOptions.build());
+            originalProject = scan.await();
+          } finally {
+            executor.shutdownNow();
           }
-          target = target.resolve(Paths.get(classFile.classFileName()).getFileName());
-          try (InputStream is = jarFile.getInputStream(jarEntry)) {
-            Files.createDirectories(target.getParent());
-            Files.copy(is, target);
+          break;
+        case LAZY:
+          try (LazyProject lazyProject =
+              LazyProject.open(options.projectRoot(), options.scanOptions())) {
+            System.out.println("Read project directory");
+            result =
+                Searcher.search(
+                    lazyProject.generatedClasses(),
+                    lazyProject,
+                    standardLibrary,
+                    searchOptions.build());
+            System.out.println(lazyProject.statistics());
+            originalProject = lazyProject.toOriginalProject();
           }
-        }
+          break;
+        case SHARDED:
+          originalProject =
+              ShardedScan.load(
+                  options.projectRoot(),
+                  options.workers().orElse(Runtime.getRuntime().availableProcessors()),
+                  options.scanOptions());
+          System.out.println("Loaded project");
+          result = Searcher.search(originalProject, standardLibrary, searchOptions.build());
+          break;
+        default:
+          originalProject =
+              OriginalProject.load(options.projectRoot(), classPathCache, options.scanOptions());
+          System.out.println("Loaded project");
+          result = Searcher.search(originalProject, standardLibrary, searchOptions.build());
       }
     }
+    Repository repository = result.repository();
+    if (options.solution().isPresent()) {
+      Solution.of(repository).write(options.solution().get());
+    }
+    if (options.stdlibCache().isPresent()) {
+      standardLibrary.writeProvidesCache(options.stdlibCache().get());
+    }
+    if (options.writeSnapshot().isPresent()) {
+      Snapshot.write(
+          options.writeSnapshot().get(), originalProject, Optional.of(Solution.of(repository)));
+    }
+
+    TargetWriter.write(originalProject, repository, options.targetRoot());
+
+    // only this rebuild's work, even when earlier ones ran in the same process
+    Metrics metrics = Metrics.global().since(metricsBefore);
+    if (options.metricsJson().isPresent()) {
+      metrics.writeJson(options.metricsJson().get());
+    }
+    if (options.metricsPrometheus().isPresent()) {
+      metrics.writePrometheus(options.metricsPrometheus().get());
+    }
+    return result;
   }
 }
@@ -0,0 +1,382 @@
+/*
+ * Copyright © 2019 Andrew Rice (acr31@cam.ac.uk)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.ac.cam.acr31.autorebuild;
+
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Multiset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import uk.ac.cam.acr31.autorebuild.clazzinfo.ClassFile;
+import uk.ac.cam.acr31.autorebuild.clazzinfo.Identifier;
+import uk.ac.cam.acr31.autorebuild.metrics.Counter;
+import uk.ac.cam.acr31.autorebuild.metrics.Metrics;
+import uk.ac.cam.acr31.autorebuild.metrics.Timer;
+
+// Picks at most one version of each owner so that the identifiers used by the chosen classes are
+// provided, leaving as few of them unprovided as possible and then using as few classes as
+// possible. This is a depth first search over the owners still to be decided: an owner left with
+// a single version providing everything asked of it is chosen straight away (unit propagation),
+// and branches that cannot beat the best closure found so far are cut (branch and bound). An owner
+// with no such version is a conflict, which is counted against the branch rather than abandoning
+// it, so the first descent always finds a closure.
+class MinimalClosureSolver {
+
+  private static final Counter DECISIONS =
+      Metrics.global()
+          .counter("search_closure_decisions", "Versions tried where an owner had a choice");
+  private static final Counter PROPAGATIONS =
+      Metrics.global()
+          .counter("search_closure_propagations", "Versions chosen as the only viable one");
+  private static final Counter CONFLICTS =
+      Metrics.global()
+          .counter("search_closure_conflicts", "Identifiers left unprovided by a chosen version");
+  private static final Timer SOLVE_TIME =
+      Metrics.global().timer("search_closure", "Time spent solving for a minimal closure");
+
+  private final ClassFileLookup candidates;
+  private final StandardLibrary standardLibrary;
+  private final Providers providers;
+  private final long decisionLimit;
+  private final SearchBudget budget;
+
+  // identifiers which need a version chosen for their owner: not provided by the standard library
+  // and provided by at least one candidate
+  private final Map<Identifier, Boolean> relevant = new HashMap<>();
+
+  // owners of generated classes, which are never replaced
+  private final Set<String> fixed = new HashSet<>();
+  private final Map<String, ClassFile> chosen = new HashMap<>();
+  private final List<String> chosenTrail = new ArrayList<>();
+  // owner -> names used by the chosen classes
+  private final Map<String, Multiset<String>> required = new HashMap<>();
+  private final List<Identifier> requiredTrail = new ArrayList<>();
+  // required identifiers whose chosen owner only provides them through an ancestor, which have to
+  // be checked again as ancestors are chosen
+  private final List<Identifier> inherited = new ArrayList<>();
+  // required identifiers the chosen version of their owner cannot provide
+  private final Set<Identifier> conflicts = new HashSet<>();
+  private final List<Identifier> conflictTrail = new ArrayList<>();
+  private int size;
+
+  private long decisions;
+  private boolean stopped;
+  private ImmutableList<ClassFile> best;
+  private int bestConflicts = Integer.MAX_VALUE;
+  private int bestSize = Integer.MAX_VALUE;
+
+  private MinimalClosureSolver(
+      ClassFileLookup candidates,
+      StandardLibrary standardLibrary,
+      Providers providers,
+      long decisionLimit,
+      SearchBudget budget) {
+    this.candidates = candidates;
+    this.standardLibrary = standardLibrary;
+    this.providers = providers;
+    this.decisionLimit = decisionLimit;
+    this.budget = budget;
+  }
+
+  // The non-generated classes of the best closure found, or empty if the decision limit or the
+  // search budget was reached before any closure was found
+  static Optional<ImmutableList<ClassFile>> solve(
+      ImmutableSet<ClassFile> generatedClasses,
+      ClassFileLookup candidates,
+      StandardLibrary standardLibrary,
+      Providers providers,
+      long decisionLimit,
+      SearchBudget budget) {
+    final long start = System.nanoTime();
+    MinimalClosureSolver solver =
+        new MinimalClosureSolver(candidates, standardLibrary, providers, decisionLimit, budget);
+    for (ClassFile generated : generatedClasses) {
+      solver.fixed.add(generated.descriptor());
+      solver.chosen.putIfAbsent(generated.descriptor(), generated);
+    }
+    for (ClassFile generated : generatedClasses) {
+      solver.require(generated);
+    }
+    solver.search();
+    SOLVE_TIME.recordSince(start);
+    if (solver.best == null) {
+      System.out.printf("Minimal closure: none found after %d decisions%n", solver.decisions);
+    } else {
+      System.out.printf(
+          "Minimal closure: %d classes, %d unprovided identifiers after %d decisions%s%n",
+          solver.best.size(),
+          solver.bestConflicts,
+          solver.decisions,
+          solver.stopped ? " (stopped early)" : "");
+    }
+    return Optional.ofNullable(solver.best);
+  }
+
+  private void search() {
+    final Mark mark = new Mark();
+    String branchOwner = null;
+    List<ClassFile> branchVersions = null;
+    while (branchOwner == null) {
+      List<String> open = openOwners();
+      if (open.isEmpty()) {
+        if (improves(conflicts.size(), size)) {
+          bestConflicts = conflicts.size();
+          bestSize = size;
+          best =
+              chosenTrail.stream()
+                  .filter(owner -> !fixed.contains(owner))
+                  .map(chosen::get)
+                  .collect(ImmutableList.toImmutableList());
+        }
+        mark.undo();
+        return;
+      }
+      // Every open owner needs a class of its own
+      if (!improves(conflicts.size(), size + open.size())
+          || decisions >= decisionLimit
+          || budget.isExhausted()) {
+        stopped |= decisions >= decisionLimit || budget.isExhausted();
+        mark.undo();
+        return;
+      }
+
+      boolean forced = false;
+      int branchViable = Integer.MAX_VALUE;
+      for (String owner : open) {
+        if (chosen.containsKey(owner)) {
+          continue;
+        }
+        List<ClassFile> viable = viableVersions(owner);
+        if (viable.size() == 1) {
+          PROPAGATIONS.increment();
+          forced = true;
+          choose(owner, viable.get(0));
+        } else if (!forced) {
+          // Branch on the owner with the fewest viable versions, leaving owners which will conflict
+          // whatever is chosen until last
+          int count = viable.isEmpty() ? Integer.MAX_VALUE : viable.size();
+          if (branchOwner == null || count < branchViable) {
+            branchOwner = owner;
+            branchViable = count;
+            branchVersions = viable;
+          }
+        }
+      }
+      if (forced) {
+        branchOwner = null;
+        branchVersions = null;
+      }
+    }
+
+    if (branchVersions.isEmpty()) {
+      branchVersions = new ArrayList<>(candidates.get(branchOwner));
+      final String owner = branchOwner;
+      branchVersions.sort(Comparator.comparingInt(version -> unprovided(owner, version)));
+    } else {
+      // Try the versions that bring in the fewest undecided owners first
+      branchVersions.sort(Comparator.comparingInt(this::newOwners));
+    }
+    for (ClassFile version : branchVersions) {
+      DECISIONS.increment();
+      decisions++;
+      Mark branch = new Mark();
+      choose(branchOwner, version);
+      search();
+      branch.undo();
+      if (stopped) {
+        break;
+      }
+    }
+    mark.undo();
+  }
+
+  private boolean improves(int conflictCount, int classCount) {
+    return conflictCount < bestConflicts
+        || (conflictCount == bestConflicts && classCount < bestSize);
+  }
+
+  private List<String> openOwners() {
+    List<String> open = new ArrayList<>();
+    for (String owner : required.keySet()) {
+      if (!chosen.containsKey(owner)) {
+        open.add(owner);
+      }
+    }
+    return open;
+  }
+
+  private List<ClassFile> viableVersions(String owner) {
+    List<ClassFile> viable = new ArrayList<>();
+    for (ClassFile version : candidates.get(owner)) {
+      if (unprovided(owner, version) == 0) {
+        viable.add(version);
+      }
+    }
+    return viable;
+  }
+
+  private int unprovided(String owner, ClassFile version) {
+    int count = 0;
+    for (String name : required.get(owner).elementSet()) {
+      if (!possiblyProvides(version, name)) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  private int newOwners(ClassFile version) {
+    Set<String> owners = new HashSet<>();
+    for (Identifier identifier : version.referenced()) {
+      if (!chosen.containsKey(identifier.owner()) && isRelevant(identifier)) {
+        owners.add(identifier.owner());
+      }
+    }
+    return owners.size();
+  }
+
+  private void choose(String owner, ClassFile version) {
+    chosen.put(owner, version);
+    chosenTrail.add(owner);
+    size++;
+    for (String name : required.getOrDefault(owner, HashMultiset.create()).elementSet()) {
+      Identifier identifier = Identifier.create(owner, name);
+      if (!possiblyProvides(version, name)) {
+        conflict(identifier);
+      } else if (!version.declares(name)) {
+        inherited.add(identifier);
+      }
+    }
+    require(version);
+    for (Identifier identifier : inherited) {
+      if (!conflicts.contains(identifier)
+          && !possiblyProvides(chosen.get(identifier.owner()), identifier.name())) {
+        conflict(identifier);
+      }
+    }
+  }
+
+  // Records the identifiers used by a chosen class
+  private void require(ClassFile classFile) {
+    for (Identifier identifier : classFile.referenced()) {
+      if (!isRelevant(identifier)) {
+        continue;
+      }
+      ClassFile provider = chosen.get(identifier.owner());
+      if (provider != null && !conflicts.contains(identifier)) {
+        if (!possiblyProvides(provider, identifier.name())) {
+          conflict(identifier);
+        } else if (!provider.declares(identifier.name())) {
+          inherited.add(identifier);
+        }
+      }
+      required
+          .computeIfAbsent(identifier.owner(), o -> HashMultiset.create())
+          .add(identifier.name());
+      requiredTrail.add(identifier);
+    }
+  }
+
+  private void conflict(Identifier identifier) {
+    if (conflicts.add(identifier)) {
+      CONFLICTS.increment();
+      conflictTrail.add(identifier);
+    }
+  }
+
+  private boolean isRelevant(Identifier identifier) {
+    return relevant.computeIfAbsent(
+        identifier, i -> !standardLibrary.provides(i) && !providers.provides(i).isEmpty());
+  }
+
+  // Whether the name is defined by the version or one of its ancestors, assuming the best of
+  // ancestors that have not been decided yet
+  private boolean possiblyProvides(ClassFile version, String name) {
+    return possiblyProvides(version, name, new HashSet<>());
+  }
+
+  // A version already visited either led to the name, which ended the walk, or did not, so each is
+  // looked at once however many paths reach it. This also stops the walk at cycles.
+  private boolean possiblyProvides(ClassFile version, String name, Set<String> visited) {
+    if (!visited.add(version.digest())) {
+      return false;
+    }
+    if (version.declares(name)) {
+      return true;
+    }
+    for (String ancestor : version.ancestors()) {
+      ClassFile chosenAncestor = chosen.get(ancestor);
+      if (chosenAncestor != null) {
+        if (possiblyProvides(chosenAncestor, name, visited)) {
+          return true;
+        }
+        continue;
+      }
+      Set<ClassFile> versions = candidates.get(ancestor);
+      if (versions.isEmpty()) {
+        if (standardLibrary.provides(Identifier.create(ancestor, name))) {
+          return true;
+        }
+        continue;
+      }
+      for (ClassFile ancestorVersion : versions) {
+        if (possiblyProvides(ancestorVersion, name, visited)) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  // The sizes of the trails at some point in the search, to undo back to
+  private final class Mark {
+
+    private final int chosenMark = chosenTrail.size();
+    private final int requiredMark = requiredTrail.size();
+    private final int inheritedMark = inherited.size();
+    private final int conflictMark = conflictTrail.size();
+    private final int sizeMark = size;
+
+    void undo() {
+      while (chosenTrail.size() > chosenMark) {
+        chosen.remove(chosenTrail.remove(chosenTrail.size() - 1));
+      }
+      while (requiredTrail.size() > requiredMark) {
+        Identifier identifier = requiredTrail.remove(requiredTrail.size() - 1);
+        Multiset<String> names = required.get(identifier.owner());
+        names.remove(identifier.name());
+        if (names.isEmpty()) {
+          required.remove(identifier.owner());
+        }
+      }
+      while (inherited.size() > inheritedMark) {
+        inherited.remove(inherited.size() - 1);
+      }
+      while (conflictTrail.size() > conflictMark) {
+        conflicts.remove(conflictTrail.remove(conflictTrail.size() - 1));
+      }
+      size = sizeMark;
+    }
+  }
+}
@@ -0,0 +1,245 @@
+/*
+ * Copyright © 2019 Andrew Rice (acr31@cam.ac.uk)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.ac.cam.acr31.autorebuild;
+
+import com.google.auto.value.AutoValue;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.OptionalLong;
+import uk.ac.cam.acr31.autorebuild.clazzinfo.Extractor;
+
+@AutoValue
+abstract class Options {
+
+  private static final String USAGE =
+      "Usage: Main [--solution=<file>] [--daemon=<port>]"
+          + " [--scan=full|streaming|lazy|sharded] [--workers=<count>]"
+          + " [--metrics-json=<file>] [--metrics-prometheus=<file>] [--snapshot=<file>]"
+          + " [--write-snapshot=<file>] [--stdlib-cache=<file>] [--extractor=constant_pool|visitor]"
+          + " [--release=<feature>] [--strategy=greedy|minimal_closure]"
+          + " [--time-budget-ms=<millis>] [--iteration-budget=<count>]"
+          + " [--heap-budget-mb=<megabytes>] [--checkpoint=<file>]"
+          + " [--checkpoint-interval-ms=<millis>] [--resume=<file>] [--trace=<file>]"
+          + " <projectRoot> <targetRoot>";
+
+  enum ScanMode {
+    // parse everything before searching
+    FULL,
+    // search while jars are parsed in the background
+    STREAMING,
+    // parse jar entries only for the owners the search asks about
+    LAZY,
+    // parse class files and jars in separate worker processes
+    SHARDED
+  }
+
+  abstract Path projectRoot();
+
+  abstract Path targetRoot();
+
+  abstract Optional<Path> solution();
+
+  abstract OptionalInt daemonPort();
+
+  abstract ScanMode scanMode();
+
+  // number of worker processes for a sharded scan
+  abstract OptionalInt workers();
+
+  abstract Optional<Path> metricsJson();
+
+  abstract Optional<Path> metricsPrometheus();
+
+  // load the project from this snapshot rather than scanning projectRoot
+  abstract Optional<Path> snapshot();
+
+  abstract Optional<Path> writeSnapshot();
+
+  // persisted results of standard library member lookups
+  abstract Optional<Path> stdlibCache();
+
+  // how facts are read from class files
+  abstract Extractor extractor();
+
+  // the Java release whose variants are read from multi-release jars, defaulting to the runtime's
+  abstract OptionalInt release();
+
+  abstract SearchOptions.Strategy strategy();
+
+  abstract Optional<Duration> timeBudget();
+
+  abstract OptionalLong iterationBudget();
+
+  // in bytes
+  abstract OptionalLong heapBudget();
+
+  abstract Optional<Path> checkpoint();
+
+  abstract Optional<Duration> checkpointInterval();
+
+  // a checkpoint to carry on from
+  abstract Optional<Path> resume();
+
+  // where to write a binary trace of the search
+  abstract Optional<Path> trace();
+
+  ScanOptions scanOptions() {
+    return ScanOptions.create(extractor(), release().orElse(Runtime.version().feature()));
+  }
+
+  static Options parse(String... args) {
+    Builder builder =
+        new AutoValue_Options.Builder()
+            .setScanMode(ScanMode.FULL)
+            .setExtractor(Extractor.CONSTANT_POOL)
+            .setStrategy(SearchOptions.Strategy.GREEDY);
+    List<String> positional = new ArrayList<>();
+    for (String arg : args) {
+      if (!arg.startsWith("--")) {
+        positional.add(arg);
+        continue;
+      }
+      int split = arg.indexOf('=');
+      if (split == -1) {
+        throw new IllegalArgumentException("Missing value for " + arg + "\n" + USAGE);
+      }
+      String name = arg.substring(2, split);
+      String value = arg.substring(split + 1);
+      switch (name) {
+        case "solution":
+          builder.setSolution(Paths.get(value));
+          break;
+        case "daemon":
+          builder.setDaemonPort(Integer.parseInt(value));
+          break;
+        case "scan":
+          builder.setScanMode(ScanMode.valueOf(value.toUpperCase()));
+          break;
+        case "workers":
+          builder.setWorkers(Integer.parseInt(value));
+          break;
+        case "metrics-json":
+          builder.setMetricsJson(Paths.get(value));
+          break;
+        case "metrics-prometheus":
+          builder.setMetricsPrometheus(Paths.get(value));
+          break;
+        case "snapshot":
+          builder.setSnapshot(Paths.get(value));
+          break;
+        case "write-snapshot":
+          builder.setWriteSnapshot(Paths.get(value));
+          break;
+        case "stdlib-cache":
+          builder.setStdlibCache(Paths.get(value));
+          break;
+        case "strategy":
+          builder.setStrategy(SearchOptions.Strategy.valueOf(value.toUpperCase()));
+          break;
+        case "time-budget-ms":
+          builder.setTimeBudget(Duration.ofMillis(Long.parseLong(value)));
+          break;
+        case "iteration-budget":
+          builder.setIterationBudget(Long.parseLong(value));
+          break;
+        case "heap-budget-mb":
+          builder.setHeapBudget(Long.parseLong(value) << 20);
+          break;
+        case "checkpoint":
+          builder.setCheckpoint(Paths.get(value));
+          break;
+        case "checkpoint-interval-ms":
+          builder.setCheckpointInterval(Duration.ofMillis(Long.parseLong(value)));
+          break;
+        case "resume":
+          builder.setResume(Paths.get(value));
+          break;
+        case "trace":
+          builder.setTrace(Paths.get(value));
+          break;
+        case "release":
+          builder.setRelease(Integer.parseInt(value));
+          break;
+        case "extractor":
+          builder.setExtractor(Extractor.valueOf(value.toUpperCase()));
+          break;
+        default:
+          throw new IllegalArgumentException("Unknown option " + arg + "\n" + USAGE);
+      }
+    }
+    if (positional.size() != 2) {
+      throw new IllegalArgumentException(USAGE);
+    }
+    return builder
+        .setProjectRoot(Paths.get(positional.get(0)))
+        .setTargetRoot(Paths.get(positional.get(1)))
+        .build();
+  }
+
+  @AutoValue.Builder
+  abstract static class Builder {
+
+    abstract Builder setProjectRoot(Path projectRoot);
+
+    abstract Builder setTargetRoot(Path targetRoot);
+
+    abstract Builder setSolution(Path solution);
+
+    abstract Builder setDaemonPort(int daemonPort);
+
+    abstract Builder setScanMode(ScanMode scanMode);
+
+    abstract Builder setWorkers(int workers);
+
+    abstract Builder setMetricsJson(Path metricsJson);
+
+    abstract Builder setMetricsPrometheus(Path metricsPrometheus);
+
+    abstract Builder setSnapshot(Path snapshot);
+
+    abstract Builder setWriteSnapshot(Path writeSnapshot);
+
+    abstract Builder setStdlibCache(Path stdlibCache);
+
+    abstract Builder setExtractor(Extractor extractor);
+
+    abstract Builder setRelease(int release);
+
+    abstract Builder setStrategy(SearchOptions.Strategy strategy);
+
+    abstract Builder setTimeBudget(Duration timeBudget);
+
+    abstract Builder setIterationBudget(long iterationBudget);
+
+    abstract Builder setHeapBudget(long heapBudget);
+
+    abstract Builder setCheckpoint(Path checkpoint);
+
+    abstract Builder setCheckpointInterval(Duration checkpointInterval);
+
+    abstract Builder setResume(Path resume);
+
+    abstract Builder setTrace(Path trace);
+
+    abstract Options build();
+  }
+}
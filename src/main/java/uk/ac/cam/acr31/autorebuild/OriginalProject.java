@@ -17,6 +17,7 @@
 package uk.ac.cam.acr31.autorebuild;
 
 import com.google.auto.value.AutoValue;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Maps;
@@ -29,13 +30,17 @@ import java.nio.file.Path;
 import java.nio.file.PathMatcher;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
-import java.util.Enumeration;
 import java.util.HashSet;
 import java.util.Objects;
 import java.util.Set;
+import java.util.function.Consumer;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
 import uk.ac.cam.acr31.autorebuild.clazzinfo.ClassFile;
+import uk.ac.cam.acr31.autorebuild.clazzinfo.Extractor;
+import uk.ac.cam.acr31.autorebuild.jfr.JarScanEvent;
 
 @AutoValue
 public abstract class OriginalProject {
@@ -45,8 +50,13 @@ public abstract class OriginalProject {
   abstract ImmutableSet<ClassFile> classFiles();
 
   static OriginalProject load(Path projectRoot) throws IOException {
+    return load(projectRoot, new ClassPathCache(), ScanOptions.defaults());
+  }
+
+  static OriginalProject load(Path projectRoot, ClassPathCache cache, ScanOptions options)
+      throws IOException {
     Builder builder = builder();
-    ProjectFileVisitor visitor = new ProjectFileVisitor(builder);
+    ProjectFileVisitor visitor = new ProjectFileVisitor(builder, cache, options);
     Files.walkFileTree(projectRoot, visitor);
     return builder.build();
   }
@@ -103,51 +113,113 @@ public abstract class OriginalProject {
     return generatedClasses.build();
   }
 
-  private static class ProjectFileVisitor extends SimpleFileVisitor<Path> {
+  static final PathMatcher SOURCE_FILE_MATCHER =
+      FileSystems.getDefault().getPathMatcher("glob:**/*.java");
+  static final PathMatcher CLASS_FILE_MATCHER =
+      FileSystems.getDefault().getPathMatcher("glob:**/*.class");
+  static final PathMatcher JAR_FILE_MATCHER =
+      FileSystems.getDefault().getPathMatcher("glob:**/*.{jar,war}");
+  static final PathMatcher PACKAGE_INFO_MATCHER =
+      FileSystems.getDefault().getPathMatcher("glob:**/package-info.*");
+  static final PathMatcher MODULE_INFO_MATCHER =
+      FileSystems.getDefault().getPathMatcher("glob:**/module-info.class");
+
+  static ImmutableList<ClassFile> readJar(Path file, ScanOptions options) throws IOException {
+    ImmutableList.Builder<ClassFile> classFiles = ImmutableList.builder();
+    readJar(file, options, classFiles::add);
+    return classFiles.build();
+  }
+
+  static void readJar(Path file, ScanOptions options, Consumer<ClassFile> consumer)
+      throws IOException {
+    Extractor extractor = options.extractor();
+    ScanMetrics.JARS.increment();
+    try (JarFile jarFile = JarEntries.open(file, options.release())) {
+      for (JarEntry entry : JarEntries.classEntries(jarFile)) {
+        try (InputStream is = jarFile.getInputStream(entry)) {
+          consumer.accept(ClassFile.create(extractor, file.toString(), entry.getRealName(), is));
+        }
+      }
+      for (JarEntry entry : JarEntries.nestedArchives(jarFile)) {
+        try (InputStream is = jarFile.getInputStream(entry)) {
+          readNestedJar(
+              file + JarEntries.NESTED_SEPARATOR + entry.getName(), is, extractor, consumer);
+        }
+      }
+    }
+  }
+
+  // Streams the classes out of an archive held in another, recording the chain of archives as the
+  // jar name. Only base entries are read since a stream cannot pick multi-release variants.
+  private static void readNestedJar(
+      String jar, InputStream is, Extractor extractor, Consumer<ClassFile> consumer)
+      throws IOException {
+    ScanMetrics.NESTED_JARS.increment();
+    // Not closed, since that would close the enclosing stream
+    ZipInputStream zipInputStream = new ZipInputStream(is);
+    for (ZipEntry entry = zipInputStream.getNextEntry();
+        entry != null;
+        entry = zipInputStream.getNextEntry()) {
+      String name = entry.getName();
+      if (JarEntries.isClassEntry(name)) {
+        consumer.accept(ClassFile.create(extractor, jar, name, zipInputStream));
+      } else if (JarEntries.isNestedArchive(name)) {
+        readNestedJar(
+            jar + JarEntries.NESTED_SEPARATOR + name, zipInputStream, extractor, consumer);
+      }
+    }
+  }
 
-    private static final PathMatcher SOURCE_FILE_MATCHER =
-        FileSystems.getDefault().getPathMatcher("glob:**/*.java");
-    private static final PathMatcher CLASS_FILE_MATCHER =
-        FileSystems.getDefault().getPathMatcher("glob:**/*.class");
-    private static final PathMatcher JAR_FILE_MATCHER =
-        FileSystems.getDefault().getPathMatcher("glob:**/*.jar");
-    private static final PathMatcher PACKAGE_INFO_MATCHER =
-        FileSystems.getDefault().getPathMatcher("glob:**/package-info.*");
+  private static class ProjectFileVisitor extends SimpleFileVisitor<Path> {
 
     private final Set<String> usedDigests = new HashSet<>();
     private final Builder builder;
+    private final ClassPathCache cache;
+    private final ScanOptions options;
 
-    private ProjectFileVisitor(Builder builder) {
+    private ProjectFileVisitor(Builder builder, ClassPathCache cache, ScanOptions options) {
       this.builder = builder;
+      this.cache = cache;
+      this.options = options;
     }
 
     @Override
     public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
-      if (PACKAGE_INFO_MATCHER.matches(file)) {
+      if (PACKAGE_INFO_MATCHER.matches(file) || MODULE_INFO_MATCHER.matches(file)) {
         return FileVisitResult.CONTINUE;
       }
 
+      ScanMetrics.FILES.increment();
       if (SOURCE_FILE_MATCHER.matches(file)) {
         builder.addSourceFile(SourceFile.create(file));
       } else if (CLASS_FILE_MATCHER.matches(file)) {
-        recordClassFile(ClassFile.create(file));
+        cache
+            .load(
+                file,
+                attrs,
+                options,
+                f -> ImmutableList.of(ClassFile.create(options.extractor(), f)))
+            .forEach(this::recordClassFile);
       } else if (JAR_FILE_MATCHER.matches(file)) {
-        JarFile jarFile = new JarFile(file.toFile());
-        for (Enumeration<JarEntry> em = jarFile.entries(); em.hasMoreElements(); ) {
-          JarEntry entry = em.nextElement();
-          String name = entry.getName();
-          if (name.endsWith(".class") && !name.endsWith("package-info.class")) {
-            try (InputStream is = jarFile.getInputStream(entry)) {
-              recordClassFile(ClassFile.create(file.toString(), name, is));
-            }
-          }
+        JarScanEvent event = new JarScanEvent();
+        event.begin();
+        ImmutableList<ClassFile> classFiles =
+            cache.load(file, attrs, options, f -> readJar(f, options));
+        event.end();
+        if (event.shouldCommit()) {
+          event.path = file.toString();
+          event.bytes = attrs.size();
+          event.classes = classFiles.size();
+          event.commit();
         }
+        classFiles.forEach(this::recordClassFile);
       }
       return FileVisitResult.CONTINUE;
     }
 
     private void recordClassFile(ClassFile classFile) {
       if (usedDigests.contains(classFile.digest())) {
+        ScanMetrics.DUPLICATES.increment();
         return;
       }
       usedDigests.add(classFile.digest());
@@ -0,0 +1,102 @@
+/*
+ * Copyright © 2019 Andrew Rice (acr31@cam.ac.uk)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.ac.cam.acr31.autorebuild;
+
+import com.google.auto.value.AutoValue;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableSet;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+// Which jar entries might define each owner, built from the jar central directories alone
+class OwnerDirectory {
+
+  private static final String VERSIONS_PREFIX = "META-INF/versions/";
+  // where wars and Spring Boot jars keep their own classes
+  private static final ImmutableList<String> CLASSES_PREFIXES =
+      ImmutableList.of("WEB-INF/classes/", "BOOT-INF/classes/");
+
+  private final ImmutableListMultimap<String, Entry> entries;
+
+  private OwnerDirectory(ImmutableListMultimap<String, Entry> entries) {
+    this.entries = entries;
+  }
+
+  static OwnerDirectory read(Iterable<Path> jars, int release) throws IOException {
+    ImmutableListMultimap.Builder<String, Entry> entries = ImmutableListMultimap.builder();
+    for (Path jar : jars) {
+      for (String name : classEntries(jar, release)) {
+        entries.put(entryDescriptor(name), Entry.create(jar, name));
+      }
+    }
+    return new OwnerDirectory(entries.build());
+  }
+
+  static ImmutableList<String> classEntries(Path jar, int release) throws IOException {
+    ImmutableList.Builder<String> names = ImmutableList.builder();
+    try (JarFile jarFile = JarEntries.open(jar, release)) {
+      for (JarEntry entry : JarEntries.classEntries(jarFile)) {
+        names.add(entry.getRealName());
+      }
+    }
+    return names.build();
+  }
+
+  // The descriptor we expect a jar entry to define, judged from its name alone
+  static String entryDescriptor(String entryName) {
+    String name = entryName.substring(0, entryName.length() - ".class".length());
+    if (name.startsWith(VERSIONS_PREFIX)) {
+      int slash = name.indexOf('/', VERSIONS_PREFIX.length());
+      if (slash != -1) {
+        name = name.substring(slash + 1);
+      }
+    }
+    for (String prefix : CLASSES_PREFIXES) {
+      if (name.startsWith(prefix)) {
+        return name.substring(prefix.length());
+      }
+    }
+    return name;
+  }
+
+  ImmutableList<Entry> entries(String descriptor) {
+    return entries.get(descriptor);
+  }
+
+  ImmutableSet<String> descriptors() {
+    return entries.keySet();
+  }
+
+  int size() {
+    return entries.size();
+  }
+
+  @AutoValue
+  abstract static class Entry {
+
+    abstract Path jar();
+
+    abstract String name();
+
+    static Entry create(Path jar, String name) {
+      return new AutoValue_OwnerDirectory_Entry(jar, name);
+    }
+  }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright © 2019 Andrew Rice (acr31@cam.ac.uk)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.ac.cam.acr31.autorebuild;
+
+import com.google.auto.value.AutoValue;
+import com.google.common.collect.ImmutableList;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+
+// The files beneath a project root that a scan is interested in, found without reading them
+@AutoValue
+abstract class ProjectFiles {
+
+  abstract ImmutableList<Path> sourceFiles();
+
+  abstract ImmutableList<Path> classFiles();
+
+  abstract ImmutableList<Path> jarFiles();
+
+  static ProjectFiles list(Path projectRoot) throws IOException {
+    ImmutableList.Builder<Path> sourceFiles = ImmutableList.builder();
+    ImmutableList.Builder<Path> classFiles = ImmutableList.builder();
+    ImmutableList.Builder<Path> jarFiles = ImmutableList.builder();
+    Files.walkFileTree(
+        projectRoot,
+        new SimpleFileVisitor<>() {
+          @Override
+          public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+            if (OriginalProject.PACKAGE_INFO_MATCHER.matches(file)
+                || OriginalProject.MODULE_INFO_MATCHER.matches(file)) {
+              return FileVisitResult.CONTINUE;
+            }
+            ScanMetrics.FILES.increment();
+            if (OriginalProject.SOURCE_FILE_MATCHER.matches(file)) {
+              sourceFiles.add(file);
+            } else if (OriginalProject.CLASS_FILE_MATCHER.matches(file)) {
+              classFiles.add(file);
+            } else if (OriginalProject.JAR_FILE_MATCHER.matches(file)) {
+              jarFiles.add(file);
+            }
+            return FileVisitResult.CONTINUE;
+          }
+        });
+    return new AutoValue_ProjectFiles(sourceFiles.build(), classFiles.build(), jarFiles.build());
+  }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright © 2019 Andrew Rice (acr31@cam.ac.uk)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.ac.cam.acr31.autorebuild;
+
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.MultimapBuilder;
+import com.google.common.collect.Multiset;
+import com.google.common.collect.SetMultimap;
+import java.util.HashSet;
+import java.util.Set;
+import uk.ac.cam.acr31.autorebuild.clazzinfo.ClassFile;
+
+// Class files published by a scan that is still running. Lookups block only while entries that
+// might define the requested descriptor are still waiting to be parsed. What an archive nested in a
+// jar holds is only known once it has been streamed, so while any nested archive is still being
+// read every lookup waits.
+class ProviderIndex implements ClassFileLookup {
+
+  private final SetMultimap<String, ClassFile> classFiles;
+  private final Multiset<String> pending;
+  private final Set<String> usedDigests;
+  private int pendingNested;
+  private boolean complete;
+  private Throwable failure;
+
+  ProviderIndex() {
+    classFiles = MultimapBuilder.hashKeys().hashSetValues().build();
+    pending = HashMultiset.create();
+    usedDigests = new HashSet<>();
+  }
+
+  synchronized void expect(String entryName) {
+    pending.add(OwnerDirectory.entryDescriptor(entryName));
+  }
+
+  // A jar holding nested archives is about to be parsed
+  synchronized void expectNested() {
+    pendingNested++;
+  }
+
+  synchronized void nestedDone() {
+    pendingNested--;
+    notifyAll();
+  }
+
+  synchronized void add(ClassFile classFile) {
+    if (usedDigests.add(classFile.digest())) {
+      classFiles.put(classFile.descriptor(), classFile);
+    } else {
+      ScanMetrics.DUPLICATES.increment();
+    }
+  }
+
+  synchronized void publish(ClassFile classFile) {
+    add(classFile);
+    // Only top level entries were expected, so a nested class must not use up their slots
+    boolean nested =
+        classFile.classFileJar().isPresent()
+            && classFile.classFileJar().get().contains(JarEntries.NESTED_SEPARATOR);
+    if (!nested) {
+      pending.remove(OwnerDirectory.entryDescriptor(classFile.classFileName()));
+    }
+    notifyAll();
+  }
+
+  synchronized void complete() {
+    complete = true;
+    notifyAll();
+  }
+
+  synchronized void fail(Throwable t) {
+    failure = t;
+    notifyAll();
+  }
+
+  synchronized ImmutableSet<ClassFile> classFiles() {
+    return ImmutableSet.copyOf(classFiles.values());
+  }
+
+  @Override
+  public synchronized Set<ClassFile> get(String descriptor) {
+    while (!complete && failure == null && (pendingNested > 0 || pending.contains(descriptor))) {
+      try {
+        wait();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("Interrupted waiting for " + descriptor, e);
+      }
+    }
+    if (failure != null) {
+      throw new IllegalStateException("Class path scan failed", failure);
+    }
+    return ImmutableSet.copyOf(classFiles.get(descriptor));
+  }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright © 2019 Andrew Rice (acr31@cam.ac.uk)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.ac.cam.acr31.autorebuild;
+
+import static com.google.common.collect.ImmutableSet.toImmutableSet;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+import java.util.HashSet;
+import java.util.Optional;
+import java.util.Set;
+import uk.ac.cam.acr31.autorebuild.clazzinfo.ClassFile;
+import uk.ac.cam.acr31.autorebuild.clazzinfo.Identifier;
+import uk.ac.cam.acr31.autorebuild.metrics.Counter;
+import uk.ac.cam.acr31.autorebuild.metrics.Metrics;
+import uk.ac.cam.acr31.autorebuild.metrics.Timer;
+
+class Providers {
+
+  private static final Timer PROVIDES =
+      Metrics.global().timer("search_provides", "Time to find the providers of an identifier");
+  private static final Counter PRECOMPUTED =
+      Metrics.global()
+          .counter("search_provides_precomputed", "Classes checked against a precomputed closure");
+
+  // Inheritance deeper than this is assumed to be a cycle
+  private static final int MAX_DEPTH = 64;
+
+  private final ClassFileLookup classFiles;
+  private final StandardLibrary standardLibrary;
+  // a frozen store has already worked out what each of its classes inherits from
+  private final Optional<FrozenClassFileStore> frozen;
+  // kept up to date by whoever changes the lookup; lookups that might change unannounced, such as
+  // a scan still in progress, are walked every time instead
+  private final Optional<HierarchyIndex> hierarchy;
+
+  Providers(ClassFileLookup classFiles, StandardLibrary standardLibrary) {
+    this(classFiles, standardLibrary, Optional.empty());
+  }
+
+  Providers(
+      ClassFileLookup classFiles,
+      StandardLibrary standardLibrary,
+      Optional<HierarchyIndex> hierarchy) {
+    this.classFiles = classFiles;
+    this.standardLibrary = standardLibrary;
+    this.frozen =
+        classFiles instanceof FrozenClassFileStore
+            ? Optional.of((FrozenClassFileStore) classFiles)
+            : Optional.empty();
+    this.hierarchy = hierarchy;
+  }
+
+  // An index of what each class inherits from, looking at both the standard library and every
+  // version in the lookup
+  static HierarchyIndex hierarchy(ClassFileLookup classFiles, StandardLibrary standardLibrary) {
+    return new HierarchyIndex(
+        descriptor -> {
+          Optional<ClassFile> lib = standardLibrary.load(descriptor);
+          Set<ClassFile> versions = classFiles.get(descriptor);
+          return lib.isPresent()
+              ? Iterables.concat(ImmutableList.of(lib.get()), versions)
+              : versions;
+        });
+  }
+
+  // Number of candidate versions of the class
+  int versions(String owner) {
+    return classFiles.get(owner).size();
+  }
+
+  // True if the class and everything it inherits from has at most one candidate version, so that
+  // what it defines does not depend on which versions the search has chosen
+  boolean hasSingleVersion(String descriptor) {
+    return hasSingleVersion(descriptor, new HashSet<>());
+  }
+
+  private boolean hasSingleVersion(String descriptor, Set<String> visited) {
+    if (!visited.add(descriptor)) {
+      return true;
+    }
+    Set<ClassFile> versions = classFiles.get(descriptor);
+    if (versions.size() > 1) {
+      return false;
+    }
+    for (ClassFile version : versions) {
+      for (String ancestor : version.ancestors()) {
+        if (!hasSingleVersion(ancestor, visited)) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  ImmutableSet<ClassFile> provides(Identifier unresolved) {
+    long start = System.nanoTime();
+
+    String owner = unresolved.owner();
+    String name = unresolved.name();
+
+    try {
+      return classFiles.get(owner).stream()
+          .filter(classFile -> provides(classFile, name))
+          .collect(toImmutableSet());
+    } finally {
+      PROVIDES.recordSince(start);
+    }
+  }
+
+  private boolean provides(ClassFile classFile, String name) {
+    if (frozen.isPresent()) {
+      Optional<Boolean> provided = frozen.get().provides(classFile, name);
+      if (provided.isPresent()) {
+        PRECOMPUTED.increment();
+        return provided.get();
+      }
+    }
+    if (hierarchy.isPresent()) {
+      return hierarchy.get().closure(classFile).stream().anyMatch(c -> c.declares(name));
+    }
+    return provides(classFile, name, 0);
+  }
+
+  private boolean provides(ClassFile classFile, String name, int depth) {
+    if (classFile.declares(name)) {
+      return true;
+    }
+    if (depth > MAX_DEPTH) {
+      return false;
+    }
+    for (String parent : classFile.ancestors()) {
+      Optional<ClassFile> lib = standardLibrary.load(parent);
+      if (lib.isPresent() && provides(lib.get(), name, depth + 1)) {
+        return true;
+      }
+      for (ClassFile parentClassFile : classFiles.get(parent)) {
+        if (provides(parentClassFile, name, depth + 1)) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+}
@@ -17,17 +17,33 @@
 package uk.ac.cam.acr31.autorebuild;
 
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSetMultimap;
+import com.google.common.collect.ImmutableSortedSet;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
+import java.util.TreeSet;
 import uk.ac.cam.acr31.autorebuild.clazzinfo.ClassFile;
 import uk.ac.cam.acr31.autorebuild.clazzinfo.Identifier;
+import uk.ac.cam.acr31.autorebuild.jfr.PruneEvent;
+import uk.ac.cam.acr31.autorebuild.metrics.Counter;
+import uk.ac.cam.acr31.autorebuild.metrics.Metrics;
 
 public class Repository {
 
+  private static final Counter REMOVALS =
+      Metrics.global().counter("search_removals", "Classes removed for missing identifiers");
+
   private final ClassFileStore classFiles;
   private final IdentifierStore unresolved;
   private final IdentifierStore used;
+  private final TreeSet<Identifier> unresolvable;
+  private SearchObserver observer = SearchObserver.NONE;
+  private Optional<CheckpointState> checkpointState = Optional.empty();
 
   Repository() {
     this(new StandardLibrary());
@@ -37,12 +53,17 @@ public class Repository {
     classFiles = new ClassFileStore(standardLibrary);
     unresolved = new IdentifierStore();
     used = new IdentifierStore();
+    unresolvable = new TreeSet<>();
   }
 
   public ImmutableSet<ClassFile> classes() {
     return classFiles.entries();
   }
 
+  void setObserver(SearchObserver observer) {
+    this.observer = observer;
+  }
+
   public int unresolvedCount() {
     return unresolved.size();
   }
@@ -57,12 +78,16 @@ public class Repository {
 
     // Check that this class standardLibrary all the identifiers that we need
     Map<String, Identifier> namesInToAdd = classFiles.definedNames(toAdd);
-    if (!namesInToAdd.keySet().containsAll(used.names(toAdd.descriptor()))) {
+    if (!used.namesWithin(toAdd.descriptor(), namesInToAdd.keySet())) {
+      observer.added(toAdd, false);
       return false;
     }
+    observer.added(toAdd, true);
 
-    // Resolve any unresolved identifiers now provided by this class
-    for (Identifier unresolvedIdentifier : unresolved.identifiers(toAdd.descriptor())) {
+    // Resolve any unresolved identifiers now provided by this class. They are only removed from
+    // unresolved afterwards so that the loop can read a view of it.
+    List<Identifier> resolved = new ArrayList<>();
+    for (Identifier unresolvedIdentifier : unresolved.identifiersView(toAdd.descriptor())) {
       Identifier resolving = namesInToAdd.get(unresolvedIdentifier.name());
       if (resolving != null) {
         used.add(unresolvedIdentifier, unresolved.referents(unresolvedIdentifier));
@@ -71,20 +96,22 @@ public class Repository {
         if (!resolving.owner().equals(toAdd.descriptor())) {
           used.add(resolving, toAdd);
         }
-        unresolved.remove(unresolvedIdentifier);
+        resolved.add(unresolvedIdentifier);
       }
     }
+    resolved.forEach(unresolved::remove);
 
     Set<String> descriptorsToCheckForMissingIdentifiers = new HashSet<>();
     descriptorsToCheckForMissingIdentifiers.add(toAdd.descriptor());
 
     classFiles.add(toAdd);
+    checkpointState.ifPresent(state -> state.classAdded(toAdd));
 
     // Add any identifiers this class requires to unresolved
     for (Identifier identifier : toAdd.referenced()) {
 
       boolean found = false;
-      for (ClassFile potential : classFiles.entries(identifier.owner())) {
+      for (ClassFile potential : classFiles.versions(identifier.owner())) {
         Map<String, Identifier> potentialNames = classFiles.definedNames(potential);
         Identifier foundIdentifier = potentialNames.get(identifier.name());
         if (foundIdentifier != null) {
@@ -116,15 +143,31 @@ public class Repository {
   }
 
   private void removeClassesWithMissingIdentifiers(String descriptor) {
-    Set<String> usedNames = used.names(descriptor);
-    for (ClassFile classFile : classFiles.entries(descriptor)) {
+    PruneEvent event = new PruneEvent();
+    event.begin();
+    List<ClassFile> missing = new ArrayList<>();
+    final int versions = classFiles.versions(descriptor).size();
+    for (ClassFile classFile : classFiles.versions(descriptor)) {
       Map<String, Identifier> namesToOwners = classFiles.definedNames(classFile);
-      if (!namesToOwners.keySet().containsAll(usedNames)) {
-        classFiles.remove(classFile);
-        used.removeReferredFrom(classFile);
-        unresolved.removeReferredFrom(classFile);
+      if (!used.namesWithin(descriptor, namesToOwners.keySet())) {
+        missing.add(classFile);
       }
     }
+    for (ClassFile classFile : missing) {
+      observer.removed(classFile);
+      classFiles.remove(classFile);
+      checkpointState.ifPresent(state -> state.classRemoved(classFile));
+      REMOVALS.increment();
+      used.removeReferredFrom(classFile);
+      unresolved.removeReferredFrom(classFile);
+    }
+    event.end();
+    if (event.shouldCommit()) {
+      event.descriptor = descriptor;
+      event.versions = versions;
+      event.removed = missing.size();
+      event.commit();
+    }
   }
 
   public boolean isSatisfied() {
@@ -135,11 +178,88 @@ public class Repository {
     return unresolved.next();
   }
 
+  ImmutableSet<Identifier> unresolvedIdentifiers() {
+    return unresolved.identifiers();
+  }
+
+  boolean isUnresolved(Identifier identifier) {
+    return unresolved.contains(identifier);
+  }
+
   public int usedCount() {
     return used.size();
   }
 
   public void unresolveable(Identifier next) {
+    observer.unresolvable(next);
     unresolved.remove(next);
+    unresolvable.add(next);
+    checkpointState.ifPresent(state -> state.unresolvable(next));
+  }
+
+  public ImmutableSortedSet<Identifier> unresolvable() {
+    return ImmutableSortedSet.copyOf(unresolvable);
+  }
+
+  ImmutableSetMultimap<Identifier, ClassFile> used() {
+    return used.referents();
+  }
+
+  Set<ClassFile> unresolvedReferents(Identifier identifier) {
+    return unresolved.referents(identifier);
+  }
+
+  Checkpoint checkpoint() {
+    return Checkpoint.of(classFiles.allEntries(), used, unresolved, unresolvable);
+  }
+
+  // Starts keeping a copy of the state for checkpoints, which is only copied in full here
+  CheckpointState trackCheckpointState() {
+    if (checkpointState.isPresent()) {
+      throw new IllegalStateException("Checkpoint state is already tracked");
+    }
+    CheckpointState state =
+        new CheckpointState(classFiles.allEntries(), used, unresolved, unresolvable);
+    used.recordChanges(state::usedChanged);
+    unresolved.recordChanges(state::unresolvedChanged);
+    checkpointState = Optional.of(state);
+    return state;
+  }
+
+  // Puts back the state recorded in a checkpoint, finding its classes among the candidates
+  static Repository restore(
+      Checkpoint checkpoint,
+      Iterable<ClassFile> generatedClasses,
+      ClassFileLookup candidates,
+      StandardLibrary standardLibrary) {
+    Map<String, ClassFile> byDigest = new HashMap<>();
+    generatedClasses.forEach(classFile -> byDigest.put(classFile.digest(), classFile));
+    for (String descriptor : checkpoint.classes().keySet()) {
+      candidates.get(descriptor).forEach(classFile -> byDigest.put(classFile.digest(), classFile));
+    }
+
+    Repository repository = new Repository(standardLibrary);
+    for (Map.Entry<String, String> entry : checkpoint.classes().entries()) {
+      repository.classFiles.add(find(byDigest, entry.getValue()));
+    }
+    checkpoint.used().forEach(repository.used::add);
+    for (Map.Entry<String, Identifier> entry : checkpoint.usedBy().entries()) {
+      repository.used.add(entry.getValue(), find(byDigest, entry.getKey()));
+    }
+    checkpoint.unresolved().forEach(repository.unresolved::add);
+    for (Map.Entry<String, Identifier> entry : checkpoint.unresolvedBy().entries()) {
+      repository.unresolved.add(entry.getValue(), find(byDigest, entry.getKey()));
+    }
+    repository.unresolvable.addAll(checkpoint.unresolvable());
+    return repository;
+  }
+
+  private static ClassFile find(Map<String, ClassFile> byDigest, String digest) {
+    ClassFile classFile = byDigest.get(digest);
+    if (classFile == null) {
+      throw new IllegalArgumentException(
+          "Checkpoint does not match the project: no class with digest " + digest);
+    }
+    return classFile;
   }
 }
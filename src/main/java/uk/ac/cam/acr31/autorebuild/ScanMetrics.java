@@ -0,0 +1,38 @@
+/*
+ * Copyright © 2019 Andrew Rice (acr31@cam.ac.uk)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.ac.cam.acr31.autorebuild;
+
+import uk.ac.cam.acr31.autorebuild.metrics.Counter;
+import uk.ac.cam.acr31.autorebuild.metrics.Metrics;
+
+// Counters shared by the full, streaming and lazy scans
+final class ScanMetrics {
+
+  static final Counter FILES =
+      Metrics.global().counter("scan_files", "Source, class and jar files found in the project");
+  static final Counter JARS = Metrics.global().counter("scan_jars", "Jar files opened for parsing");
+  static final Counter DUPLICATES =
+      Metrics.global().counter("scan_duplicates", "Class files dropped as duplicates by digest");
+  static final Counter NESTED_JARS =
+      Metrics.global().counter("scan_nested_jars", "Archives streamed from inside another jar");
+  static final Counter VERSIONED_ENTRIES =
+      Metrics.global()
+          .counter("scan_versioned_entries", "Jar entries read from a release specific variant");
+
+  private ScanMetrics() {
+  }
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright © 2019 Andrew Rice (acr31@cam.ac.uk)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.ac.cam.acr31.autorebuild;
+
+import com.google.auto.value.AutoValue;
+import uk.ac.cam.acr31.autorebuild.clazzinfo.Extractor;
+
+// How the class files of a project are read. Passed to every scan rather than held globally since
+// a daemon or batch serves requests with different settings in one process.
+@AutoValue
+abstract class ScanOptions {
+
+  // how facts are read from class files
+  abstract Extractor extractor();
+
+  // the Java release whose variants are read from multi-release jars
+  abstract int release();
+
+  static ScanOptions create(Extractor extractor, int release) {
+    return new AutoValue_ScanOptions(extractor, release);
+  }
+
+  static ScanOptions defaults() {
+    return create(Extractor.CONSTANT_POOL, Runtime.version().feature());
+  }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright © 2019 Andrew Rice (acr31@cam.ac.uk)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.ac.cam.acr31.autorebuild;
+
+import com.google.common.collect.ImmutableSet;
+import com.sun.management.GarbageCollectionNotificationInfo;
+import com.sun.management.GcInfo;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.openmbean.CompositeData;
+import uk.ac.cam.acr31.autorebuild.SearchResult.StopReason;
+
+// The limits on a single search, checked between its steps so that it can stop with whatever it
+// has found so far
+final class SearchBudget {
+
+  private static final ImmutableSet<String> HEAP_POOLS =
+      ManagementFactory.getMemoryPoolMXBeans().stream()
+          .filter(pool -> pool.getType() == MemoryType.HEAP)
+          .map(MemoryPoolMXBean::getName)
+          .collect(ImmutableSet.toImmutableSet());
+
+  // Heap in use across every heap pool after the most recent collection, young or full. A young
+  // collection reports the old generation as it stands, including what was just promoted, whereas
+  // the old generation's own collection usage waits for a full or mixed collection. Kept up to date
+  // by GC notifications so that checking the budget is a single read.
+  private static final AtomicLong LIVE_HEAP = new AtomicLong();
+
+  static {
+    for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+      if (collector instanceof NotificationEmitter) {
+        ((NotificationEmitter) collector)
+            .addNotificationListener(SearchBudget::collected, null, null);
+      }
+    }
+  }
+
+  private final long start;
+  private final OptionalLong timeBudgetNanos;
+  private final OptionalLong iterationBudget;
+  private final OptionalLong heapBudget;
+  private long iterations;
+  private Optional<StopReason> exhausted = Optional.empty();
+
+  private SearchBudget(SearchOptions options) {
+    this.start = System.nanoTime();
+    this.timeBudgetNanos =
+        options.timeBudget().map(d -> OptionalLong.of(d.toNanos())).orElse(OptionalLong.empty());
+    this.iterationBudget = options.iterationBudget();
+    this.heapBudget = options.heapBudget();
+  }
+
+  static SearchBudget start(SearchOptions options) {
+    return new SearchBudget(options);
+  }
+
+  void countIteration() {
+    iterations++;
+  }
+
+  // Whether the search should stop. Once a budget has run out this stays true.
+  boolean isExhausted() {
+    if (exhausted.isPresent()) {
+      return true;
+    }
+    if (timeBudgetNanos.isPresent()
+        && System.nanoTime() - start >= timeBudgetNanos.getAsLong()) {
+      exhausted = Optional.of(StopReason.TIME_BUDGET);
+    } else if (iterationBudget.isPresent() && iterations >= iterationBudget.getAsLong()) {
+      exhausted = Optional.of(StopReason.ITERATION_BUDGET);
+    } else if (heapBudget.isPresent() && LIVE_HEAP.get() > heapBudget.getAsLong()) {
+      exhausted = Optional.of(StopReason.HEAP_BUDGET);
+    }
+    return exhausted.isPresent();
+  }
+
+  StopReason stopReason() {
+    return exhausted.orElse(StopReason.COMPLETE);
+  }
+
+  private static void collected(Notification notification, Object handback) {
+    if (!notification
+        .getType()
+        .equals(GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION)) {
+      return;
+    }
+    GcInfo info =
+        GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData())
+            .getGcInfo();
+    long used = 0;
+    for (Map.Entry<String, MemoryUsage> pool : info.getMemoryUsageAfterGc().entrySet()) {
+      if (HEAP_POOLS.contains(pool.getKey())) {
+        used += pool.getValue().getUsed();
+      }
+    }
+    LIVE_HEAP.set(used);
+  }
+}
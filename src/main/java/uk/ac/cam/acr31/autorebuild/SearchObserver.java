@@ -0,0 +1,48 @@
+/*
+ * Copyright © 2019 Andrew Rice (acr31@cam.ac.uk)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package uk.ac.cam.acr31.autorebuild;
+
+import java.util.Set;
+import uk.ac.cam.acr31.autorebuild.clazzinfo.ClassFile;
+import uk.ac.cam.acr31.autorebuild.clazzinfo.Identifier;
+
+// Told about each step of a search as it happens. Calls are made on the search thread, so they
+// should return quickly.
+interface SearchObserver {
+
+  SearchObserver NONE = new SearchObserver() {};
+
+  // the search loop took the identifier to resolve next
+  default void popped(Identifier identifier, int unresolved, int used) {
+  }
+
+  // the candidates that provide the identifier
+  default void provided(Identifier identifier, Set<ClassFile> providers) {
+  }
+
+  // a class was offered to the repository, which only accepts it if it provides what is used
+  default void added(ClassFile classFile, boolean accepted) {
+  }
+
+  // a version was dropped for not providing an identifier that is used
+  default void removed(ClassFile classFile) {
+  }
+
+  default void unresolvable(Identifier identifier) {
+  }
+}
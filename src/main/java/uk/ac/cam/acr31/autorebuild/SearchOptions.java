@@ -0,0 +1,110 @@
+/*
+ * Copyright © 2019 Andrew Rice (acr31@cam.ac.uk)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.ac.cam.acr31.autorebuild;
+
+import com.google.auto.value.AutoValue;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.OptionalLong;
+
+@AutoValue
+public abstract class SearchOptions {
+
+  enum Strategy {
+    // add every provider of each unresolved identifier and prune versions that turn out not to fit
+    GREEDY,
+    // solve for the smallest set of classes which provides everything used, then let the greedy
+    // search finish anything left
+    MINIMAL_CLOSURE
+  }
+
+  abstract Optional<Solution> previousSolution();
+
+  abstract Strategy strategy();
+
+  // versions the minimal closure solver may try before settling for the best closure so far
+  abstract long decisionLimit();
+
+  // how long the search may run before stopping with the classes found so far
+  abstract Optional<Duration> timeBudget();
+
+  // unresolved identifiers the search may process before stopping
+  abstract OptionalLong iterationBudget();
+
+  // bytes of live heap above which the search stops
+  abstract OptionalLong heapBudget();
+
+  // where to write checkpoints of the search as it goes
+  abstract Optional<Path> checkpoint();
+
+  abstract Duration checkpointInterval();
+
+  // carry on from this checkpoint rather than starting again
+  abstract Optional<Checkpoint> resumeFrom();
+
+  // where to record every step of the search for TraceReplay
+  abstract Optional<Path> trace();
+
+  static SearchOptions defaults() {
+    return builder().build();
+  }
+
+  public static Builder builder() {
+    return new AutoValue_SearchOptions.Builder()
+        .setStrategy(Strategy.GREEDY)
+        .setDecisionLimit(10_000)
+        .setCheckpointInterval(Duration.ofSeconds(30));
+  }
+
+  @AutoValue.Builder
+  public abstract static class Builder {
+
+    abstract Builder setPreviousSolution(Solution previousSolution);
+
+    abstract Builder setStrategy(Strategy strategy);
+
+    abstract Builder setDecisionLimit(long decisionLimit);
+
+    abstract Builder setTimeBudget(Duration timeBudget);
+
+    abstract Builder setIterationBudget(long iterationBudget);
+
+    abstract Builder setHeapBudget(long heapBudget);
+
+    abstract Builder setCheckpoint(Path checkpoint);
+
+    abstract Builder setCheckpointInterval(Duration checkpointInterval);
+
+    abstract Builder setResumeFrom(Checkpoint resumeFrom);
+
+    abstract Builder setTrace(Path trace);
+
+    abstract SearchOptions autoBuild();
+
+    SearchOptions build() {
+      SearchOptions options = autoBuild();
+      // The solver runs to completion before anything is added to the repository, so checkpoints
+      // would not record any of its progress
+      if (options.strategy() == Strategy.MINIMAL_CLOSURE && options.checkpoint().isPresent()) {
+        throw new IllegalArgumentException(
+            "Checkpoints are not supported by the minimal_closure strategy");
+      }
+      return options;
+    }
+  }
+}
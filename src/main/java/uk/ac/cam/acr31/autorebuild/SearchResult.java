@@ -0,0 +1,50 @@
+/*
+ * Copyright © 2019 Andrew Rice (acr31@cam.ac.uk)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.ac.cam.acr31.autorebuild;
+
+import com.google.auto.value.AutoValue;
+import com.google.common.collect.ImmutableSet;
+import uk.ac.cam.acr31.autorebuild.clazzinfo.Identifier;
+
+@AutoValue
+abstract class SearchResult {
+
+  enum StopReason {
+    // every identifier was resolved or found to be unresolvable
+    COMPLETE,
+    TIME_BUDGET,
+    ITERATION_BUDGET,
+    HEAP_BUDGET
+  }
+
+  // the classes chosen so far, which is the whole closure only if the search completed
+  abstract Repository repository();
+
+  abstract StopReason stopReason();
+
+  // identifiers still unresolved when a budget ran out
+  abstract ImmutableSet<Identifier> remaining();
+
+  boolean isComplete() {
+    return stopReason() == StopReason.COMPLETE;
+  }
+
+  static SearchResult create(
+      Repository repository, StopReason stopReason, ImmutableSet<Identifier> remaining) {
+    return new AutoValue_SearchResult(repository, stopReason, remaining);
+  }
+}
@@ -0,0 +1,368 @@
+/*
+ * Copyright © 2019 Andrew Rice (acr31@cam.ac.uk)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package uk.ac.cam.acr31.autorebuild;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import uk.ac.cam.acr31.autorebuild.clazzinfo.ClassFile;
+import uk.ac.cam.acr31.autorebuild.clazzinfo.Identifier;
+import uk.ac.cam.acr31.autorebuild.metrics.Counter;
+import uk.ac.cam.acr31.autorebuild.metrics.Metrics;
+
+// Records every step of a search to a binary file for TraceReplay. The search thread puts events
+// into a ring buffer and a background thread encodes them, so the search never waits on the disk
+// unless the ring fills up.
+//
+// The file starts with MAGIC and VERSION. Each record is a type byte, the nanoseconds since the
+// previous record and then the fields for that type, all as unsigned varints. Strings are written
+// once in a STRING record and referred to by number afterwards. A class is the string
+// "descriptor digest".
+final class SearchTrace implements SearchObserver, AutoCloseable {
+
+  static final int MAGIC = 0x41525452;
+  static final int VERSION = 1;
+
+  // id, then the string in modified UTF-8
+  static final int STRING = 0;
+  // owner, name, unresolved count, used count
+  static final int POPPED = 1;
+  // owner, name, number of providers, then as many classes as were recorded
+  static final int PROVIDED = 2;
+  // class, 1 if accepted
+  static final int ADDED = 3;
+  // class
+  static final int REMOVED = 4;
+  // owner, name
+  static final int UNRESOLVABLE = 5;
+
+  // Only this many providers of an identifier are recorded, so that one record always fits
+  static final int MAX_PROVIDERS = 1024;
+
+  private static final int DEFAULT_CAPACITY = 1 << 20;
+  private static final long IDLE_PARK_NANOS = 100_000;
+
+  private static final Counter EVENTS =
+      Metrics.global().counter("trace_events", "Search steps recorded in the trace");
+  private static final Counter WAITS =
+      Metrics.global().counter("trace_waits", "Times the search waited for the trace to catch up");
+
+  private static final SearchTrace DISABLED = new SearchTrace();
+
+  // Written only by the search thread
+  private final Ring ring;
+  private final Map<String, Integer> strings = new HashMap<>();
+  private long[] classes = new long[16];
+
+  private final Thread writer;
+  private volatile boolean closed;
+
+  private SearchTrace() {
+    ring = null;
+    writer = null;
+  }
+
+  private SearchTrace(OutputStream out, int capacity) {
+    ring = new Ring(capacity);
+    writer = new Thread(() -> drain(out), "trace-writer");
+    writer.setDaemon(true);
+    writer.start();
+  }
+
+  static SearchTrace create(SearchOptions options) {
+    Optional<Path> path = options.trace();
+    if (!path.isPresent()) {
+      return DISABLED;
+    }
+    try {
+      return new SearchTrace(Files.newOutputStream(path.get()), DEFAULT_CAPACITY);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  // A trace with room for only a few events, to exercise the ring wrapping around
+  static SearchTrace create(OutputStream out, int capacity) {
+    return new SearchTrace(out, capacity);
+  }
+
+  @Override
+  public void popped(Identifier identifier, int unresolved, int used) {
+    if (ring == null) {
+      return;
+    }
+    long owner = intern(identifier.owner());
+    long name = intern(identifier.name());
+    long position = start(POPPED, 4);
+    ring.set(position, owner);
+    ring.set(position + 1, name);
+    ring.set(position + 2, unresolved);
+    ring.set(position + 3, used);
+    ring.publish();
+  }
+
+  @Override
+  public void provided(Identifier identifier, Set<ClassFile> providers) {
+    if (ring == null) {
+      return;
+    }
+    long owner = intern(identifier.owner());
+    long name = intern(identifier.name());
+    int recorded = 0;
+    for (ClassFile provider : providers) {
+      if (recorded == MAX_PROVIDERS) {
+        break;
+      }
+      if (recorded == classes.length) {
+        classes = Arrays.copyOf(classes, classes.length * 2);
+      }
+      classes[recorded++] = intern(provider);
+    }
+    long position = start(PROVIDED, 3 + recorded);
+    ring.set(position, owner);
+    ring.set(position + 1, name);
+    ring.set(position + 2, providers.size());
+    for (int i = 0; i < recorded; i++) {
+      ring.set(position + 3 + i, classes[i]);
+    }
+    ring.publish();
+  }
+
+  @Override
+  public void added(ClassFile classFile, boolean accepted) {
+    if (ring == null) {
+      return;
+    }
+    long id = intern(classFile);
+    long position = start(ADDED, 2);
+    ring.set(position, id);
+    ring.set(position + 1, accepted ? 1 : 0);
+    ring.publish();
+  }
+
+  @Override
+  public void removed(ClassFile classFile) {
+    if (ring == null) {
+      return;
+    }
+    long id = intern(classFile);
+    ring.set(start(REMOVED, 1), id);
+    ring.publish();
+  }
+
+  @Override
+  public void unresolvable(Identifier identifier) {
+    if (ring == null) {
+      return;
+    }
+    long owner = intern(identifier.owner());
+    long name = intern(identifier.name());
+    long position = start(UNRESOLVABLE, 2);
+    ring.set(position, owner);
+    ring.set(position + 1, name);
+    ring.publish();
+  }
+
+  // Waits for everything recorded to be written
+  @Override
+  public void close() {
+    if (ring == null) {
+      return;
+    }
+    closed = true;
+    try {
+      writer.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private long intern(ClassFile classFile) {
+    return intern(classFile.descriptor() + " " + classFile.digest());
+  }
+
+  private long intern(String string) {
+    Integer id = strings.get(string);
+    if (id != null) {
+      return id;
+    }
+    id = strings.size();
+    strings.put(string, id);
+    long position = start(STRING, 1);
+    ring.set(position, id);
+    ring.setString(position, string);
+    ring.publish();
+    return id;
+  }
+
+  // Claims space for a record and returns the position of its first field
+  private long start(int type, int fields) {
+    EVENTS.increment();
+    long position = ring.claim(fields + 2);
+    ring.set(position, type);
+    ring.set(position + 1, System.nanoTime());
+    return position + 2;
+  }
+
+  private void drain(OutputStream out) {
+    long last = 0;
+    long tail = 0;
+    try (DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out, 1 << 16))) {
+      data.writeInt(MAGIC);
+      data.writeInt(VERSION);
+      while (true) {
+        final boolean done = closed;
+        long head = ring.published();
+        if (tail == head) {
+          if (done) {
+            break;
+          }
+          data.flush();
+          LockSupport.parkNanos(IDLE_PARK_NANOS);
+          continue;
+        }
+        while (tail < head) {
+          int type = (int) ring.get(tail);
+          long time = ring.get(tail + 1);
+          data.writeByte(type);
+          writeVarint(data, last == 0 ? 0 : time - last);
+          last = time;
+          int fields = fields(type, tail + 2);
+          for (int i = 0; i < fields; i++) {
+            writeVarint(data, ring.get(tail + 2 + i));
+          }
+          if (type == STRING) {
+            data.writeUTF(ring.takeString(tail + 2));
+          }
+          tail += fields + 2;
+        }
+        ring.release(tail);
+      }
+    } catch (IOException e) {
+      // The trace is only for diagnosis so this does not stop the search. The ring is still
+      // emptied so that the search is never held up waiting for space.
+      System.err.printf("Failed to write search trace: %s%n", e);
+      while (!closed || tail != ring.published()) {
+        tail = ring.published();
+        ring.release(tail);
+        LockSupport.parkNanos(IDLE_PARK_NANOS);
+      }
+    }
+  }
+
+  private int fields(int type, long position) {
+    switch (type) {
+      case STRING:
+        return 1;
+      case POPPED:
+        return 4;
+      case PROVIDED:
+        return 3 + (int) Math.min(ring.get(position + 2), MAX_PROVIDERS);
+      case ADDED:
+        return 2;
+      case REMOVED:
+        return 1;
+      case UNRESOLVABLE:
+        return 2;
+      default:
+        throw new IllegalStateException("Unknown trace record " + type);
+    }
+  }
+
+  private static void writeVarint(DataOutputStream data, long value) throws IOException {
+    while ((value & ~0x7FL) != 0) {
+      data.writeByte((int) ((value & 0x7F) | 0x80));
+      value >>>= 7;
+    }
+    data.writeByte((int) value);
+  }
+
+  // A ring of longs with one writer and one reader. The writer fills in a record and then publishes
+  // it, the reader releases the space once it has encoded it. Strings travel alongside in the slot
+  // of their record.
+  private static final class Ring {
+
+    private final long[] values;
+    private final String[] strings;
+    private final int mask;
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong released = new AtomicLong();
+    private long next;
+
+    Ring(int capacity) {
+      int size = Integer.highestOneBit(Math.max(capacity, 2 * (MAX_PROVIDERS + 5)) - 1) << 1;
+      values = new long[size];
+      strings = new String[size];
+      mask = size - 1;
+    }
+
+    long claim(int length) {
+      if (next + length - released.get() > values.length) {
+        WAITS.increment();
+        while (next + length - released.get() > values.length) {
+          Thread.yield();
+        }
+      }
+      long position = next;
+      next += length;
+      return position;
+    }
+
+    void set(long position, long value) {
+      values[(int) position & mask] = value;
+    }
+
+    void setString(long position, String string) {
+      strings[(int) position & mask] = string;
+    }
+
+    void publish() {
+      published.lazySet(next);
+    }
+
+    long published() {
+      return published.get();
+    }
+
+    long get(long position) {
+      return values[(int) position & mask];
+    }
+
+    String takeString(long position) {
+      int index = (int) position & mask;
+      String string = strings[index];
+      strings[index] = null;
+      return string;
+    }
+
+    void release(long position) {
+      released.lazySet(position);
+    }
+  }
+}
@@ -16,36 +16,195 @@
 
 package uk.ac.cam.acr31.autorebuild;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
-import java.util.TreeSet;
+import com.google.common.collect.Sets;
+import java.io.IOException;
+import java.util.Optional;
 import uk.ac.cam.acr31.autorebuild.clazzinfo.ClassFile;
 import uk.ac.cam.acr31.autorebuild.clazzinfo.Identifier;
+import uk.ac.cam.acr31.autorebuild.jfr.SearchIterationEvent;
+import uk.ac.cam.acr31.autorebuild.metrics.Counter;
+import uk.ac.cam.acr31.autorebuild.metrics.Metrics;
+import uk.ac.cam.acr31.autorebuild.metrics.Timer;
 
 public class Searcher {
 
+  private static final Counter ITERATIONS =
+      Metrics.global().counter("search_iterations", "Unresolved identifiers processed");
+  private static final Timer SEARCH_TIME =
+      Metrics.global().timer("search", "Time spent resolving identifiers");
+
   public static Repository search(OriginalProject originalProject) {
-    StandardLibrary standardLibrary = new StandardLibrary();
+    return search(originalProject, SearchOptions.defaults());
+  }
+
+  public static Repository search(OriginalProject originalProject, SearchOptions options) {
+    return search(originalProject, new StandardLibrary(), options).repository();
+  }
+
+  static SearchResult search(
+      OriginalProject originalProject, StandardLibrary standardLibrary, SearchOptions options) {
+    FrozenClassFileStore originalClasses =
+        FrozenClassFileStore.of(originalProject.classFiles(), standardLibrary);
+    return search(
+        originalProject.generatedClasses(), originalClasses, standardLibrary, options);
+  }
+
+  static SearchResult search(
+      ImmutableSet<ClassFile> generatedClasses,
+      ClassFileLookup candidates,
+      StandardLibrary standardLibrary,
+      SearchOptions options) {
+    SearchBudget budget = SearchBudget.start(options);
+    Providers providers = new Providers(candidates, standardLibrary);
+    try (SearchTrace trace = SearchTrace.create(options)) {
+      Repository repository;
+      if (options.resumeFrom().isPresent()) {
+        repository =
+            Repository.restore(
+                options.resumeFrom().get(), generatedClasses, candidates, standardLibrary);
+        repository.setObserver(trace);
+        System.out.printf(
+            "Resuming with %d classes and %d identifiers unresolved%n",
+            repository.classes().size(), repository.unresolvedCount());
+      } else if (options.strategy() == SearchOptions.Strategy.MINIMAL_CLOSURE) {
+        repository = newRepository(standardLibrary, trace);
+        repository.addClassFiles(generatedClasses);
+        MinimalClosureSolver.solve(
+                generatedClasses,
+                candidates,
+                standardLibrary,
+                providers,
+                options.decisionLimit(),
+                budget)
+            .ifPresent(repository::addClassFiles);
+      } else {
+        repository = newRepository(standardLibrary, trace);
+        seed(repository, generatedClasses, candidates, options);
+      }
+      try (Checkpointer checkpointer = Checkpointer.create(options)) {
+        resolve(repository, providers, trace, options, budget, checkpointer);
+        checkpointer.finish(repository);
+      }
+      return finish(repository, budget);
+    }
+  }
+
+  static SearchResult search(
+      StreamingScan scan, StandardLibrary standardLibrary, SearchOptions options)
+      throws IOException {
+    if (options.strategy() == SearchOptions.Strategy.MINIMAL_CLOSURE
+        || options.resumeFrom().isPresent()) {
+      // The solver and restoring a checkpoint need every candidate up front
+      return search(scan.await(), standardLibrary, options);
+    }
+    SearchBudget budget = SearchBudget.start(options);
+    Providers providers = new Providers(scan.providers(), standardLibrary);
+
+    try (SearchTrace trace = SearchTrace.create(options);
+        Checkpointer checkpointer = Checkpointer.create(options)) {
+      Repository repository = newRepository(standardLibrary, trace);
+      seed(repository, scan.generatedClasses(), scan.providers(), options);
+      resolve(repository, providers, trace, options, budget, checkpointer);
+
+      // Classes compiled from our sources might also turn up inside jars
+      ImmutableSet<ClassFile> generatedInJars =
+          Sets.difference(scan.await().generatedClasses(), scan.generatedClasses())
+              .immutableCopy();
+      if (!generatedInJars.isEmpty()) {
+        repository.addClassFiles(generatedInJars);
+        resolve(repository, providers, trace, options, budget, checkpointer);
+      }
+      checkpointer.finish(repository);
+      return finish(repository, budget);
+    }
+  }
+
+  private static Repository newRepository(
+      StandardLibrary standardLibrary, SearchObserver observer) {
     Repository repository = new Repository(standardLibrary);
-    repository.addClassFiles(originalProject.generatedClasses());
+    repository.setObserver(observer);
+    return repository;
+  }
 
-    ClassFileStore originalClasses = new ClassFileStore(standardLibrary);
-    originalProject.classFiles().forEach(originalClasses::add);
+  private static void seed(
+      Repository repository,
+      ImmutableSet<ClassFile> generatedClasses,
+      ClassFileLookup candidates,
+      SearchOptions options) {
+    repository.addClassFiles(generatedClasses);
+    if (options.previousSolution().isPresent()) {
+      ImmutableList<ClassFile> replayed =
+          options.previousSolution().get().replay(generatedClasses, candidates);
+      System.out.printf("Replaying %d classes from previous solution%n", replayed.size());
+      repository.addClassFiles(replayed);
+    }
+  }
 
-    TreeSet<Identifier> unresolved = new TreeSet<>();
-    while (!repository.isSatisfied()) {
-      Identifier next = repository.nextUnresolved();
+  private static void resolve(
+      Repository repository,
+      Providers providers,
+      SearchObserver observer,
+      SearchOptions options,
+      SearchBudget budget,
+      Checkpointer checkpointer) {
+    final long start = System.nanoTime();
+    Optional<Solution> previous = options.previousSolution();
+    UnitPropagation propagation = new UnitPropagation(repository, providers, previous, budget);
+    propagation.propagate();
+    checkpointer.maybeCheckpoint(repository);
+    while (!repository.isSatisfied() && !budget.isExhausted()) {
+      final SearchIterationEvent event = new SearchIterationEvent();
+      event.begin();
+      final Identifier next = repository.nextUnresolved();
+      observer.popped(next, repository.unresolvedCount(), repository.usedCount());
+      ITERATIONS.increment();
+      budget.countIteration();
       System.out.printf(
           "\rUnresolved: %07d, Used: %07d", repository.unresolvedCount(), repository.usedCount());
-      ImmutableSet<ClassFile> p = originalClasses.provides(next);
-      if (p.isEmpty()) {
+      if (previous.isPresent()
+          && previous.get().stillUnresolvable(next, repository.unresolvedReferents(next))) {
         repository.unresolveable(next);
-        unresolved.add(next);
       } else {
-        repository.addClassFiles(p);
+        ImmutableSet<ClassFile> p = providers.provides(next);
+        observer.provided(next, p);
+        event.providers = p.size();
+        if (p.isEmpty()) {
+          repository.unresolveable(next);
+        } else {
+          repository.addClassFiles(p);
+        }
       }
+      event.end();
+      if (event.shouldCommit()) {
+        event.owner = next.owner();
+        event.name = next.name();
+        event.unresolved = repository.unresolvedCount();
+        event.used = repository.usedCount();
+        event.commit();
+      }
+      checkpointer.maybeCheckpoint(repository);
     }
+    SEARCH_TIME.recordSince(start);
+    propagation.printSummary();
+  }
 
-    unresolved.forEach(next -> System.out.printf("Unresolved %s#%s%n", next.owner(), next.name()));
-    return repository;
+  private static SearchResult finish(Repository repository, SearchBudget budget) {
+    printUnresolved(repository);
+    SearchResult result =
+        SearchResult.create(repository, budget.stopReason(), repository.unresolvedIdentifiers());
+    if (!result.isComplete()) {
+      System.out.printf(
+          "Search stopped by %s with %d identifiers unresolved%n",
+          result.stopReason().name().toLowerCase(), result.remaining().size());
+    }
+    return result;
+  }
+
+  private static void printUnresolved(Repository repository) {
+    repository
+        .unresolvable()
+        .forEach(next -> System.out.printf("Unresolved %s#%s%n", next.owner(), next.name()));
   }
 }
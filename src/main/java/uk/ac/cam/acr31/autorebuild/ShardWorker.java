@@ -0,0 +1,62 @@
+/*
+ * Copyright © 2019 Andrew Rice (acr31@cam.ac.uk)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.ac.cam.acr31.autorebuild;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashSet;
+import java.util.Set;
+import uk.ac.cam.acr31.autorebuild.clazzinfo.ClassFile;
+import uk.ac.cam.acr31.autorebuild.clazzinfo.Extractor;
+
+// Entry point for the worker processes started by ShardedScan. Parses every class file and jar
+// named in the path list and writes the class files to a snapshot, dropping duplicates by digest.
+public class ShardWorker {
+
+  public static void main(String[] args) throws IOException {
+    if (args.length != 4) {
+      throw new IllegalArgumentException(
+          "Usage: ShardWorker <pathList> <snapshot> <extractor> <release>");
+    }
+    ScanOptions options =
+        ScanOptions.create(Extractor.valueOf(args[2]), Integer.parseInt(args[3]));
+    Set<String> usedDigests = new HashSet<>();
+    try (Snapshot.Writer writer = Snapshot.writer(Paths.get(args[1]))) {
+      for (String line : Files.readAllLines(Paths.get(args[0]), StandardCharsets.UTF_8)) {
+        Path file = Paths.get(line);
+        if (OriginalProject.JAR_FILE_MATCHER.matches(file)) {
+          OriginalProject.readJar(
+              file,
+              options,
+              classFile -> {
+                if (usedDigests.add(classFile.digest())) {
+                  writer.write(classFile);
+                }
+              });
+        } else {
+          ClassFile classFile = ClassFile.create(options.extractor(), file);
+          if (usedDigests.add(classFile.digest())) {
+            writer.write(classFile);
+          }
+        }
+      }
+    }
+  }
+}
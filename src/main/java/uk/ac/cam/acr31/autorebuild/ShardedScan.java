@@ -0,0 +1,152 @@
+/*
+ * Copyright © 2019 Andrew Rice (acr31@cam.ac.uk)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.ac.cam.acr31.autorebuild;
+
+import com.google.common.collect.ImmutableList;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+// Scans a project by splitting its class files and jars across separate worker JVMs. Workers share
+// nothing with each other or with this process except their input path lists and output snapshot
+// files in a temporary directory.
+class ShardedScan {
+
+  static OriginalProject load(Path projectRoot, int workers, ScanOptions options)
+      throws IOException {
+    ProjectFiles files = ProjectFiles.list(projectRoot);
+    OriginalProject.Builder builder = OriginalProject.builder();
+    for (Path file : files.sourceFiles()) {
+      builder.addSourceFile(SourceFile.create(file));
+    }
+
+    List<Path> inputs = new ArrayList<>(files.classFiles());
+    inputs.addAll(files.jarFiles());
+    ImmutableList<List<Path>> shards = partition(inputs, workers);
+
+    Path workDir = Files.createTempDirectory("autorebuild-shards");
+    List<Process> processes = new ArrayList<>();
+    try {
+      List<Path> outputs = new ArrayList<>();
+      for (int i = 0; i < shards.size(); i++) {
+        Path pathList = workDir.resolve("shard-" + i + ".txt");
+        Path output = workDir.resolve("shard-" + i + ".pb");
+        Files.write(
+            pathList,
+            shards.get(i).stream().map(Path::toString).collect(Collectors.toList()),
+            StandardCharsets.UTF_8);
+        processes.add(startWorker(pathList, output, options));
+        outputs.add(output);
+      }
+      for (int i = 0; i < processes.size(); i++) {
+        int exitCode = waitFor(processes.get(i));
+        if (exitCode != 0) {
+          throw new IOException("Scan worker " + i + " failed with exit code " + exitCode);
+        }
+      }
+
+      // Merge the shards in order, keeping the first class file seen with each digest
+      Set<String> usedDigests = new HashSet<>();
+      for (Path output : outputs) {
+        Snapshot.readClassFiles(
+            output,
+            classFile -> {
+              if (usedDigests.add(classFile.digest())) {
+                builder.addClassFile(classFile);
+              } else {
+                ScanMetrics.DUPLICATES.increment();
+              }
+            });
+      }
+    } finally {
+      // Only has an effect if a worker failed and the rest are still running
+      processes.forEach(Process::destroy);
+      Files.walk(workDir)
+          .map(Path::toFile)
+          .sorted(Comparator.reverseOrder())
+          .forEach(File::delete);
+    }
+    return builder.build();
+  }
+
+  // Assigns each file, largest first, to the shard with the fewest bytes so far. Empty shards are
+  // dropped so no worker is started without any input.
+  static ImmutableList<List<Path>> partition(List<Path> inputs, int shardCount)
+      throws IOException {
+    Map<Path, Long> sizes = new HashMap<>();
+    for (Path path : inputs) {
+      sizes.put(path, Files.size(path));
+    }
+    List<Path> bySize = new ArrayList<>(inputs);
+    bySize.sort(Comparator.comparing((Path path) -> sizes.get(path)).reversed());
+
+    List<List<Path>> shards = new ArrayList<>();
+    long[] totals = new long[shardCount];
+    for (int i = 0; i < shardCount; i++) {
+      shards.add(new ArrayList<>());
+    }
+    for (Path path : bySize) {
+      int smallest = 0;
+      for (int i = 1; i < shardCount; i++) {
+        if (totals[i] < totals[smallest]) {
+          smallest = i;
+        }
+      }
+      shards.get(smallest).add(path);
+      totals[smallest] += sizes.get(path);
+    }
+    return shards.stream().filter(s -> !s.isEmpty()).collect(ImmutableList.toImmutableList());
+  }
+
+  private static Process startWorker(Path pathList, Path output, ScanOptions options)
+      throws IOException {
+    String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+    return new ProcessBuilder(
+            java,
+            "-cp",
+            System.getProperty("java.class.path"),
+            ShardWorker.class.getName(),
+            pathList.toString(),
+            output.toString(),
+            options.extractor().name(),
+            Integer.toString(options.release()))
+        .redirectOutput(ProcessBuilder.Redirect.INHERIT)
+        .redirectError(ProcessBuilder.Redirect.INHERIT)
+        .start();
+  }
+
+  private static int waitFor(Process process) throws IOException {
+    try {
+      return process.waitFor();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted waiting for scan worker");
+    }
+  }
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright © 2019 Andrew Rice (acr31@cam.ac.uk)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.ac.cam.acr31.autorebuild;
+
+import com.google.auto.value.AutoValue;
+import com.google.common.collect.ImmutableSortedSet;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
+import uk.ac.cam.acr31.autorebuild.clazzinfo.ClassFile;
+import uk.ac.cam.acr31.autorebuild.clazzinfo.Identifier;
+import uk.ac.cam.acr31.autorebuild.proto.SnapshotProtos;
+import uk.ac.cam.acr31.autorebuild.proto.SnapshotProtos.Record;
+
+// A scanned project, and optionally the solution found for it, stored as a stream of
+// length-delimited records (see snapshot.proto)
+@AutoValue
+abstract class Snapshot {
+
+  private static final int VERSION = 1;
+
+  abstract OriginalProject originalProject();
+
+  abstract Optional<Solution> solution();
+
+  static void write(Path path, OriginalProject originalProject, Optional<Solution> solution)
+      throws IOException {
+    try (Writer writer = writer(path)) {
+      originalProject.sourceFiles().forEach(writer::write);
+      originalProject.classFiles().forEach(writer::write);
+      if (solution.isPresent()) {
+        writer.write(solution.get());
+      }
+    }
+  }
+
+  static Writer writer(Path path) throws IOException {
+    return new Writer(new BufferedOutputStream(Files.newOutputStream(path)));
+  }
+
+  static Snapshot read(Path path) throws IOException {
+    OriginalProject.Builder project = OriginalProject.builder();
+    Solution.Builder solution = Solution.builder();
+    ImmutableSortedSet.Builder<Identifier> unresolvable = ImmutableSortedSet.naturalOrder();
+    boolean hasSolution = false;
+    try (InputStream is = new BufferedInputStream(Files.newInputStream(path))) {
+      checkHeader(is, path);
+      Record record;
+      while ((record = Record.parseDelimitedFrom(is)) != null) {
+        switch (record.getRecordCase()) {
+          case SOURCE_FILE:
+            project.addSourceFile(SourceFile.fromProto(record.getSourceFile()));
+            break;
+          case CLASS_FILE:
+            project.addClassFile(ClassFile.fromProto(record.getClassFile()));
+            break;
+          case SOLUTION_CLASS:
+            hasSolution = true;
+            SnapshotProtos.SolutionClass solutionClass = record.getSolutionClass();
+            solution
+                .classesBuilder()
+                .put(solutionClass.getInternalName(), solutionClass.getDigest());
+            break;
+          case SOLUTION_USE:
+            hasSolution = true;
+            solution
+                .usedBuilder()
+                .put(
+                    record.getSolutionUse().getDigest(),
+                    Identifier.fromProto(record.getSolutionUse().getIdentifier()));
+            break;
+          case UNRESOLVABLE:
+            hasSolution = true;
+            unresolvable.add(Identifier.fromProto(record.getUnresolvable()));
+            break;
+          default:
+            throw new IllegalArgumentException("Invalid snapshot record in " + path);
+        }
+      }
+    }
+    return new AutoValue_Snapshot(
+        project.build(),
+        hasSolution
+            ? Optional.of(solution.setUnresolvable(unresolvable.build()).build())
+            : Optional.empty());
+  }
+
+  // Streams the class files of a snapshot without building the project
+  static void readClassFiles(Path path, Consumer<ClassFile> consumer) throws IOException {
+    try (InputStream is = new BufferedInputStream(Files.newInputStream(path))) {
+      checkHeader(is, path);
+      Record record;
+      while ((record = Record.parseDelimitedFrom(is)) != null) {
+        if (record.getRecordCase() == Record.RecordCase.CLASS_FILE) {
+          consumer.accept(ClassFile.fromProto(record.getClassFile()));
+        }
+      }
+    }
+  }
+
+  private static void checkHeader(InputStream is, Path path) throws IOException {
+    Record header = Record.parseDelimitedFrom(is);
+    if (header == null || header.getHeader().getVersion() != VERSION) {
+      throw new IllegalArgumentException("Invalid snapshot header in " + path);
+    }
+  }
+
+  static final class Writer implements Closeable {
+
+    private final OutputStream os;
+
+    private Writer(OutputStream os) throws IOException {
+      this.os = os;
+      write(
+          Record.newBuilder()
+              .setHeader(SnapshotProtos.Header.newBuilder().setVersion(VERSION))
+              .build());
+    }
+
+    // synchronized so that several scanning threads can share a writer
+    synchronized void write(ClassFile classFile) {
+      write(Record.newBuilder().setClassFile(classFile.toProto()).build());
+    }
+
+    synchronized void write(SourceFile sourceFile) {
+      write(Record.newBuilder().setSourceFile(sourceFile.toProto()).build());
+    }
+
+    synchronized void write(Solution solution) {
+      for (Map.Entry<String, String> entry : solution.classes().entries()) {
+        write(
+            Record.newBuilder()
+                .setSolutionClass(
+                    SnapshotProtos.SolutionClass.newBuilder()
+                        .setInternalName(entry.getKey())
+                        .setDigest(entry.getValue()))
+                .build());
+      }
+      for (Map.Entry<String, Identifier> entry : solution.used().entries()) {
+        write(
+            Record.newBuilder()
+                .setSolutionUse(
+                    SnapshotProtos.SolutionUse.newBuilder()
+                        .setDigest(entry.getKey())
+                        .setIdentifier(entry.getValue().toProto()))
+                .build());
+      }
+      for (Identifier identifier : solution.unresolvable()) {
+        write(Record.newBuilder().setUnresolvable(identifier.toProto()).build());
+      }
+    }
+
+    private void write(Record record) {
+      try {
+        record.writeDelimitedTo(os);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+      os.close();
+    }
+  }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright © 2019 Andrew Rice (acr31@cam.ac.uk)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.ac.cam.acr31.autorebuild;
+
+import com.google.auto.value.AutoValue;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSetMultimap;
+import com.google.common.collect.ImmutableSortedSet;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Set;
+import uk.ac.cam.acr31.autorebuild.clazzinfo.ClassFile;
+import uk.ac.cam.acr31.autorebuild.clazzinfo.Identifier;
+
+@AutoValue
+public abstract class Solution {
+
+  // descriptor -> digest of every class selected by the search
+  abstract ImmutableSetMultimap<String, String> classes();
+
+  // digest of a referring class -> the identifiers it was found to use
+  abstract ImmutableSetMultimap<String, Identifier> used();
+
+  abstract ImmutableSortedSet<Identifier> unresolvable();
+
+  static Solution of(Repository repository) {
+    Builder builder = builder();
+    for (ClassFile classFile : repository.classes()) {
+      builder.classesBuilder().put(classFile.descriptor(), classFile.digest());
+    }
+    for (Map.Entry<Identifier, ClassFile> entry : repository.used().entries()) {
+      builder.usedBuilder().put(entry.getValue().digest(), entry.getKey());
+    }
+    return builder.setUnresolvable(repository.unresolvable()).build();
+  }
+
+  boolean contains(ClassFile classFile) {
+    return classes().containsEntry(classFile.descriptor(), classFile.digest());
+  }
+
+  ImmutableList<ClassFile> replay(Iterable<ClassFile> generated, ClassFileLookup candidates) {
+    ImmutableList.Builder<ClassFile> result = ImmutableList.builder();
+    Set<String> visited = new HashSet<>();
+    Deque<ClassFile> queue = new LinkedList<>();
+    generated.forEach(
+        classFile -> {
+          visited.add(classFile.digest());
+          queue.add(classFile);
+        });
+    while (!queue.isEmpty()) {
+      ClassFile next = queue.pollFirst();
+      // Follow unchanged classes through the identifiers they were recorded as using and changed
+      // classes through everything they reference
+      Set<String> owners = new HashSet<>();
+      if (contains(next)) {
+        used().get(next.digest()).forEach(i -> owners.add(i.owner()));
+      } else {
+        next.referenced().forEach(i -> owners.add(i.owner()));
+        owners.addAll(next.ancestors());
+      }
+      for (String owner : owners) {
+        for (ClassFile candidate : candidates.get(owner)) {
+          if (contains(candidate) && visited.add(candidate.digest())) {
+            result.add(candidate);
+            queue.add(candidate);
+          }
+        }
+      }
+    }
+    return result.build();
+  }
+
+  boolean stillUnresolvable(Identifier identifier, Set<ClassFile> referents) {
+    return unresolvable().contains(identifier)
+        && !referents.isEmpty()
+        && referents.stream().allMatch(this::contains);
+  }
+
+  void write(Path path) throws IOException {
+    try (PrintWriter w = new PrintWriter(Files.newBufferedWriter(path, StandardCharsets.UTF_8))) {
+      for (Map.Entry<String, String> entry : classes().entries()) {
+        TabSeparated.write(w, "class", entry.getKey(), entry.getValue());
+      }
+      for (Map.Entry<String, Identifier> entry : used().entries()) {
+        TabSeparated.write(w, "used", entry.getKey(), entry.getValue());
+      }
+      for (Identifier identifier : unresolvable()) {
+        TabSeparated.write(w, "unresolvable", identifier);
+      }
+    }
+  }
+
+  static Solution read(Path path) throws IOException {
+    Builder builder = builder();
+    ImmutableSortedSet.Builder<Identifier> unresolvable = ImmutableSortedSet.naturalOrder();
+    TabSeparated.reader("solution")
+        .on("class", 3, f -> builder.classesBuilder().put(f.get(1), f.get(2)))
+        .on("used", 4, f -> builder.usedBuilder().put(f.get(1), TabSeparated.identifier(f, 2)))
+        .on("unresolvable", 3, f -> unresolvable.add(TabSeparated.identifier(f, 1)))
+        .read(path);
+    return builder.setUnresolvable(unresolvable.build()).build();
+  }
+
+  static Builder builder() {
+    return new AutoValue_Solution.Builder();
+  }
+
+  @AutoValue.Builder
+  abstract static class Builder {
+
+    abstract ImmutableSetMultimap.Builder<String, String> classesBuilder();
+
+    abstract ImmutableSetMultimap.Builder<String, Identifier> usedBuilder();
+
+    abstract Builder setUnresolvable(ImmutableSortedSet<Identifier> unresolvable);
+
+    abstract Solution build();
+  }
+}
@@ -24,6 +24,7 @@ import java.nio.file.Path;
 import java.util.Optional;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import uk.ac.cam.acr31.autorebuild.proto.SnapshotProtos;
 
 @AutoValue
 public abstract class SourceFile {
@@ -58,6 +59,18 @@ public abstract class SourceFile {
     }
   }
 
+  SnapshotProtos.SourceFile toProto() {
+    return SnapshotProtos.SourceFile.newBuilder()
+        .setDirectory(directory())
+        .setFileName(fileName())
+        .setPackageName(packageName())
+        .build();
+  }
+
+  static SourceFile fromProto(SnapshotProtos.SourceFile proto) {
+    return create(proto.getDirectory(), proto.getFileName(), proto.getPackageName());
+  }
+
   private static Optional<String> findPackageDeclaration(BufferedReader br) throws IOException {
     String line;
     while ((line = br.readLine()) != null) {
@@ -16,39 +16,143 @@
 
 package uk.ac.cam.acr31.autorebuild;
 
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
+import java.io.BufferedReader;
 import java.io.IOError;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.HashMap;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 import uk.ac.cam.acr31.autorebuild.clazzinfo.ClassFile;
+import uk.ac.cam.acr31.autorebuild.clazzinfo.Identifier;
+import uk.ac.cam.acr31.autorebuild.metrics.Counter;
+import uk.ac.cam.acr31.autorebuild.metrics.Metrics;
 
 public class StandardLibrary {
 
   private static final ImmutableSet<String> LIBRARY_PREFIXES =
       ImmutableSet.of("java", "com/sun", "jdk", "sun");
+  private static final Counter CACHE_HITS =
+      Metrics.global().counter("stdlib_cache_hits", "Standard library lookups served from cache");
+  private static final Counter CACHE_MISSES =
+      Metrics.global().counter("stdlib_cache_misses", "Standard library lookups loaded afresh");
 
+  private static final Counter PROVIDES_HITS =
+      Metrics.global().counter("stdlib_provides_hits", "Class path member lookups from cache");
+  private static final Counter PROVIDES_MISSES =
+      Metrics.global().counter("stdlib_provides_misses", "Class path member lookups computed");
+
+  // One standard library can be shared by searches running at the same time, so the caches are
+  // concurrent
   private final Map<String, Optional<ClassFile>> cache;
 
+  // Results of provides
+  private final Map<Identifier, Boolean> providesCache;
+
+  // The standard library never changes so nothing is ever invalidated
+  private final HierarchyIndex hierarchy;
+
   public StandardLibrary() {
-    cache = new HashMap<>();
+    cache = new ConcurrentHashMap<>();
+    providesCache = new ConcurrentHashMap<>();
+    hierarchy =
+        new HierarchyIndex(
+            descriptor -> load(descriptor).map(ImmutableList::of).orElse(ImmutableList.of()));
   }
 
   public Optional<ClassFile> load(String descriptor) {
-    if (LIBRARY_PREFIXES.stream().noneMatch(p -> descriptor.startsWith(p))) {
+    if (!isLibrary(descriptor)) {
       return Optional.empty();
     }
     String classFile = descriptor + ".class";
-    if (cache.containsKey(classFile)) {
-      return cache.get(classFile);
+    Optional<ClassFile> cached = cache.get(classFile);
+    if (cached != null) {
+      CACHE_HITS.increment();
+      return cached;
     }
+    CACHE_MISSES.increment();
+    // Two threads might both load the class but they will agree on the result
     Optional<ClassFile> result = loadClassFile(classFile);
-    cache.put(classFile, result);
+    cache.putIfAbsent(classFile, result);
     return result;
   }
 
+  // True if the identifier is declared by its owner in the standard library or by one of the
+  // owner's ancestors
+  public boolean provides(Identifier identifier) {
+    if (!isLibrary(identifier.owner())) {
+      return false;
+    }
+    Boolean cached = providesCache.get(identifier);
+    if (cached != null) {
+      PROVIDES_HITS.increment();
+      return cached;
+    }
+    PROVIDES_MISSES.increment();
+    boolean result = computeProvides(identifier);
+    providesCache.put(identifier, result);
+    return result;
+  }
+
+  private boolean computeProvides(Identifier identifier) {
+    Optional<ClassFile> owner = load(identifier.owner());
+    if (!owner.isPresent()) {
+      return false;
+    }
+    for (ClassFile classFile : hierarchy.closure(owner.get())) {
+      if (classFile.declares(identifier.name())) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  // Reads results previously written by writeProvidesCache. Results recorded by a different Java
+  // version are ignored since the standard library may have changed.
+  public void readProvidesCache(Path path) throws IOException {
+    try (BufferedReader r = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+      String header = r.readLine();
+      if (header == null || !header.equals(providesCacheHeader())) {
+        return;
+      }
+      String line;
+      while ((line = r.readLine()) != null) {
+        List<String> fields = Splitter.on('\t').splitToList(line);
+        if (fields.size() != 3) {
+          throw new IllegalArgumentException("Invalid class path cache entry: " + line);
+        }
+        providesCache.put(
+            Identifier.create(fields.get(0), fields.get(1)), Boolean.parseBoolean(fields.get(2)));
+      }
+    }
+  }
+
+  public void writeProvidesCache(Path path) throws IOException {
+    try (PrintWriter w = new PrintWriter(Files.newBufferedWriter(path, StandardCharsets.UTF_8))) {
+      w.println(providesCacheHeader());
+      for (Map.Entry<Identifier, Boolean> entry : providesCache.entrySet()) {
+        w.printf(
+            "%s\t%s\t%s%n", entry.getKey().owner(), entry.getKey().name(), entry.getValue());
+      }
+    }
+  }
+
+  private static String providesCacheHeader() {
+    return "java.version\t" + System.getProperty("java.version");
+  }
+
+  private static boolean isLibrary(String descriptor) {
+    return LIBRARY_PREFIXES.stream().anyMatch(descriptor::startsWith);
+  }
+
   private Optional<ClassFile> loadClassFile(String classFile) {
     try (InputStream is = getClass().getClassLoader().getResourceAsStream(classFile)) {
       if (is != null) {
@@ -0,0 +1,171 @@
+/*
+ * Copyright © 2019 Andrew Rice (acr31@cam.ac.uk)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.ac.cam.acr31.autorebuild;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import java.io.IOError;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import uk.ac.cam.acr31.autorebuild.clazzinfo.ClassFile;
+
+// Scans a project with jars parsed in the background. Source files and loose class files are read
+// up front so that the generated classes are available immediately; everything else is published
+// to the provider index as it is parsed.
+class StreamingScan {
+
+  private final ImmutableSet<ClassFile> generatedClasses;
+  private final ProviderIndex providers;
+  private final CompletableFuture<OriginalProject> project;
+
+  private StreamingScan(
+      ImmutableSet<ClassFile> generatedClasses,
+      ProviderIndex providers,
+      CompletableFuture<OriginalProject> project) {
+    this.generatedClasses = generatedClasses;
+    this.providers = providers;
+    this.project = project;
+  }
+
+  static StreamingScan start(
+      Path projectRoot, ClassPathCache cache, ScanOptions options, Executor executor)
+      throws IOException {
+    ProjectFiles files = ProjectFiles.list(projectRoot);
+    ImmutableSet.Builder<SourceFile> sourceFiles = ImmutableSet.builder();
+    for (Path file : files.sourceFiles()) {
+      sourceFiles.add(SourceFile.create(file));
+    }
+    ProviderIndex providers = new ProviderIndex();
+    for (Path file : files.classFiles()) {
+      BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+      cache
+          .load(
+              file, attrs, options, f -> ImmutableList.of(ClassFile.create(options.extractor(), f)))
+          .forEach(providers::add);
+    }
+
+    OriginalProject local =
+        OriginalProject.builder()
+            .addSourceFiles(sourceFiles.build())
+            .addClassFiles(providers.classFiles())
+            .build();
+
+    List<CompletableFuture<Void>> tasks = new ArrayList<>();
+    for (Path jar : files.jarFiles()) {
+      BasicFileAttributes attrs = Files.readAttributes(jar, BasicFileAttributes.class);
+      ImmutableList<ClassFile> cached = cache.getIfPresent(jar, attrs, options).orElse(null);
+      if (cached != null) {
+        cached.forEach(providers::add);
+        continue;
+      }
+      // Only the central directory is read here, the entries themselves are parsed later
+      final boolean nested = expect(jar, options, providers);
+      tasks.add(
+          CompletableFuture.runAsync(
+              () -> parseJar(jar, attrs, nested, options, cache, providers), executor));
+    }
+
+    CompletableFuture<OriginalProject> project =
+        CompletableFuture.allOf(tasks.toArray(new CompletableFuture<?>[0]))
+            .whenComplete(
+                (ignored, t) -> {
+                  if (t != null) {
+                    providers.fail(t);
+                  } else {
+                    providers.complete();
+                  }
+                })
+            .thenApply(
+                ignored ->
+                    OriginalProject.builder()
+                        .addSourceFiles(local.sourceFiles())
+                        .addClassFiles(providers.classFiles())
+                        .build());
+
+    return new StreamingScan(local.generatedClasses(), providers, project);
+  }
+
+  // Tells the index which top level entries to wait for, returning whether the jar also holds
+  // nested archives
+  private static boolean expect(Path jar, ScanOptions options, ProviderIndex providers)
+      throws IOException {
+    try (JarFile jarFile = JarEntries.open(jar, options.release())) {
+      for (JarEntry entry : JarEntries.classEntries(jarFile)) {
+        providers.expect(entry.getRealName());
+      }
+      if (JarEntries.nestedArchives(jarFile).isEmpty()) {
+        return false;
+      }
+      providers.expectNested();
+      return true;
+    }
+  }
+
+  private static void parseJar(
+      Path jar,
+      BasicFileAttributes attrs,
+      boolean nested,
+      ScanOptions options,
+      ClassPathCache cache,
+      ProviderIndex providers) {
+    ImmutableList.Builder<ClassFile> classFiles = ImmutableList.builder();
+    try {
+      OriginalProject.readJar(
+          jar,
+          options,
+          classFile -> {
+            classFiles.add(classFile);
+            providers.publish(classFile);
+          });
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    if (nested) {
+      providers.nestedDone();
+    }
+    cache.put(jar, attrs, options, classFiles.build());
+  }
+
+  ImmutableSet<ClassFile> generatedClasses() {
+    return generatedClasses;
+  }
+
+  ClassFileLookup providers() {
+    return providers;
+  }
+
+  OriginalProject await() throws IOException {
+    try {
+      return project.join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof UncheckedIOException) {
+        throw ((UncheckedIOException) e.getCause()).getCause();
+      }
+      throw new IOError(e.getCause());
+    }
+  }
+}
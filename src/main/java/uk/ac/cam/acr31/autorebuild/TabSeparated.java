@@ -0,0 +1,86 @@
+/*
+ * Copyright © 2019 Andrew Rice (acr31@cam.ac.uk)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.ac.cam.acr31.autorebuild;
+
+import com.google.common.base.Splitter;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import uk.ac.cam.acr31.autorebuild.clazzinfo.Identifier;
+
+// Files of tab separated lines whose first field is a tag saying what the line records, as used for
+// solutions and checkpoints
+final class TabSeparated {
+
+  private final String kind;
+  private final Map<String, Integer> fieldCounts = new HashMap<>();
+  private final Map<String, Consumer<List<String>>> readers = new HashMap<>();
+
+  private TabSeparated(String kind) {
+    this.kind = kind;
+  }
+
+  // kind names the file in error messages
+  static TabSeparated reader(String kind) {
+    return new TabSeparated(kind);
+  }
+
+  // Reads lines with this tag, which have the given number of fields counting the tag
+  TabSeparated on(String tag, int fields, Consumer<List<String>> reader) {
+    fieldCounts.put(tag, fields);
+    readers.put(tag, reader);
+    return this;
+  }
+
+  void read(Path path) throws IOException {
+    try (BufferedReader r = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+      String line;
+      while ((line = r.readLine()) != null) {
+        List<String> fields = Splitter.on('\t').splitToList(line);
+        Integer expected = fieldCounts.get(fields.get(0));
+        if (expected == null || fields.size() != expected) {
+          throw new IllegalArgumentException("Invalid " + kind + " entry: " + line);
+        }
+        readers.get(fields.get(0)).accept(fields);
+      }
+    }
+  }
+
+  // The identifier whose owner is at the given field, followed by its name
+  static Identifier identifier(List<String> fields, int index) {
+    return Identifier.create(fields.get(index), fields.get(index + 1));
+  }
+
+  static void write(PrintWriter w, String tag, String... fields) {
+    w.printf("%s\t%s%n", tag, String.join("\t", fields));
+  }
+
+  static void write(PrintWriter w, String tag, Identifier identifier) {
+    write(w, tag, identifier.owner(), identifier.name());
+  }
+
+  static void write(PrintWriter w, String tag, String key, Identifier identifier) {
+    write(w, tag, key, identifier.owner(), identifier.name());
+  }
+}
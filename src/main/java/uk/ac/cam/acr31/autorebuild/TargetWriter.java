@@ -0,0 +1,207 @@
+/*
+ * Copyright © 2019 Andrew Rice (acr31@cam.ac.uk)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.ac.cam.acr31.autorebuild;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import com.google.common.collect.MultimapBuilder;
+import com.google.common.collect.Multimaps;
+import com.google.common.collect.SetMultimap;
+import com.ibm.icu.text.CharsetDetector;
+import com.ibm.icu.text.CharsetMatch;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import uk.ac.cam.acr31.autorebuild.clazzinfo.ClassFile;
+import uk.ac.cam.acr31.autorebuild.jfr.CopyEvent;
+import uk.ac.cam.acr31.autorebuild.metrics.Counter;
+import uk.ac.cam.acr31.autorebuild.metrics.Metrics;
+
+class TargetWriter {
+
+  private static final Counter FILES_WRITTEN =
+      Metrics.global().counter("output_files", "Files written to the target directory");
+  private static final Counter BYTES_WRITTEN =
+      Metrics.global().counter("output_bytes", "Bytes written to the target directory");
+
+  static void write(OriginalProject originalProject, Repository repository, Path targetRoot)
+      throws IOException {
+    if (Files.exists(targetRoot)) {
+      Files.walk(targetRoot)
+          .map(Path::toFile)
+          .sorted((o1, o2) -> -o1.compareTo(o2))
+          .forEach(File::delete);
+    }
+
+    Files.createDirectories(targetRoot.resolve("src"));
+    Files.createDirectories(targetRoot.resolve("lib"));
+    CopyEvent sourcesEvent = new CopyEvent();
+    sourcesEvent.begin();
+    long sourceBytes = 0;
+    for (SourceFile sourceFile : originalProject.sourceFiles()) {
+      Path source = Paths.get(sourceFile.directory(), sourceFile.fileName());
+      Path target = targetRoot.resolve("src");
+      for (String packagePart : sourceFile.packageName().split("\\.")) {
+        target = target.resolve(packagePart);
+      }
+      target = target.resolve(sourceFile.fileName());
+      Files.createDirectories(target.getParent());
+
+      try (BufferedInputStream bis = new BufferedInputStream(Files.newInputStream(source))) {
+        CharsetDetector cd = new CharsetDetector();
+        cd.setText(bis);
+        CharsetMatch cm = cd.detect();
+        if (cm != null && !cm.getName().equals("UTF-8")) {
+          try (Reader reader = cm.getReader();
+              Writer writer = Files.newBufferedWriter(target, StandardCharsets.UTF_8)) {
+            reader.transferTo(writer);
+          }
+        } else {
+          Files.copy(source, target);
+        }
+      }
+      sourceBytes += recordOutput(target);
+    }
+    commit(sourcesEvent, "sources", "", originalProject.sourceFiles().size(), sourceBytes);
+
+    SetMultimap<String, ClassFile> jarEntries = MultimapBuilder.hashKeys().hashSetValues().build();
+    CopyEvent classesEvent = new CopyEvent();
+    classesEvent.begin();
+    int classFiles = 0;
+    long classBytes = 0;
+    for (ClassFile classFile : repository.classes()) {
+      if (classFile.classFileJar().isPresent()) {
+        jarEntries.put(classFile.classFileJar().get(), classFile);
+      } else {
+        Path source = Paths.get(classFile.classFileName());
+        Path target = targetRoot.resolve("lib");
+        for (String packagePart : classFile.packageName().split("\\.")) {
+          target = target.resolve(packagePart);
+        }
+        target = target.resolve(source.getFileName());
+        Files.createDirectories(target.getParent());
+        Files.copy(source, target);
+        classFiles++;
+        classBytes += recordOutput(target);
+      }
+    }
+    commit(classesEvent, "classes", "", classFiles, classBytes);
+
+    for (Map.Entry<String, Set<ClassFile>> entry : Multimaps.asMap(jarEntries).entrySet()) {
+      ImmutableMap<String, ClassFile> classes =
+          Maps.uniqueIndex(entry.getValue(), ClassFile::classFileName);
+      List<String> archives = Splitter.on(JarEntries.NESTED_SEPARATOR).splitToList(entry.getKey());
+      CopyEvent jarEvent = new CopyEvent();
+      jarEvent.begin();
+      int jarFiles = 0;
+      long jarBytes = 0;
+      try (JarFile jarFile = new JarFile(archives.get(0))) {
+        if (archives.size() == 1) {
+          for (Enumeration<JarEntry> em = jarFile.entries(); em.hasMoreElements(); ) {
+            JarEntry jarEntry = em.nextElement();
+            ClassFile classFile = classes.get(jarEntry.getName());
+            if (classFile != null) {
+              try (InputStream is = jarFile.getInputStream(jarEntry)) {
+                jarBytes += writeClass(classFile, is, targetRoot);
+                jarFiles++;
+              }
+            }
+          }
+        } else {
+          // Stream down through each nested archive in turn rather than extracting them
+          try (InputStream is = jarFile.getInputStream(jarFile.getEntry(archives.get(1)))) {
+            ZipInputStream zipInputStream = new ZipInputStream(is);
+            for (String archive : archives.subList(2, archives.size())) {
+              seek(zipInputStream, archive, entry.getKey());
+              zipInputStream = new ZipInputStream(zipInputStream);
+            }
+            for (ZipEntry zipEntry = zipInputStream.getNextEntry();
+                zipEntry != null;
+                zipEntry = zipInputStream.getNextEntry()) {
+              ClassFile classFile = classes.get(zipEntry.getName());
+              if (classFile != null) {
+                jarBytes += writeClass(classFile, zipInputStream, targetRoot);
+                jarFiles++;
+              }
+            }
+          }
+        }
+      }
+      commit(jarEvent, "jar", entry.getKey(), jarFiles, jarBytes);
+    }
+  }
+
+  private static void commit(CopyEvent event, String phase, String source, int files, long bytes) {
+    event.end();
+    if (event.shouldCommit()) {
+      event.phase = phase;
+      event.source = source;
+      event.files = files;
+      event.bytes = bytes;
+      event.commit();
+    }
+  }
+
+  private static void seek(ZipInputStream zipInputStream, String name, String jar)
+      throws IOException {
+    for (ZipEntry zipEntry = zipInputStream.getNextEntry();
+        zipEntry != null;
+        zipEntry = zipInputStream.getNextEntry()) {
+      if (zipEntry.getName().equals(name)) {
+        return;
+      }
+    }
+    throw new IOException("Nested archive not found: " + jar);
+  }
+
+  private static long writeClass(ClassFile classFile, InputStream is, Path targetRoot)
+      throws IOException {
+    Path target = targetRoot.resolve("lib");
+    for (String packagePart : classFile.packageName().split("\\.")) {
+      target = target.resolve(packagePart);
+    }
+    target = target.resolve(Paths.get(classFile.classFileName()).getFileName());
+    Files.createDirectories(target.getParent());
+    long bytes = Files.copy(is, target);
+    BYTES_WRITTEN.add(bytes);
+    FILES_WRITTEN.increment();
+    return bytes;
+  }
+
+  private static long recordOutput(Path target) throws IOException {
+    long bytes = Files.size(target);
+    FILES_WRITTEN.increment();
+    BYTES_WRITTEN.add(bytes);
+    return bytes;
+  }
+}
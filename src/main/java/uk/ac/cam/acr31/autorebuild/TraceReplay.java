@@ -0,0 +1,332 @@
+/*
+ * Copyright © 2019 Andrew Rice (acr31@cam.ac.uk)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package uk.ac.cam.acr31.autorebuild;
+
+import com.google.auto.value.AutoValue;
+import com.google.common.collect.ImmutableList;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+// Reads a trace written by SearchTrace and reports where the search spent its time: the owners
+// whose identifiers took longest to resolve and the classes that were added and removed over and
+// over. With --steps every recorded step is printed as it happened.
+public class TraceReplay {
+
+  private static final String USAGE = "Usage: TraceReplay [--top=<count>] [--steps] <trace>";
+
+  @AutoValue
+  abstract static class OwnerStats {
+
+    abstract String owner();
+
+    // identifiers of this owner taken by the search loop
+    abstract long pops();
+
+    // time from taking each identifier to taking the next one
+    abstract long nanos();
+
+    // providers found across all of them
+    abstract long providers();
+  }
+
+  @AutoValue
+  abstract static class ClassStats {
+
+    abstract String descriptor();
+
+    abstract String digest();
+
+    abstract long additions();
+
+    abstract long rejections();
+
+    abstract long removals();
+  }
+
+  @AutoValue
+  abstract static class Report {
+
+    abstract long pops();
+
+    abstract long nanos();
+
+    // class versions in the repository when the trace ends
+    abstract long finalVersions();
+
+    abstract long unresolvable();
+
+    // by time spent, longest first
+    abstract ImmutableList<OwnerStats> hotOwners();
+
+    // classes removed at least once, most removed first
+    abstract ImmutableList<ClassStats> thrashing();
+  }
+
+  public static void main(String[] args) throws IOException {
+    int top = 20;
+    boolean steps = false;
+    Optional<Path> trace = Optional.empty();
+    for (String arg : args) {
+      if (arg.startsWith("--top=")) {
+        top = Integer.parseInt(arg.substring("--top=".length()));
+      } else if (arg.equals("--steps")) {
+        steps = true;
+      } else if (arg.startsWith("--") || trace.isPresent()) {
+        throw new IllegalArgumentException(USAGE);
+      } else {
+        trace = Optional.of(Paths.get(arg));
+      }
+    }
+    if (!trace.isPresent()) {
+      throw new IllegalArgumentException(USAGE);
+    }
+    Report report = replay(trace.get(), steps ? Optional.of(System.out) : Optional.empty());
+    print(report, top, System.out);
+  }
+
+  static Report replay(Path trace) throws IOException {
+    return replay(trace, Optional.empty());
+  }
+
+  static Report replay(Path trace, Optional<PrintStream> steps) throws IOException {
+    try (InputStream in = Files.newInputStream(trace)) {
+      return new Replayer(steps).replay(in);
+    }
+  }
+
+  private static void print(Report report, int top, PrintStream out) {
+    out.printf(
+        "%d identifiers taken in %d ms, finishing with %d class versions and %d unresolvable%n",
+        report.pops(), report.nanos() / 1_000_000, report.finalVersions(), report.unresolvable());
+    out.printf("%nHot owners:%n");
+    for (OwnerStats owner :
+        report.hotOwners().subList(0, Math.min(top, report.hotOwners().size()))) {
+      out.printf(
+          "  %8d ms %7d taken %7d providers  %s%n",
+          owner.nanos() / 1_000_000, owner.pops(), owner.providers(), owner.owner());
+    }
+    out.printf("%nThrashing classes:%n");
+    for (ClassStats classStats :
+        report.thrashing().subList(0, Math.min(top, report.thrashing().size()))) {
+      out.printf(
+          "  %7d removed %7d added %7d rejected  %s %s%n",
+          classStats.removals(),
+          classStats.additions(),
+          classStats.rejections(),
+          classStats.descriptor(),
+          classStats.digest());
+    }
+  }
+
+  private static final class Replayer {
+
+    private final Optional<PrintStream> steps;
+    private final List<String> strings = new ArrayList<>();
+    private final Map<String, long[]> owners = new HashMap<>();
+    private final Map<Long, long[]> classes = new HashMap<>();
+    private final Set<Long> current = new HashSet<>();
+    private long time;
+    private long pops;
+    private long unresolvable;
+    private long[] lastPopped;
+    private long lastPoppedTime;
+
+    Replayer(Optional<PrintStream> steps) {
+      this.steps = steps;
+    }
+
+    Report replay(InputStream in) throws IOException {
+      DataInputStream data = new DataInputStream(new BufferedInputStream(in, 1 << 16));
+      if (data.readInt() != SearchTrace.MAGIC) {
+        throw new IllegalArgumentException("Not a search trace");
+      }
+      int version = data.readInt();
+      if (version != SearchTrace.VERSION) {
+        throw new IllegalArgumentException("Unsupported search trace version " + version);
+      }
+      while (true) {
+        int type = data.read();
+        if (type < 0) {
+          break;
+        }
+        try {
+          record(type, data);
+        } catch (EOFException e) {
+          // A search that died part way through leaves its last record cut short
+          break;
+        }
+      }
+      charge();
+      return report();
+    }
+
+    private void record(int type, DataInputStream data) throws IOException {
+      time += readVarint(data);
+      switch (type) {
+        case SearchTrace.STRING:
+          readVarint(data);
+          strings.add(data.readUTF());
+          break;
+        case SearchTrace.POPPED:
+          popped(data);
+          break;
+        case SearchTrace.PROVIDED:
+          provided(data);
+          break;
+        case SearchTrace.ADDED:
+          added(data);
+          break;
+        case SearchTrace.REMOVED:
+          removed(data);
+          break;
+        case SearchTrace.UNRESOLVABLE:
+          unresolvable++;
+          step("unresolvable %s", identifier(data));
+          break;
+        default:
+          throw new IllegalArgumentException("Unknown search trace record " + type);
+      }
+    }
+
+    private void popped(DataInputStream data) throws IOException {
+      final String owner = string(readVarint(data));
+      final String name = string(readVarint(data));
+      final long unresolved = readVarint(data);
+      final long used = readVarint(data);
+      charge();
+      pops++;
+      lastPopped = owners.computeIfAbsent(owner, o -> new long[3]);
+      lastPopped[0]++;
+      lastPoppedTime = time;
+      step("pop %s#%s unresolved=%d used=%d", owner, name, unresolved, used);
+    }
+
+    private void provided(DataInputStream data) throws IOException {
+      final String owner = string(readVarint(data));
+      final String name = string(readVarint(data));
+      long count = readVarint(data);
+      owners.computeIfAbsent(owner, o -> new long[3])[2] += count;
+      List<String> providers = new ArrayList<>();
+      for (long i = 0; i < Math.min(count, SearchTrace.MAX_PROVIDERS); i++) {
+        providers.add(string(readVarint(data)));
+      }
+      step("provided %s#%s by %d %s", owner, name, count, providers);
+    }
+
+    private void added(DataInputStream data) throws IOException {
+      long id = readVarint(data);
+      boolean accepted = readVarint(data) != 0;
+      if (accepted) {
+        classStats(id)[0]++;
+        current.add(id);
+      } else {
+        classStats(id)[1]++;
+      }
+      step("%s %s", accepted ? "add" : "reject", string(id));
+    }
+
+    private void removed(DataInputStream data) throws IOException {
+      long id = readVarint(data);
+      classStats(id)[2]++;
+      current.remove(id);
+      step("remove %s", string(id));
+    }
+
+    private String identifier(DataInputStream data) throws IOException {
+      String owner = string(readVarint(data));
+      return owner + "#" + string(readVarint(data));
+    }
+
+    // Charges the time since the last identifier was taken to its owner
+    private void charge() {
+      if (lastPopped != null) {
+        lastPopped[1] += time - lastPoppedTime;
+      }
+    }
+
+    private long[] classStats(long id) {
+      return classes.computeIfAbsent(id, i -> new long[3]);
+    }
+
+    private String string(long id) {
+      return strings.get((int) id);
+    }
+
+    private void step(String format, Object... args) {
+      if (steps.isPresent()) {
+        steps.get().printf("%12.3f ms  ", time / 1e6);
+        steps.get().printf(format, args);
+        steps.get().println();
+      }
+    }
+
+    private Report report() {
+      ImmutableList.Builder<OwnerStats> hotOwners = ImmutableList.builder();
+      owners.entrySet().stream()
+          .filter(e -> e.getValue()[0] > 0)
+          .map(e -> new AutoValue_TraceReplay_OwnerStats(
+              e.getKey(), e.getValue()[0], e.getValue()[1], e.getValue()[2]))
+          .sorted(Comparator.comparingLong(OwnerStats::nanos).reversed())
+          .forEach(hotOwners::add);
+      ImmutableList.Builder<ClassStats> thrashing = ImmutableList.builder();
+      classes.entrySet().stream()
+          .filter(e -> e.getValue()[2] > 0)
+          .map(
+              e -> {
+                String key = string(e.getKey());
+                int space = key.indexOf(' ');
+                return new AutoValue_TraceReplay_ClassStats(
+                    key.substring(0, space),
+                    key.substring(space + 1),
+                    e.getValue()[0],
+                    e.getValue()[1],
+                    e.getValue()[2]);
+              })
+          .sorted(Comparator.comparingLong(ClassStats::removals).reversed())
+          .forEach(thrashing::add);
+      return new AutoValue_TraceReplay_Report(
+          pops, time, current.size(), unresolvable, hotOwners.build(), thrashing.build());
+    }
+  }
+
+  private static long readVarint(DataInputStream data) throws IOException {
+    long value = 0;
+    for (int shift = 0; ; shift += 7) {
+      int b = data.readUnsignedByte();
+      value |= (long) (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+  }
+}
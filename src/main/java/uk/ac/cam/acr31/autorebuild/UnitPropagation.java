@@ -0,0 +1,142 @@
+/*
+ * Copyright © 2019 Andrew Rice (acr31@cam.ac.uk)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.ac.cam.acr31.autorebuild;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+import java.util.HashSet;
+import java.util.Optional;
+import java.util.Set;
+import uk.ac.cam.acr31.autorebuild.clazzinfo.ClassFile;
+import uk.ac.cam.acr31.autorebuild.clazzinfo.Identifier;
+import uk.ac.cam.acr31.autorebuild.metrics.Counter;
+import uk.ac.cam.acr31.autorebuild.metrics.Metrics;
+
+// Settles the unresolved identifiers that leave the search no choice: those whose owner has a
+// single version, which provides them, are resolved by adding it and those with no provider are
+// unresolvable. A single provider among several versions is not forced because choosing it settles
+// which version of the owner is used, and that is left to the search. Nor is a class which inherits
+// from or refers to anything with several versions, since adding it early would change which of
+// those versions the search keeps. Each class added can force more identifiers, so this repeats
+// until a pass forces nothing.
+class UnitPropagation {
+
+  private static final Counter PASSES =
+      Metrics.global().counter("search_propagation_passes", "Passes over unresolved identifiers");
+  private static final Counter FORCED_CLASSES =
+      Metrics.global()
+          .counter("search_propagated_classes", "Classes added as the only provider of something");
+  private static final Counter FORCED_UNRESOLVABLE =
+      Metrics.global()
+          .counter("search_propagated_unresolvable", "Identifiers found to have no provider");
+
+  private final Repository repository;
+  private final Providers providers;
+  private final Optional<Solution> previous;
+  private final SearchBudget budget;
+
+  // identifiers which have been seen to need a choice. Their providers only ever grow so they are
+  // not looked at again.
+  private final Set<Identifier> choices = new HashSet<>();
+
+  private int passes;
+  private int forcedClasses;
+  private int forcedUnresolvable;
+
+  UnitPropagation(
+      Repository repository,
+      Providers providers,
+      Optional<Solution> previous,
+      SearchBudget budget) {
+    this.repository = repository;
+    this.providers = providers;
+    this.previous = previous;
+    this.budget = budget;
+  }
+
+  // Returns the number of identifiers settled
+  int propagate() {
+    int settled = 0;
+    boolean changed = true;
+    while (changed) {
+      changed = false;
+      PASSES.increment();
+      passes++;
+      for (Identifier identifier : repository.unresolvedIdentifiers()) {
+        if (budget.isExhausted()) {
+          return settled;
+        }
+        if (choices.contains(identifier) || !repository.isUnresolved(identifier)) {
+          continue;
+        }
+        budget.countIteration();
+        if (previous.isPresent()
+            && previous
+                .get()
+                .stillUnresolvable(identifier, repository.unresolvedReferents(identifier))) {
+          repository.unresolveable(identifier);
+          settled++;
+          continue;
+        }
+        ImmutableSet<ClassFile> p = providers.provides(identifier);
+        if (p.isEmpty()) {
+          repository.unresolveable(identifier);
+          FORCED_UNRESOLVABLE.increment();
+          forcedUnresolvable++;
+          settled++;
+        } else if (p.size() == 1
+            && providers.versions(identifier.owner()) == 1
+            && isolated(Iterables.getOnlyElement(p))
+            && repository.addClassFile(Iterables.getOnlyElement(p))
+            && !repository.isUnresolved(identifier)) {
+          FORCED_CLASSES.increment();
+          forcedClasses++;
+          settled++;
+          changed = true;
+        } else {
+          // Either a choice between versions or a single provider which conflicts with what has
+          // been chosen or needs an ancestor first, all of which are left to the search
+          choices.add(identifier);
+        }
+      }
+    }
+    return settled;
+  }
+
+  // True if nothing the class inherits from or refers to has a choice of versions. Adding any other
+  // class early changes which identifiers are used by the time the search reaches those versions,
+  // and so which of them it keeps.
+  private boolean isolated(ClassFile classFile) {
+    if (!providers.hasSingleVersion(classFile.descriptor())) {
+      return false;
+    }
+    for (Identifier referenced : classFile.referenced()) {
+      if (!providers.hasSingleVersion(referenced.owner())) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  void printSummary() {
+    int classes = repository.classes().size();
+    System.out.printf(
+        "%nUnit propagation: %d of %d classes and %d unresolvable identifiers forced in %d"
+            + " passes%n",
+        forcedClasses, classes, forcedUnresolvable, passes);
+  }
+}
@@ -21,26 +21,30 @@ import org.objectweb.asm.Opcodes;
 
 class AnnotationInfoVisitor extends AnnotationVisitor {
 
-  private final ClassFile.Builder classFile;
+  private ClassFile.Builder classFile;
 
-  AnnotationInfoVisitor(ClassFile.Builder classFile) {
+  AnnotationInfoVisitor() {
     super(Opcodes.ASM7);
+  }
+
+  void reset(ClassFile.Builder classFile) {
     this.classFile = classFile;
   }
 
   @Override
   public void visitEnum(String name, String descriptor, String value) {
-    classFile.addReferenced(Identifier.create(descriptor));
+    classFile.addReferencedType(descriptor);
   }
 
   @Override
   public AnnotationVisitor visitAnnotation(String name, String descriptor) {
-    classFile.addReferenced(Identifier.create(descriptor));
-    return new AnnotationInfoVisitor(classFile);
+    classFile.addReferencedType(descriptor);
+    // nested values need no state of their own so the same visitor is reused
+    return this;
   }
 
   @Override
   public AnnotationVisitor visitArray(String name) {
-    return new AnnotationInfoVisitor(classFile);
+    return this;
   }
 }
@@ -23,15 +23,31 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.security.DigestInputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Optional;
 import org.objectweb.asm.ClassReader;
+import uk.ac.cam.acr31.autorebuild.jfr.ClassParseEvent;
+import uk.ac.cam.acr31.autorebuild.metrics.Counter;
+import uk.ac.cam.acr31.autorebuild.metrics.Metrics;
+import uk.ac.cam.acr31.autorebuild.metrics.Timer;
+import uk.ac.cam.acr31.autorebuild.proto.SnapshotProtos;
 
 @AutoValue
 public abstract class ClassFile {
 
+  private static final Counter CLASSES_PARSED =
+      Metrics.global().counter("scan_classes_parsed", "Class files parsed");
+  private static final Counter BYTES_READ =
+      Metrics.global().counter("scan_bytes_read", "Bytes of class file read");
+  private static final Timer PARSE_TIME =
+      Metrics.global().timer("scan_class_parse", "Time to parse a single class file");
+  private static final Counter EXTRACTOR_FALLBACKS =
+      Metrics.global()
+          .counter(
+              "scan_extractor_fallbacks",
+              "Class files the constant pool extractor could not parse, read with ASM instead");
+
   public abstract String classFileName();
 
   public abstract Optional<String> classFileJar();
@@ -46,39 +62,140 @@ public abstract class ClassFile {
 
   public abstract ImmutableSet<Identifier> declared();
 
+  // The names of declared(), collected as they are added so that declares is a hash lookup
+  abstract ImmutableSet<String> declaredNames();
+
   public abstract ImmutableSet<Identifier> referenced();
 
   public abstract String digest();
 
   public boolean declares(String name) {
-    return declared().stream().map(Identifier::name).anyMatch(n -> n.equals(name));
+    return declaredNames().contains(name);
   }
 
   public static ClassFile create(Path path) throws IOException {
+    return create(Extractor.CONSTANT_POOL, path);
+  }
+
+  public static ClassFile create(Extractor extractor, Path path) throws IOException {
     try (InputStream is = Files.newInputStream(path)) {
-      return create(path.toString(), is);
+      return create(extractor, path.toString(), is);
     }
   }
 
-  private static ClassFile create(ClassFile.Builder builder, InputStream is) throws IOException {
+  private static ClassFile create(
+      Extractor extractor, String classFile, Optional<String> jarFile, InputStream is)
+      throws IOException {
+    final long start = System.nanoTime();
+    final ClassParseEvent event = new ClassParseEvent();
+    event.begin();
     MessageDigest md = null;
     try {
       md = MessageDigest.getInstance("MD5");
     } catch (NoSuchAlgorithmException e) {
       throw new IllegalArgumentException(e);
     }
-    ClassReader r = new ClassReader(new DigestInputStream(is, md));
-    r.accept(new ClassInfoVisitor(builder), 0);
-    return builder.setDigest(BaseEncoding.base16().encode(md.digest())).build();
+    final byte[] bytes = is.readAllBytes();
+    Builder builder = newBuilder(classFile, jarFile);
+    ClassInfoVisitor visitor = ClassInfoVisitor.forCurrentThread();
+    visitor.reset(builder);
+    try {
+      if (extractor == Extractor.CONSTANT_POOL) {
+        try {
+          new ConstantPoolExtractor(bytes).accept(visitor);
+        } catch (RuntimeException e) {
+          // Start again from scratch with ASM, which will either cope or give a better error
+          EXTRACTOR_FALLBACKS.increment();
+          builder = newBuilder(classFile, jarFile);
+          visitor.reset(builder);
+          new ClassReader(bytes).accept(visitor, 0);
+        }
+      } else {
+        new ClassReader(bytes).accept(visitor, 0);
+      }
+    } finally {
+      visitor.reset(null);
+    }
+    final ClassFile result =
+        builder.setDigest(BaseEncoding.base16().encode(md.digest(bytes))).build();
+    CLASSES_PARSED.increment();
+    BYTES_READ.add(bytes.length);
+    PARSE_TIME.recordSince(start);
+    event.end();
+    if (event.shouldCommit() && ClassParseEvent.sampled()) {
+      event.classFile = classFile;
+      event.jar = jarFile.orElse("");
+      event.bytes = bytes.length;
+      event.extractor = extractor.name();
+      event.commit();
+    }
+    return result;
   }
 
   public static ClassFile create(String classFile, InputStream is) throws IOException {
-    return create(ClassFile.builder().setClassFileName(classFile), is);
+    return create(Extractor.CONSTANT_POOL, classFile, is);
+  }
+
+  public static ClassFile create(Extractor extractor, String classFile, InputStream is)
+      throws IOException {
+    return create(extractor, classFile, Optional.empty(), is);
   }
 
   public static ClassFile create(String jarFile, String classFile, InputStream is)
       throws IOException {
-    return create(ClassFile.builder().setClassFileName(classFile).setClassFileJar(jarFile), is);
+    return create(Extractor.CONSTANT_POOL, jarFile, classFile, is);
+  }
+
+  public static ClassFile create(
+      Extractor extractor, String jarFile, String classFile, InputStream is) throws IOException {
+    return create(extractor, classFile, Optional.of(jarFile), is);
+  }
+
+  // The number of classes the constant pool extractor has handed over to ASM
+  public static long extractorFallbacks() {
+    return EXTRACTOR_FALLBACKS.get();
+  }
+
+  private static Builder newBuilder(String classFile, Optional<String> jarFile) {
+    Builder builder = ClassFile.builder().setClassFileName(classFile);
+    jarFile.ifPresent(builder::setClassFileJar);
+    return builder;
+  }
+
+  public SnapshotProtos.ClassFile toProto() {
+    SnapshotProtos.ClassFile.Builder proto =
+        SnapshotProtos.ClassFile.newBuilder()
+            .setClassFileName(classFileName())
+            .setClassFileJar(classFileJar().orElse(""))
+            .setSourceFileName(sourceFileName().orElse(""))
+            .setInternalName(descriptor())
+            .addAllAncestors(ancestors())
+            .setPackageName(packageName())
+            .setDigest(digest());
+    declared().forEach(i -> proto.addDeclared(i.toProto()));
+    referenced().forEach(i -> proto.addReferenced(i.toProto()));
+    return proto.build();
+  }
+
+  public static ClassFile fromProto(SnapshotProtos.ClassFile proto) {
+    Builder builder =
+        builder()
+            .setClassFileName(proto.getClassFileName())
+            .setDescriptor(proto.getInternalName())
+            .setPackageName(proto.getPackageName())
+            .setDigest(proto.getDigest());
+    if (!proto.getClassFileJar().isEmpty()) {
+      builder.setClassFileJar(proto.getClassFileJar());
+    }
+    if (!proto.getSourceFileName().isEmpty()) {
+      builder.setSourceFileName(proto.getSourceFileName());
+    }
+    builder.ancestorsBuilder().addAll(proto.getAncestorsList());
+    proto.getDeclaredList().forEach(i -> builder.addDeclared(Identifier.fromProto(i)));
+    proto
+        .getReferencedList()
+        .forEach(i -> builder.referencedBuilder().add(Identifier.fromProto(i)));
+    return builder.build();
   }
 
   public static Builder builder() {
@@ -100,13 +217,31 @@ public abstract class ClassFile {
 
     abstract ImmutableSet.Builder<Identifier> declaredBuilder();
 
+    abstract ImmutableSet.Builder<String> declaredNamesBuilder();
+
     Builder addDeclared(Identifier declared) {
       declaredBuilder().add(declared);
+      declaredNamesBuilder().add(declared.name());
       return this;
     }
 
     abstract ImmutableSet.Builder<Identifier> referencedBuilder();
 
+    private final ReferenceSet references = new ReferenceSet();
+
+    // False if this member reference has been seen before, in which case the caller need not
+    // build its identifiers again
+    boolean firstReference(String owner, String name, String descriptor) {
+      return references.add(owner, name, descriptor);
+    }
+
+    Builder addReferencedType(String type) {
+      if (references.add(type, "", "")) {
+        addReferenced(Identifier.create(type));
+      }
+      return this;
+    }
+
     Builder addReferenced(Identifier referenced) {
       if (referenced.owner().equals(descriptor())) {
         return this;
@@ -16,10 +16,7 @@
 
 package uk.ac.cam.acr31.autorebuild.clazzinfo;
 
-import com.google.common.base.Joiner;
-import com.google.common.base.Splitter;
-import java.util.Arrays;
-import java.util.List;
+import java.util.function.Consumer;
 import org.objectweb.asm.AnnotationVisitor;
 import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.FieldVisitor;
@@ -27,13 +24,35 @@ import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.TypePath;
 
+// Visitors are reused from one class to the next (one chain per parsing thread) rather than
+// allocated per class, method and annotation
 class ClassInfoVisitor extends ClassVisitor {
 
+  private static final ThreadLocal<ClassInfoVisitor> VISITORS =
+      ThreadLocal.withInitial(ClassInfoVisitor::new);
+
+  private final AnnotationInfoVisitor annotationVisitor;
+  private final FieldInfoVisitor fieldVisitor;
+  private final MethodInfoVisitor methodVisitor;
   private ClassFile.Builder classFile;
+  private final Consumer<Identifier> addReferenced = i -> classFile.addReferenced(i);
 
-  ClassInfoVisitor(ClassFile.Builder classFile) {
+  private ClassInfoVisitor() {
     super(Opcodes.ASM7);
+    annotationVisitor = new AnnotationInfoVisitor();
+    fieldVisitor = new FieldInfoVisitor(annotationVisitor);
+    methodVisitor = new MethodInfoVisitor(annotationVisitor);
+  }
+
+  static ClassInfoVisitor forCurrentThread() {
+    return VISITORS.get();
+  }
+
+  // Pass null once the class has been visited so the builder is not retained
+  void reset(ClassFile.Builder classFile) {
     this.classFile = classFile;
+    annotationVisitor.reset(classFile);
+    methodVisitor.reset(classFile);
   }
 
   @Override
@@ -54,13 +73,14 @@ class ClassInfoVisitor extends ClassVisitor {
     classFile.addDeclared(descriptor);
 
     // if its an innerclass add a ref to the outerclass so we include it
-    if (name.contains("$")) {
-      Identifier outerDescriptor = Identifier.create(name.replaceAll("\\$.*", ""));
+    int dollar = name.indexOf('$');
+    if (dollar != -1) {
+      Identifier outerDescriptor = Identifier.create(name.substring(0, dollar));
       classFile.addReferenced(outerDescriptor);
     }
 
-    List<String> elements = Splitter.on("/").splitToList(name);
-    classFile.setPackageName(Joiner.on(".").join(elements.subList(0, elements.size() - 1)));
+    int slash = name.lastIndexOf('/');
+    classFile.setPackageName(slash == -1 ? "" : name.substring(0, slash).replace('/', '.'));
 
     if (superName != null) { // objects have no super-class
       Identifier superIdentifier = Identifier.create(superName);
@@ -68,45 +88,43 @@ class ClassInfoVisitor extends ClassVisitor {
       classFile.addReferenced(superIdentifier);
     }
 
-    Arrays.stream(interfaces)
-        .map(Identifier::create)
-        .forEach(
-            i -> {
-              classFile.addAncestor(i.owner());
-              classFile.addReferenced(i);
-            });
+    for (String anInterface : interfaces) {
+      Identifier i = Identifier.create(anInterface);
+      classFile.addAncestor(i.owner());
+      classFile.addReferenced(i);
+    }
   }
 
   @Override
   public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
-    classFile.addReferenced(Identifier.create(descriptor));
-    return new AnnotationInfoVisitor(classFile);
+    classFile.addReferencedType(descriptor);
+    return annotationVisitor;
   }
 
   @Override
   public AnnotationVisitor visitTypeAnnotation(
       int typeRef, TypePath typePath, String descriptor, boolean visible) {
-    classFile.addReferenced(Identifier.create(descriptor));
-    return new AnnotationInfoVisitor(classFile);
+    classFile.addReferencedType(descriptor);
+    return annotationVisitor;
   }
 
   @Override
   public void visitInnerClass(String name, String outerName, String innerName, int access) {
-    classFile.addReferenced(Identifier.create(name));
+    classFile.addReferencedType(name);
   }
 
   @Override
   public FieldVisitor visitField(
       int access, String name, String descriptor, String signature, Object value) {
     classFile.addDeclared(Identifier.create(classFile.descriptor(), name));
-    return new FieldInfoVisitor(classFile);
+    return fieldVisitor;
   }
 
   @Override
   public MethodVisitor visitMethod(
       int access, String name, String descriptor, String signature, String[] exceptions) {
     classFile.addDeclared(Identifier.create(classFile.descriptor(), name + descriptor));
-    Identifier.fromMethodDescriptor(descriptor).forEach(classFile::addReferenced);
-    return new MethodInfoVisitor(classFile);
+    Identifier.forEachMethodDescriptorType(descriptor, addReferenced);
+    return methodVisitor;
   }
 }
@@ -0,0 +1,640 @@
+/*
+ * Copyright © 2019 Andrew Rice (acr31@cam.ac.uk)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.ac.cam.acr31.autorebuild.clazzinfo;
+
+import java.util.Arrays;
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.TypePath;
+
+// A cut down replacement for ClassReader.accept. References are read from the constant pool
+// entries behind each instruction operand rather than by decoding every instruction, and only the
+// events that the clazzinfo visitors record are emitted (no frames, labels, line numbers, constant
+// values or signatures).
+class ConstantPoolExtractor {
+
+  private static final int CONSTANT_UTF8 = 1;
+  private static final int CONSTANT_INTEGER = 3;
+  private static final int CONSTANT_FLOAT = 4;
+  private static final int CONSTANT_LONG = 5;
+  private static final int CONSTANT_DOUBLE = 6;
+  private static final int CONSTANT_CLASS = 7;
+  private static final int CONSTANT_STRING = 8;
+  private static final int CONSTANT_FIELDREF = 9;
+  private static final int CONSTANT_METHODREF = 10;
+  private static final int CONSTANT_INTERFACE_METHODREF = 11;
+  private static final int CONSTANT_NAME_AND_TYPE = 12;
+  private static final int CONSTANT_METHOD_HANDLE = 15;
+  private static final int CONSTANT_METHOD_TYPE = 16;
+  private static final int CONSTANT_DYNAMIC = 17;
+  private static final int CONSTANT_INVOKE_DYNAMIC = 18;
+  private static final int CONSTANT_MODULE = 19;
+  private static final int CONSTANT_PACKAGE = 20;
+
+  // Length in bytes of each instruction including its operands, 0 for variable length and -1 for
+  // invalid opcodes
+  private static final int[] INSTRUCTION_LENGTHS = instructionLengths();
+
+  private final byte[] bytes;
+  // offset of the byte following the tag of each constant pool entry
+  private final int[] entries;
+  private final String[] strings;
+  private final int header;
+  private char[] chars = new char[64];
+
+  ConstantPoolExtractor(byte[] bytes) {
+    this.bytes = bytes;
+    if (readInt(0) != 0xCAFEBABE) {
+      throw new IllegalArgumentException("Not a class file");
+    }
+    int count = readUnsignedShort(8);
+    entries = new int[count];
+    strings = new String[count];
+    int offset = 10;
+    for (int i = 1; i < count; i++) {
+      entries[i] = offset + 1;
+      int tag = bytes[offset];
+      switch (tag) {
+        case CONSTANT_INTEGER:
+        case CONSTANT_FLOAT:
+        case CONSTANT_FIELDREF:
+        case CONSTANT_METHODREF:
+        case CONSTANT_INTERFACE_METHODREF:
+        case CONSTANT_NAME_AND_TYPE:
+        case CONSTANT_DYNAMIC:
+        case CONSTANT_INVOKE_DYNAMIC:
+          offset += 5;
+          break;
+        case CONSTANT_LONG:
+        case CONSTANT_DOUBLE:
+          offset += 9;
+          i++;
+          break;
+        case CONSTANT_UTF8:
+          offset += 3 + readUnsignedShort(offset + 1);
+          break;
+        case CONSTANT_METHOD_HANDLE:
+          offset += 4;
+          break;
+        case CONSTANT_CLASS:
+        case CONSTANT_STRING:
+        case CONSTANT_METHOD_TYPE:
+        case CONSTANT_MODULE:
+        case CONSTANT_PACKAGE:
+          offset += 3;
+          break;
+        default:
+          throw new IllegalArgumentException("Invalid constant pool tag " + tag);
+      }
+    }
+    header = offset;
+  }
+
+  void accept(ClassVisitor classVisitor) {
+    final int access = readUnsignedShort(header);
+    final String name = readClass(header + 2);
+    final String superName = readClass(header + 4);
+    String[] interfaces = new String[readUnsignedShort(header + 6)];
+    int offset = header + 8;
+    for (int i = 0; i < interfaces.length; i++) {
+      interfaces[i] = readClass(offset);
+      offset += 2;
+    }
+
+    // The class attributes follow the fields and methods but the visitors expect the source file
+    // and class name first
+    int fields = offset;
+    int methods = skipMembers(fields);
+    int attributes = skipMembers(methods);
+    final int version = readInt(4);
+    String sourceFile = null;
+    int attributeCount = readUnsignedShort(attributes);
+    offset = attributes + 2;
+    for (int i = 0; i < attributeCount; i++) {
+      if ("SourceFile".equals(readUtf8(offset))) {
+        sourceFile = readUtf8(offset + 6);
+      }
+      offset += 6 + readInt(offset + 2);
+    }
+    if (sourceFile != null) {
+      classVisitor.visitSource(sourceFile, null);
+    }
+    classVisitor.visit(version, access, name, null, superName, interfaces);
+
+    offset = attributes + 2;
+    for (int i = 0; i < attributeCount; i++) {
+      String attributeName = readUtf8(offset);
+      int start = offset + 6;
+      switch (attributeName) {
+        case "RuntimeVisibleAnnotations":
+        case "RuntimeInvisibleAnnotations":
+          readAnnotations(start, classVisitor::visitAnnotation, isVisible(attributeName));
+          break;
+        case "RuntimeVisibleTypeAnnotations":
+        case "RuntimeInvisibleTypeAnnotations":
+          readTypeAnnotations(start, classVisitor::visitTypeAnnotation, isVisible(attributeName));
+          break;
+        case "InnerClasses":
+          int classes = readUnsignedShort(start);
+          for (int j = 0; j < classes; j++) {
+            int entry = start + 2 + j * 8;
+            classVisitor.visitInnerClass(
+                readClass(entry),
+                readClass(entry + 2),
+                readUtf8(entry + 4),
+                readUnsignedShort(entry + 6));
+          }
+          break;
+        default:
+          break;
+      }
+      offset = start + readInt(offset + 2);
+    }
+
+    offset = fields;
+    int fieldCount = readUnsignedShort(offset);
+    offset += 2;
+    for (int i = 0; i < fieldCount; i++) {
+      FieldVisitor fieldVisitor =
+          classVisitor.visitField(
+              readUnsignedShort(offset), readUtf8(offset + 2), readUtf8(offset + 4), null, null);
+      offset = readField(offset + 6, fieldVisitor);
+    }
+
+    int methodCount = readUnsignedShort(offset);
+    offset += 2;
+    for (int i = 0; i < methodCount; i++) {
+      MethodVisitor methodVisitor =
+          classVisitor.visitMethod(
+              readUnsignedShort(offset), readUtf8(offset + 2), readUtf8(offset + 4), null, null);
+      offset = readMethod(offset + 6, methodVisitor);
+    }
+  }
+
+  private int skipMembers(int offset) {
+    int count = readUnsignedShort(offset);
+    offset += 2;
+    for (int i = 0; i < count; i++) {
+      int attributeCount = readUnsignedShort(offset + 6);
+      offset += 8;
+      for (int j = 0; j < attributeCount; j++) {
+        offset += 6 + readInt(offset + 2);
+      }
+    }
+    return offset;
+  }
+
+  private int readField(int offset, FieldVisitor fieldVisitor) {
+    int attributeCount = readUnsignedShort(offset);
+    offset += 2;
+    for (int i = 0; i < attributeCount; i++) {
+      String attributeName = readUtf8(offset);
+      int start = offset + 6;
+      if (fieldVisitor != null) {
+        switch (attributeName) {
+          case "RuntimeVisibleAnnotations":
+          case "RuntimeInvisibleAnnotations":
+            readAnnotations(start, fieldVisitor::visitAnnotation, isVisible(attributeName));
+            break;
+          case "RuntimeVisibleTypeAnnotations":
+          case "RuntimeInvisibleTypeAnnotations":
+            readTypeAnnotations(
+                start, fieldVisitor::visitTypeAnnotation, isVisible(attributeName));
+            break;
+          default:
+            break;
+        }
+      }
+      offset = start + readInt(offset + 2);
+    }
+    return offset;
+  }
+
+  private int readMethod(int offset, MethodVisitor methodVisitor) {
+    int attributeCount = readUnsignedShort(offset);
+    offset += 2;
+    for (int i = 0; i < attributeCount; i++) {
+      String attributeName = readUtf8(offset);
+      int start = offset + 6;
+      if (methodVisitor != null) {
+        switch (attributeName) {
+          case "Code":
+            readCode(start, methodVisitor);
+            break;
+          case "AnnotationDefault":
+            readElementValue(start, null, methodVisitor.visitAnnotationDefault());
+            break;
+          case "RuntimeVisibleAnnotations":
+          case "RuntimeInvisibleAnnotations":
+            readAnnotations(start, methodVisitor::visitAnnotation, isVisible(attributeName));
+            break;
+          case "RuntimeVisibleTypeAnnotations":
+          case "RuntimeInvisibleTypeAnnotations":
+            readTypeAnnotations(
+                start, methodVisitor::visitTypeAnnotation, isVisible(attributeName));
+            break;
+          case "RuntimeVisibleParameterAnnotations":
+          case "RuntimeInvisibleParameterAnnotations":
+            readParameterAnnotations(start, methodVisitor, isVisible(attributeName));
+            break;
+          default:
+            break;
+        }
+      }
+      offset = start + readInt(offset + 2);
+    }
+    return offset;
+  }
+
+  private void readCode(int offset, MethodVisitor methodVisitor) {
+    int codeLength = readInt(offset + 4);
+    int codeStart = offset + 8;
+    int codeEnd = codeStart + codeLength;
+    int pc = codeStart;
+    while (pc < codeEnd) {
+      int opcode = bytes[pc] & 0xFF;
+      switch (opcode) {
+        case Opcodes.NEW:
+        case Opcodes.ANEWARRAY:
+        case Opcodes.CHECKCAST:
+        case Opcodes.INSTANCEOF:
+          methodVisitor.visitTypeInsn(opcode, readClass(pc + 1));
+          break;
+        case Opcodes.MULTIANEWARRAY:
+          methodVisitor.visitMultiANewArrayInsn(readClass(pc + 1), bytes[pc + 3] & 0xFF);
+          break;
+        case Opcodes.GETSTATIC:
+        case Opcodes.PUTSTATIC:
+        case Opcodes.GETFIELD:
+        case Opcodes.PUTFIELD:
+        case Opcodes.INVOKEVIRTUAL:
+        case Opcodes.INVOKESPECIAL:
+        case Opcodes.INVOKESTATIC:
+        case Opcodes.INVOKEINTERFACE:
+          readMemberInsn(opcode, readUnsignedShort(pc + 1), methodVisitor);
+          break;
+        case Opcodes.INVOKEDYNAMIC:
+          int nameAndType = entries[readUnsignedShort(entries[readUnsignedShort(pc + 1)] + 2)];
+          methodVisitor.visitInvokeDynamicInsn(
+              readUtf8(nameAndType), readUtf8(nameAndType + 2), null);
+          break;
+        default:
+          break;
+      }
+      pc += instructionLength(opcode, pc, codeStart);
+    }
+    if (pc != codeEnd) {
+      throw new IllegalArgumentException("Instruction overruns code attribute");
+    }
+
+    int exceptions = readUnsignedShort(codeEnd);
+    int offsetInTable = codeEnd + 2;
+    for (int i = 0; i < exceptions; i++) {
+      methodVisitor.visitTryCatchBlock(null, null, null, readClass(offsetInTable + 6));
+      offsetInTable += 8;
+    }
+
+    int attributeCount = readUnsignedShort(offsetInTable);
+    int attribute = offsetInTable + 2;
+    for (int i = 0; i < attributeCount; i++) {
+      String attributeName = readUtf8(attribute);
+      int start = attribute + 6;
+      switch (attributeName) {
+        case "LocalVariableTable":
+          int variables = readUnsignedShort(start);
+          for (int j = 0; j < variables; j++) {
+            int entry = start + 2 + j * 10;
+            methodVisitor.visitLocalVariable(
+                readUtf8(entry + 4),
+                readUtf8(entry + 6),
+                null,
+                null,
+                null,
+                readUnsignedShort(entry + 8));
+          }
+          break;
+        case "RuntimeVisibleTypeAnnotations":
+        case "RuntimeInvisibleTypeAnnotations":
+          readCodeTypeAnnotations(start, methodVisitor, isVisible(attributeName));
+          break;
+        default:
+          break;
+      }
+      attribute = start + readInt(attribute + 2);
+    }
+  }
+
+  private void readMemberInsn(int opcode, int index, MethodVisitor methodVisitor) {
+    int entry = entries[index];
+    String owner = readClass(entry);
+    int nameAndType = entries[readUnsignedShort(entry + 2)];
+    String name = readUtf8(nameAndType);
+    String descriptor = readUtf8(nameAndType + 2);
+    if (opcode <= Opcodes.PUTFIELD) {
+      methodVisitor.visitFieldInsn(opcode, owner, name, descriptor);
+    } else {
+      methodVisitor.visitMethodInsn(
+          opcode, owner, name, descriptor, bytes[entry - 1] == CONSTANT_INTERFACE_METHODREF);
+    }
+  }
+
+  private int instructionLength(int opcode, int pc, int codeStart) {
+    int length = INSTRUCTION_LENGTHS[opcode];
+    if (length > 0) {
+      return length;
+    }
+    if (length < 0) {
+      throw new IllegalArgumentException("Invalid opcode " + opcode);
+    }
+    // switch operands are aligned to four bytes from the start of the code
+    int operands = pc + 4 - ((pc - codeStart) & 3);
+    switch (opcode) {
+      case Opcodes.TABLESWITCH:
+        return operands + 12 + (readInt(operands + 8) - readInt(operands + 4) + 1) * 4 - pc;
+      case Opcodes.LOOKUPSWITCH:
+        return operands + 8 + readInt(operands + 4) * 8 - pc;
+      default:
+        // wide
+        return (bytes[pc + 1] & 0xFF) == Opcodes.IINC ? 6 : 4;
+    }
+  }
+
+  private interface AnnotationStart {
+    AnnotationVisitor visit(String descriptor, boolean visible);
+  }
+
+  private interface TypeAnnotationStart {
+    AnnotationVisitor visit(
+        int typeRef, TypePath typePath, String descriptor, boolean visible);
+  }
+
+  private void readAnnotations(int offset, AnnotationStart start, boolean visible) {
+    int count = readUnsignedShort(offset);
+    offset += 2;
+    for (int i = 0; i < count; i++) {
+      String descriptor = readUtf8(offset);
+      offset = readElementValuePairs(offset + 2, start.visit(descriptor, visible));
+    }
+  }
+
+  private void readParameterAnnotations(int offset, MethodVisitor methodVisitor, boolean visible) {
+    int parameters = bytes[offset] & 0xFF;
+    offset++;
+    for (int parameter = 0; parameter < parameters; parameter++) {
+      int count = readUnsignedShort(offset);
+      offset += 2;
+      for (int i = 0; i < count; i++) {
+        String descriptor = readUtf8(offset);
+        offset =
+            readElementValuePairs(
+                offset + 2, methodVisitor.visitParameterAnnotation(parameter, descriptor, visible));
+      }
+    }
+  }
+
+  private void readTypeAnnotations(int offset, TypeAnnotationStart start, boolean visible) {
+    int count = readUnsignedShort(offset);
+    offset += 2;
+    for (int i = 0; i < count; i++) {
+      int targetType = bytes[offset] & 0xFF;
+      offset = skipTypePath(skipTargetInfo(offset));
+      String descriptor = readUtf8(offset);
+      offset =
+          readElementValuePairs(
+              offset + 2, start.visit(targetType << 24, null, descriptor, visible));
+    }
+  }
+
+  // Mirrors ClassReader in sending local variable, exception parameter and instruction type
+  // annotations to their own visit methods
+  private void readCodeTypeAnnotations(int offset, MethodVisitor methodVisitor, boolean visible) {
+    int count = readUnsignedShort(offset);
+    offset += 2;
+    for (int i = 0; i < count; i++) {
+      int targetType = bytes[offset] & 0xFF;
+      offset = skipTypePath(skipTargetInfo(offset));
+      String descriptor = readUtf8(offset);
+      AnnotationVisitor annotationVisitor;
+      switch (targetType) {
+        case 0x40: // LOCAL_VARIABLE
+        case 0x41: // RESOURCE_VARIABLE
+          annotationVisitor =
+              methodVisitor.visitLocalVariableAnnotation(
+                  targetType << 24, null, null, null, null, descriptor, visible);
+          break;
+        case 0x42: // EXCEPTION_PARAMETER
+          annotationVisitor =
+              methodVisitor.visitTryCatchAnnotation(targetType << 24, null, descriptor, visible);
+          break;
+        default:
+          annotationVisitor =
+              methodVisitor.visitInsnAnnotation(targetType << 24, null, descriptor, visible);
+          break;
+      }
+      offset = readElementValuePairs(offset + 2, annotationVisitor);
+    }
+  }
+
+  private int skipTargetInfo(int offset) {
+    int targetType = bytes[offset] & 0xFF;
+    switch (targetType) {
+      case 0x00: // CLASS_TYPE_PARAMETER
+      case 0x01: // METHOD_TYPE_PARAMETER
+      case 0x16: // METHOD_FORMAL_PARAMETER
+        return offset + 2;
+      case 0x13: // FIELD
+      case 0x14: // METHOD_RETURN
+      case 0x15: // METHOD_RECEIVER
+        return offset + 1;
+      case 0x40: // LOCAL_VARIABLE
+      case 0x41: // RESOURCE_VARIABLE
+        return offset + 3 + readUnsignedShort(offset + 1) * 6;
+      case 0x47: // CAST
+      case 0x48: // CONSTRUCTOR_INVOCATION_TYPE_ARGUMENT
+      case 0x49: // METHOD_INVOCATION_TYPE_ARGUMENT
+      case 0x4A: // CONSTRUCTOR_REFERENCE_TYPE_ARGUMENT
+      case 0x4B: // METHOD_REFERENCE_TYPE_ARGUMENT
+        return offset + 4;
+      case 0x10: // CLASS_EXTENDS
+      case 0x11: // CLASS_TYPE_PARAMETER_BOUND
+      case 0x12: // METHOD_TYPE_PARAMETER_BOUND
+      case 0x17: // THROWS
+      case 0x42: // EXCEPTION_PARAMETER
+      case 0x43: // INSTANCEOF
+      case 0x44: // NEW
+      case 0x45: // CONSTRUCTOR_REFERENCE
+      case 0x46: // METHOD_REFERENCE
+        return offset + 3;
+      default:
+        throw new IllegalArgumentException("Invalid type annotation target " + targetType);
+    }
+  }
+
+  private int skipTypePath(int offset) {
+    return offset + 1 + (bytes[offset] & 0xFF) * 2;
+  }
+
+  private int readElementValuePairs(int offset, AnnotationVisitor annotationVisitor) {
+    int pairs = readUnsignedShort(offset);
+    offset += 2;
+    for (int i = 0; i < pairs; i++) {
+      String name = readUtf8(offset);
+      offset = readElementValue(offset + 2, name, annotationVisitor);
+    }
+    return offset;
+  }
+
+  private int readElementValue(int offset, String name, AnnotationVisitor annotationVisitor) {
+    int tag = bytes[offset] & 0xFF;
+    offset++;
+    switch (tag) {
+      case 'e':
+        if (annotationVisitor != null) {
+          annotationVisitor.visitEnum(name, readUtf8(offset), readUtf8(offset + 2));
+        }
+        return offset + 4;
+      case '@':
+        AnnotationVisitor nested =
+            annotationVisitor == null
+                ? null
+                : annotationVisitor.visitAnnotation(name, readUtf8(offset));
+        return readElementValuePairs(offset + 2, nested);
+      case '[':
+        AnnotationVisitor array =
+            annotationVisitor == null ? null : annotationVisitor.visitArray(name);
+        int values = readUnsignedShort(offset);
+        offset += 2;
+        for (int i = 0; i < values; i++) {
+          offset = readElementValue(offset, null, array);
+        }
+        return offset;
+      case 'B':
+      case 'C':
+      case 'D':
+      case 'F':
+      case 'I':
+      case 'J':
+      case 'S':
+      case 'Z':
+      case 's':
+      case 'c':
+        // constant values and class literals are not recorded
+        return offset + 2;
+      default:
+        throw new IllegalArgumentException("Invalid element value tag " + tag);
+    }
+  }
+
+  private boolean isVisible(String attributeName) {
+    return attributeName.startsWith("RuntimeVisible");
+  }
+
+  // The name of the CONSTANT_Class entry whose index is at offset, or null for index 0
+  private String readClass(int offset) {
+    int index = readUnsignedShort(offset);
+    return index == 0 ? null : readUtf8(entries[index]);
+  }
+
+  // The CONSTANT_Utf8 entry whose index is at offset, or null for index 0
+  private String readUtf8(int offset) {
+    int index = readUnsignedShort(offset);
+    if (index == 0) {
+      return null;
+    }
+    String result = strings[index];
+    if (result == null) {
+      result = decodeUtf8(entries[index]);
+      strings[index] = result;
+    }
+    return result;
+  }
+
+  // Decodes modified UTF-8 as described in JVMS 4.4.7
+  private String decodeUtf8(int offset) {
+    int length = readUnsignedShort(offset);
+    if (chars.length < length) {
+      chars = new char[length];
+    }
+    int current = offset + 2;
+    int end = current + length;
+    int count = 0;
+    while (current < end) {
+      int c = bytes[current++];
+      if ((c & 0x80) == 0) {
+        chars[count++] = (char) (c & 0x7F);
+      } else if ((c & 0xE0) == 0xC0) {
+        chars[count++] = (char) (((c & 0x1F) << 6) + (bytes[current++] & 0x3F));
+      } else {
+        int high = ((c & 0xF) << 12) + ((bytes[current++] & 0x3F) << 6);
+        chars[count++] = (char) (high + (bytes[current++] & 0x3F));
+      }
+    }
+    return new String(chars, 0, count);
+  }
+
+  private int readUnsignedShort(int offset) {
+    return ((bytes[offset] & 0xFF) << 8) | (bytes[offset + 1] & 0xFF);
+  }
+
+  private int readInt(int offset) {
+    return ((bytes[offset] & 0xFF) << 24)
+        | ((bytes[offset + 1] & 0xFF) << 16)
+        | ((bytes[offset + 2] & 0xFF) << 8)
+        | (bytes[offset + 3] & 0xFF);
+  }
+
+  private static int[] instructionLengths() {
+    int[] lengths = new int[256];
+    Arrays.fill(lengths, -1);
+    Arrays.fill(lengths, Opcodes.NOP, Opcodes.JSR + 1, 1);
+    lengths[Opcodes.BIPUSH] = 2;
+    lengths[Opcodes.SIPUSH] = 3;
+    lengths[Opcodes.LDC] = 2;
+    lengths[19] = 3; // LDC_W
+    lengths[20] = 3; // LDC2_W
+    Arrays.fill(lengths, Opcodes.ILOAD, Opcodes.ALOAD + 1, 2);
+    Arrays.fill(lengths, Opcodes.ISTORE, Opcodes.ASTORE + 1, 2);
+    lengths[Opcodes.IINC] = 3;
+    Arrays.fill(lengths, Opcodes.IFEQ, Opcodes.JSR + 1, 3);
+    lengths[Opcodes.RET] = 2;
+    lengths[Opcodes.TABLESWITCH] = 0;
+    lengths[Opcodes.LOOKUPSWITCH] = 0;
+    Arrays.fill(lengths, Opcodes.IRETURN, Opcodes.RETURN + 1, 1);
+    Arrays.fill(lengths, Opcodes.GETSTATIC, Opcodes.INVOKESTATIC + 1, 3);
+    lengths[Opcodes.INVOKEINTERFACE] = 5;
+    lengths[Opcodes.INVOKEDYNAMIC] = 5;
+    lengths[Opcodes.NEW] = 3;
+    lengths[Opcodes.NEWARRAY] = 2;
+    lengths[Opcodes.ANEWARRAY] = 3;
+    lengths[Opcodes.ARRAYLENGTH] = 1;
+    lengths[Opcodes.ATHROW] = 1;
+    lengths[Opcodes.CHECKCAST] = 3;
+    lengths[Opcodes.INSTANCEOF] = 3;
+    lengths[Opcodes.MONITORENTER] = 1;
+    lengths[Opcodes.MONITOREXIT] = 1;
+    lengths[196] = 0; // WIDE
+    lengths[Opcodes.MULTIANEWARRAY] = 4;
+    lengths[Opcodes.IFNULL] = 3;
+    lengths[Opcodes.IFNONNULL] = 3;
+    lengths[200] = 5; // GOTO_W
+    lengths[201] = 5; // JSR_W
+    return lengths;
+  }
+}
@@ -0,0 +1,26 @@
+/*
+ * Copyright © 2019 Andrew Rice (acr31@cam.ac.uk)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.ac.cam.acr31.autorebuild.clazzinfo;
+
+// How the facts in a ClassFile are pulled out of the class file bytes
+public enum Extractor {
+  // ASM ClassReader traversal of the whole class
+  VISITOR,
+  // ConstantPoolExtractor, which decodes only the parts the visitors record. Falls back to VISITOR
+  // if the class cannot be parsed.
+  CONSTANT_POOL
+}
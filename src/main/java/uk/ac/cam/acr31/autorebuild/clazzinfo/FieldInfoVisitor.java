@@ -23,21 +23,21 @@ import org.objectweb.asm.TypePath;
 
 class FieldInfoVisitor extends FieldVisitor {
 
-  private final ClassFile.Builder classFile;
+  private final AnnotationInfoVisitor annotationVisitor;
 
-  FieldInfoVisitor(ClassFile.Builder classFile) {
+  FieldInfoVisitor(AnnotationInfoVisitor annotationVisitor) {
     super(Opcodes.ASM7);
-    this.classFile = classFile;
+    this.annotationVisitor = annotationVisitor;
   }
 
   @Override
   public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
-    return new AnnotationInfoVisitor(classFile);
+    return annotationVisitor;
   }
 
   @Override
   public AnnotationVisitor visitTypeAnnotation(
       int typeRef, TypePath typePath, String descriptor, boolean visible) {
-    return new AnnotationInfoVisitor(classFile);
+    return annotationVisitor;
   }
 }
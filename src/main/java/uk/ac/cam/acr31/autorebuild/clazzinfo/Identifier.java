@@ -19,24 +19,15 @@ package uk.ac.cam.acr31.autorebuild.clazzinfo;
 import com.google.auto.value.AutoValue;
 import com.google.common.collect.ImmutableSet;
 import java.util.Comparator;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.function.Consumer;
 import javax.annotation.Nonnull;
+import uk.ac.cam.acr31.autorebuild.proto.SnapshotProtos;
 
 @AutoValue
 public abstract class Identifier implements Comparable<Identifier> {
 
   private static final Comparator<Identifier> COMPARATOR =
       Comparator.comparing(Identifier::owner).thenComparing(Identifier::name);
-  private static final Pattern INTERNAL_NAME = Pattern.compile("[/\\p{javaJavaIdentifierPart}]*");
-  private static final Pattern PRIMITIVE_TYPE_DESCRIPTOR = Pattern.compile("^\\[*[ZCBSIFJDV].*");
-  private static final Pattern PRIMITIVE_ARRAY_TYPE_DESCRIPTOR =
-      Pattern.compile("^\\[+[ZCBSIFJDLV].*");
-
-  private static final Pattern CLASS_TYPE_DESCRIPTOR =
-      Pattern.compile("^\\[*L([/\\p{javaJavaIdentifierPart}]+);");
-
-  private static final Pattern METHOD_TYPE_DESCRIPTOR = Pattern.compile("^\\((.*)\\)(.*)");
 
   public abstract String owner();
 
@@ -55,21 +46,36 @@ public abstract class Identifier implements Comparable<Identifier> {
     return create(owner, "");
   }
 
+  public SnapshotProtos.Identifier toProto() {
+    return SnapshotProtos.Identifier.newBuilder().setOwner(owner()).setName(name()).build();
+  }
+
+  // Owners in a snapshot are already internal names so skip the conversion in create
+  public static Identifier fromProto(SnapshotProtos.Identifier proto) {
+    return new AutoValue_Identifier(proto.getOwner(), proto.getName());
+  }
+
   static ImmutableSet<Identifier> fromMethodDescriptor(String methodDescriptor) {
     ImmutableSet.Builder<Identifier> builder = ImmutableSet.builder();
-    Matcher methodTypeMatcher = METHOD_TYPE_DESCRIPTOR.matcher(methodDescriptor);
-    if (!methodTypeMatcher.matches()) {
+    forEachMethodDescriptorType(methodDescriptor, builder::add);
+    return builder.build();
+  }
+
+  // Passes each class type in a method descriptor to the consumer without collecting them first
+  static void forEachMethodDescriptorType(String methodDescriptor, Consumer<Identifier> consumer) {
+    int close = methodDescriptor.lastIndexOf(')');
+    if (!methodDescriptor.startsWith("(") || close == -1) {
       throw new IllegalArgumentException("Invalid method descriptor: " + methodDescriptor);
     }
-    String argumentTypes = methodTypeMatcher.group(1);
-    String returnType = methodTypeMatcher.group(2);
+    String returnType = methodDescriptor.substring(close + 1);
 
     if (isClassType(returnType)) {
-      builder.add(create(returnType));
+      consumer.accept(create(returnType));
     }
-    StringBuilder objectName = null;
-    for (char c : argumentTypes.toCharArray()) {
-      if (objectName == null) {
+    int objectStart = -1;
+    for (int i = 1; i < close; i++) {
+      char c = methodDescriptor.charAt(i);
+      if (objectStart == -1) {
         switch (c) {
           case '[':
           case 'Z':
@@ -83,42 +89,69 @@ public abstract class Identifier implements Comparable<Identifier> {
             // ignore
             break;
           case 'L':
-            objectName = new StringBuilder();
+            objectStart = i + 1;
             break;
           default:
-            throw new IllegalArgumentException("Failed to parse: " + argumentTypes);
-        }
-      } else {
-        if (c == ';') {
-          builder.add(create(objectName.toString(), ""));
-          objectName = null;
-        } else {
-          objectName.append(c);
+            throw new IllegalArgumentException(
+                "Failed to parse: " + methodDescriptor.substring(1, close));
         }
+      } else if (c == ';') {
+        consumer.accept(create(methodDescriptor.substring(objectStart, i), ""));
+        objectStart = -1;
       }
     }
-    if (objectName != null) {
-      throw new IllegalArgumentException("Failed to parse: " + argumentTypes);
+    if (objectStart != -1) {
+      throw new IllegalArgumentException(
+          "Failed to parse: " + methodDescriptor.substring(1, close));
     }
-    return builder.build();
   }
 
+  // The checks below avoid regular expressions since they run for every instruction parsed
+
   static boolean isClassType(String descriptor) {
-    return !PRIMITIVE_TYPE_DESCRIPTOR.matcher(descriptor).matches();
+    int start = skipArrayDimensions(descriptor);
+    return start == descriptor.length() || "ZCBSIFJDV".indexOf(descriptor.charAt(start)) == -1;
   }
 
   static boolean isPrimitiveArrayType(String descriptor) {
-    return PRIMITIVE_ARRAY_TYPE_DESCRIPTOR.matcher(descriptor).matches();
+    int start = skipArrayDimensions(descriptor);
+    return start > 0
+        && start < descriptor.length()
+        && "ZCBSIFJDLV".indexOf(descriptor.charAt(start)) != -1;
+  }
+
+  private static int skipArrayDimensions(String descriptor) {
+    int start = 0;
+    while (start < descriptor.length() && descriptor.charAt(start) == '[') {
+      start++;
+    }
+    return start;
   }
 
   private static String convertName(String name) {
-    Matcher classTypeMatcher = CLASS_TYPE_DESCRIPTOR.matcher(name);
-    if (classTypeMatcher.matches()) {
-      return classTypeMatcher.group(1);
+    // Class type descriptors, optionally of an array, such as [Ljava/lang/String;
+    int start = skipArrayDimensions(name);
+    int end = name.length() - 1;
+    if (end > start + 1
+        && name.charAt(start) == 'L'
+        && name.charAt(end) == ';'
+        && isInternalName(name, start + 1, end)) {
+      return name.substring(start + 1, end);
     }
-    if (INTERNAL_NAME.matcher(name).matches()) {
+    if (isInternalName(name, 0, name.length())) {
       return name;
     }
     throw new IllegalArgumentException("Unable to infer kind for: " + name);
   }
+
+  private static boolean isInternalName(String name, int start, int end) {
+    for (int i = start; i < end; ) {
+      int codePoint = name.codePointAt(i);
+      if (codePoint != '/' && !Character.isJavaIdentifierPart(codePoint)) {
+        return false;
+      }
+      i += Character.charCount(codePoint);
+    }
+    return true;
+  }
 }
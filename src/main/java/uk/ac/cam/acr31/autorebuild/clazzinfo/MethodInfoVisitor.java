@@ -16,6 +16,7 @@
 
 package uk.ac.cam.acr31.autorebuild.clazzinfo;
 
+import java.util.function.Consumer;
 import org.objectweb.asm.AnnotationVisitor;
 import org.objectweb.asm.Handle;
 import org.objectweb.asm.Label;
@@ -25,10 +26,16 @@ import org.objectweb.asm.TypePath;
 
 class MethodInfoVisitor extends MethodVisitor {
 
-  private final ClassFile.Builder classFile;
+  private final AnnotationInfoVisitor annotationVisitor;
+  private ClassFile.Builder classFile;
+  private final Consumer<Identifier> addReferenced = i -> classFile.addReferenced(i);
 
-  MethodInfoVisitor(ClassFile.Builder classFile) {
+  MethodInfoVisitor(AnnotationInfoVisitor annotationVisitor) {
     super(Opcodes.ASM7);
+    this.annotationVisitor = annotationVisitor;
+  }
+
+  void reset(ClassFile.Builder classFile) {
     this.classFile = classFile;
   }
 
@@ -38,14 +45,14 @@ class MethodInfoVisitor extends MethodVisitor {
       String descriptor,
       Handle bootstrapMethodHandle,
       Object... bootstrapMethodArguments) {
-    Identifier.fromMethodDescriptor(descriptor).forEach(classFile::addReferenced);
+    Identifier.forEachMethodDescriptorType(descriptor, addReferenced);
     super.visitInvokeDynamicInsn(name, descriptor, bootstrapMethodHandle, bootstrapMethodArguments);
   }
 
   @Override
   public void visitMultiANewArrayInsn(String descriptor, int numDimensions) {
     if (Identifier.isClassType(descriptor)) {
-      classFile.addReferenced(Identifier.create(descriptor));
+      classFile.addReferencedType(descriptor);
     }
     super.visitMultiANewArrayInsn(descriptor, numDimensions);
   }
@@ -54,34 +61,34 @@ class MethodInfoVisitor extends MethodVisitor {
   public void visitLocalVariable(
       String name, String descriptor, String signature, Label start, Label end, int index) {
     if (Identifier.isClassType(descriptor)) {
-      classFile.addReferenced(Identifier.create(descriptor));
+      classFile.addReferencedType(descriptor);
     }
     super.visitLocalVariable(name, descriptor, signature, start, end, index);
   }
 
   @Override
   public AnnotationVisitor visitAnnotationDefault() {
-    return new AnnotationInfoVisitor(classFile);
+    return annotationVisitor;
   }
 
   @Override
   public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
-    classFile.addReferenced(Identifier.create(descriptor));
-    return new AnnotationInfoVisitor(classFile);
+    classFile.addReferencedType(descriptor);
+    return annotationVisitor;
   }
 
   @Override
   public AnnotationVisitor visitTypeAnnotation(
       int typeRef, TypePath typePath, String descriptor, boolean visible) {
-    classFile.addReferenced(Identifier.create(descriptor));
-    return new AnnotationInfoVisitor(classFile);
+    classFile.addReferencedType(descriptor);
+    return annotationVisitor;
   }
 
   @Override
   public AnnotationVisitor visitParameterAnnotation(
       int parameter, String descriptor, boolean visible) {
-    classFile.addReferenced(Identifier.create(descriptor));
-    return new AnnotationInfoVisitor(classFile);
+    classFile.addReferencedType(descriptor);
+    return annotationVisitor;
   }
 
   @Override
@@ -89,7 +96,7 @@ class MethodInfoVisitor extends MethodVisitor {
     // this isn't ideal because we can't tell the difference between I (the internal name for a
     // class I with no package) and I (the type descriptor for an integer)
     if (Identifier.isClassType(type)) {
-      classFile.addReferenced(Identifier.create(type));
+      classFile.addReferencedType(type);
     }
   }
 
@@ -98,9 +105,12 @@ class MethodInfoVisitor extends MethodVisitor {
     if (Identifier.isPrimitiveArrayType(owner)) {
       return;
     }
+    if (!classFile.firstReference(owner, name, descriptor)) {
+      return;
+    }
     classFile.addReferenced(Identifier.create(owner, name));
     if (Identifier.isClassType(descriptor)) {
-      classFile.addReferenced(Identifier.create(descriptor));
+      classFile.addReferencedType(descriptor);
     }
   }
 
@@ -110,29 +120,32 @@ class MethodInfoVisitor extends MethodVisitor {
     if (Identifier.isPrimitiveArrayType(owner)) {
       return;
     }
+    if (!classFile.firstReference(owner, name, descriptor)) {
+      return;
+    }
     classFile.addReferenced(Identifier.create(owner, name + descriptor));
-    Identifier.fromMethodDescriptor(descriptor).forEach(classFile::addReferenced);
+    Identifier.forEachMethodDescriptorType(descriptor, addReferenced);
   }
 
   @Override
   public AnnotationVisitor visitInsnAnnotation(
       int typeRef, TypePath typePath, String descriptor, boolean visible) {
-    classFile.addReferenced(Identifier.create(descriptor));
-    return new AnnotationInfoVisitor(classFile);
+    classFile.addReferencedType(descriptor);
+    return annotationVisitor;
   }
 
   @Override
   public void visitTryCatchBlock(Label start, Label end, Label handler, String type) {
     if (type != null) {
-      classFile.addReferenced(Identifier.create(type));
+      classFile.addReferencedType(type);
     }
   }
 
   @Override
   public AnnotationVisitor visitTryCatchAnnotation(
       int typeRef, TypePath typePath, String descriptor, boolean visible) {
-    classFile.addReferenced(Identifier.create(descriptor));
-    return new AnnotationInfoVisitor(classFile);
+    classFile.addReferencedType(descriptor);
+    return annotationVisitor;
   }
 
   @Override
@@ -144,7 +157,7 @@ class MethodInfoVisitor extends MethodVisitor {
       int[] index,
       String descriptor,
       boolean visible) {
-    classFile.addReferenced(Identifier.create(descriptor));
-    return new AnnotationInfoVisitor(classFile);
+    classFile.addReferencedType(descriptor);
+    return annotationVisitor;
   }
 }
@@ -0,0 +1,36 @@
+/*
+ * Copyright © 2019 Andrew Rice (acr31@cam.ac.uk)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.ac.cam.acr31.autorebuild.clazzinfo;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+// The raw (owner, name, descriptor) strings of the references already seen while parsing one class.
+// Classes reference the same members over and over so checking here first lets repeats be dropped
+// without concatenating names or allocating identifiers for them.
+class ReferenceSet {
+
+  private final Map<String, Map<String, Set<String>>> seen = new HashMap<>();
+
+  boolean add(String owner, String name, String descriptor) {
+    return seen.computeIfAbsent(owner, o -> new HashMap<>())
+        .computeIfAbsent(name, n -> new HashSet<>())
+        .add(descriptor);
+  }
+}
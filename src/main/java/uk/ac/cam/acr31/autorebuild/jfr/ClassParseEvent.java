@@ -0,0 +1,55 @@
+/*
+ * Copyright © 2019 Andrew Rice (acr31@cam.ac.uk)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package uk.ac.cam.acr31.autorebuild.jfr;
+
+import java.util.concurrent.ThreadLocalRandom;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("uk.ac.cam.acr31.autorebuild.ClassParse")
+@Label("Class Parse")
+@Category({"Autorebuild", "Scan"})
+@Description("Parsing one class file. Only a sample of one in every 64 classes is recorded.")
+@StackTrace(false)
+public final class ClassParseEvent extends jdk.jfr.Event {
+
+  public static final int SAMPLE_INTERVAL = 64;
+
+  @Label("Class File")
+  public String classFile;
+
+  @Label("Jar")
+  public String jar;
+
+  @Label("Size")
+  @DataAmount
+  public long bytes;
+
+  @Label("Extractor")
+  public String extractor;
+
+  // Whether to record this class, decided after shouldCommit so that nothing is drawn when no
+  // recording wants the event
+  public static boolean sampled() {
+    return ThreadLocalRandom.current().nextInt(SAMPLE_INTERVAL) == 0;
+  }
+}
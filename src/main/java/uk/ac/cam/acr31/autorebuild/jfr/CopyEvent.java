@@ -0,0 +1,48 @@
+/*
+ * Copyright © 2019 Andrew Rice (acr31@cam.ac.uk)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package uk.ac.cam.acr31.autorebuild.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("uk.ac.cam.acr31.autorebuild.Copy")
+@Label("Copy")
+@Category({"Autorebuild", "Output"})
+@Description("Copying sources, loose class files or the classes of one jar to the target")
+@StackTrace(false)
+public final class CopyEvent extends jdk.jfr.Event {
+
+  @Label("Phase")
+  @Description("sources, classes or jar")
+  public String phase;
+
+  @Label("Source")
+  @Description("The jar copied from, empty for the other phases")
+  public String source;
+
+  @Label("Files")
+  public int files;
+
+  @Label("Size")
+  @DataAmount
+  public long bytes;
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright © 2019 Andrew Rice (acr31@cam.ac.uk)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package uk.ac.cam.acr31.autorebuild.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("uk.ac.cam.acr31.autorebuild.Prune")
+@Label("Prune Versions")
+@Category({"Autorebuild", "Search"})
+@Description("Dropping the versions of a class that lack an identifier in use")
+@StackTrace(false)
+public final class PruneEvent extends jdk.jfr.Event {
+
+  @Label("Descriptor")
+  public String descriptor;
+
+  @Label("Versions")
+  public int versions;
+
+  @Label("Removed")
+  public int removed;
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright © 2019 Andrew Rice (acr31@cam.ac.uk)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package uk.ac.cam.acr31.autorebuild.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("uk.ac.cam.acr31.autorebuild.SearchIteration")
+@Label("Search Iteration")
+@Category({"Autorebuild", "Search"})
+@Description("Resolving one identifier in the search loop")
+@StackTrace(false)
+public final class SearchIterationEvent extends jdk.jfr.Event {
+
+  @Label("Owner")
+  public String owner;
+
+  @Label("Name")
+  public String name;
+
+  @Label("Providers")
+  public int providers;
+
+  @Label("Unresolved")
+  @Description("Identifiers left unresolved afterwards")
+  public int unresolved;
+
+  @Label("Used")
+  @Description("Identifiers resolved afterwards")
+  public int used;
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright © 2019 Andrew Rice (acr31@cam.ac.uk)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.ac.cam.acr31.autorebuild.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+public final class Counter {
+
+  private final String name;
+  private final String help;
+  private final LongAdder value = new LongAdder();
+
+  Counter(String name, String help) {
+    this.name = name;
+    this.help = help;
+  }
+
+  public void increment() {
+    value.increment();
+  }
+
+  public void add(long amount) {
+    value.add(amount);
+  }
+
+  public long get() {
+    return value.sum();
+  }
+
+  Counter snapshot() {
+    Counter copy = new Counter(name, help);
+    copy.add(get());
+    return copy;
+  }
+
+  // What has been counted since the snapshot was taken
+  Counter since(Counter snapshot) {
+    Counter difference = new Counter(name, help);
+    difference.add(get() - snapshot.get());
+    return difference;
+  }
+
+  String name() {
+    return name;
+  }
+
+  String help() {
+    return help;
+  }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright © 2019 Andrew Rice (acr31@cam.ac.uk)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.ac.cam.acr31.autorebuild.metrics;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+public final class Metrics {
+
+  private static final String PREFIX = "autorebuild_";
+  private static final Metrics GLOBAL = new Metrics();
+  private static final Counter EMPTY_COUNTER = new Counter("", "");
+  private static final Timer EMPTY_TIMER = new Timer("", "");
+
+  private final Map<String, Counter> counters = new ConcurrentSkipListMap<>();
+  private final Map<String, Timer> timers = new ConcurrentSkipListMap<>();
+
+  public static Metrics global() {
+    return GLOBAL;
+  }
+
+  public Counter counter(String name, String help) {
+    return counters.computeIfAbsent(name, n -> new Counter(n, help));
+  }
+
+  public Timer timer(String name, String help) {
+    return timers.computeIfAbsent(name, n -> new Timer(n, help));
+  }
+
+  // A copy of everything recorded so far. Maximums reported by since() are those seen after the
+  // most recent snapshot, so snapshots should not overlap.
+  public Metrics snapshot() {
+    Metrics copy = new Metrics();
+    counters.forEach((name, counter) -> copy.counters.put(name, counter.snapshot()));
+    timers.forEach((name, timer) -> copy.timers.put(name, timer.snapshot()));
+    return copy;
+  }
+
+  // Everything recorded since the snapshot was taken, such as the work of a single request in a
+  // long running process
+  public Metrics since(Metrics snapshot) {
+    Metrics difference = new Metrics();
+    counters.forEach(
+        (name, counter) ->
+            difference.counters.put(
+                name, counter.since(snapshot.counters.getOrDefault(name, EMPTY_COUNTER))));
+    timers.forEach(
+        (name, timer) ->
+            difference.timers.put(
+                name, timer.since(snapshot.timers.getOrDefault(name, EMPTY_TIMER))));
+    return difference;
+  }
+
+  public String toJson() {
+    StringWriter w = new StringWriter();
+    try (PrintWriter p = new PrintWriter(w)) {
+      p.printf("{%n  \"counters\": {");
+      String separator = "";
+      for (Counter counter : counters.values()) {
+        p.printf("%s%n    \"%s\": %d", separator, counter.name(), counter.get());
+        separator = ",";
+      }
+      p.printf("%n  },%n  \"timers\": {");
+      separator = "";
+      for (Timer timer : timers.values()) {
+        p.printf(
+            "%s%n    \"%s\": {\"count\": %d, \"totalNanos\": %d, \"maxNanos\": %d}",
+            separator, timer.name(), timer.count(), timer.totalNanos(), timer.maxNanos());
+        separator = ",";
+      }
+      p.printf("%n  }%n}%n");
+    }
+    return w.toString();
+  }
+
+  public String toPrometheus() {
+    StringWriter w = new StringWriter();
+    try (PrintWriter p = new PrintWriter(w)) {
+      for (Counter counter : counters.values()) {
+        String name = PREFIX + counter.name() + "_total";
+        p.printf("# HELP %s %s%n", name, counter.help());
+        p.printf("# TYPE %s counter%n", name);
+        p.printf("%s %d%n", name, counter.get());
+      }
+      for (Timer timer : timers.values()) {
+        String name = PREFIX + timer.name() + "_seconds";
+        p.printf("# HELP %s %s%n", name, timer.help());
+        p.printf("# TYPE %s summary%n", name);
+        p.printf("%s_count %d%n", name, timer.count());
+        p.printf("%s_sum %s%n", name, seconds(timer.totalNanos()));
+        p.printf("# HELP %s_max %s (maximum)%n", name, timer.help());
+        p.printf("# TYPE %s_max gauge%n", name);
+        p.printf("%s_max %s%n", name, seconds(timer.maxNanos()));
+      }
+    }
+    return w.toString();
+  }
+
+  public void writeJson(Path path) throws IOException {
+    Files.write(path, toJson().getBytes(StandardCharsets.UTF_8));
+  }
+
+  public void writePrometheus(Path path) throws IOException {
+    Files.write(path, toPrometheus().getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static String seconds(long nanos) {
+    return Double.toString(nanos / 1e9);
+  }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright © 2019 Andrew Rice (acr31@cam.ac.uk)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.ac.cam.acr31.autorebuild.metrics;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+public final class Timer {
+
+  private final String name;
+  private final String help;
+  private final LongAdder count = new LongAdder();
+  private final LongAdder totalNanos = new LongAdder();
+  private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+  // the longest since the last snapshot of the registry
+  private final LongAccumulator windowMaxNanos = new LongAccumulator(Math::max, 0);
+
+  Timer(String name, String help) {
+    this.name = name;
+    this.help = help;
+  }
+
+  // Records the time since a value previously returned by System.nanoTime()
+  public void recordSince(long startNanos) {
+    record(System.nanoTime() - startNanos);
+  }
+
+  public void record(long nanos) {
+    count.increment();
+    totalNanos.add(nanos);
+    maxNanos.accumulate(nanos);
+    windowMaxNanos.accumulate(nanos);
+  }
+
+  public long count() {
+    return count.sum();
+  }
+
+  public long totalNanos() {
+    return totalNanos.sum();
+  }
+
+  public long maxNanos() {
+    return maxNanos.get();
+  }
+
+  // A copy of the values so far, starting a new window for the maximum
+  Timer snapshot() {
+    Timer copy = new Timer(name, help);
+    copy.count.add(count());
+    copy.totalNanos.add(totalNanos());
+    copy.maxNanos.accumulate(maxNanos());
+    copy.windowMaxNanos.accumulate(windowMaxNanos.getThenReset());
+    return copy;
+  }
+
+  // What has been recorded since the snapshot was taken
+  Timer since(Timer snapshot) {
+    Timer difference = new Timer(name, help);
+    difference.count.add(count() - snapshot.count());
+    difference.totalNanos.add(totalNanos() - snapshot.totalNanos());
+    difference.maxNanos.accumulate(windowMaxNanos.get());
+    return difference;
+  }
+
+  String name() {
+    return name;
+  }
+
+  String help() {
+    return help;
+  }
+}
@@ -26,9 +26,13 @@ import com.google.common.collect.ImmutableSet;
 import java.io.BufferedReader;
 import java.io.IOError;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Arrays;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
 import javax.tools.JavaFileObject;
 import uk.ac.cam.acr31.autorebuild.SourceFile;
 import uk.ac.cam.acr31.autorebuild.clazzinfo.ClassFile;
@@ -36,6 +40,8 @@ import uk.ac.cam.acr31.autorebuild.clazzinfo.ClassFile;
 @AutoValue
 public abstract class Compilation {
 
+  private static final String CLASS_OUTPUT = "/CLASS_OUTPUT/";
+
   public abstract ImmutableList<SourceFile> sourceFiles();
 
   public abstract ImmutableList<ClassFile> classFiles();
@@ -46,6 +52,8 @@ public abstract class Compilation {
         .collect(toImmutableSet());
   }
 
+  abstract ImmutableList<JavaFileObject> generatedFiles();
+
   public SourceFile sourceFile(AutoSource autoSource) {
     return sourceFiles().stream()
         .filter(i -> i.fileName().equals(autoSource.className() + ".java"))
@@ -53,19 +61,58 @@ public abstract class Compilation {
         .orElseThrow();
   }
 
+  public void writeJar(Path jar) throws IOException {
+    try (JarOutputStream jos = new JarOutputStream(Files.newOutputStream(jar))) {
+      for (JavaFileObject generatedFile : generatedFiles()) {
+        jos.putNextEntry(new JarEntry(entryName(generatedFile)));
+        try (InputStream is = generatedFile.openInputStream()) {
+          is.transferTo(jos);
+        }
+        jos.closeEntry();
+      }
+    }
+  }
+
+  public void writeClasses(Path directory) throws IOException {
+    for (JavaFileObject generatedFile : generatedFiles()) {
+      Path target = directory.resolve(entryName(generatedFile));
+      Files.createDirectories(target.getParent());
+      try (InputStream is = generatedFile.openInputStream()) {
+        Files.copy(is, target);
+      }
+    }
+  }
+
+  public ImmutableList<byte[]> classBytes() throws IOException {
+    ImmutableList.Builder<byte[]> result = ImmutableList.builder();
+    for (JavaFileObject generatedFile : generatedFiles()) {
+      try (InputStream is = generatedFile.openInputStream()) {
+        result.add(is.readAllBytes());
+      }
+    }
+    return result.build();
+  }
+
+  private static String entryName(JavaFileObject generatedFile) {
+    String path = generatedFile.toUri().getPath();
+    return path.substring(path.indexOf(CLASS_OUTPUT) + CLASS_OUTPUT.length());
+  }
+
   private static Compilation create(
-      ImmutableList<SourceFile> sourceFiles, ImmutableList<ClassFile> classFiles) {
-    return new AutoValue_Compilation(sourceFiles, classFiles);
+      ImmutableList<SourceFile> sourceFiles,
+      ImmutableList<ClassFile> classFiles,
+      ImmutableList<JavaFileObject> generatedFiles) {
+    return new AutoValue_Compilation(sourceFiles, classFiles, generatedFiles);
   }
 
   public static Compilation create(AutoSource... inputFiles) {
     ImmutableList<JavaFileObject> inputObjects =
         Arrays.stream(inputFiles).map(AutoSource::toJavaFileObject).collect(toImmutableList());
+    ImmutableList<JavaFileObject> generatedFiles = javac().compile(inputObjects).generatedFiles();
     return create(
         inputObjects.stream().map(Compilation::createSourceFile).collect(toImmutableList()),
-        javac().compile(inputObjects).generatedFiles().stream()
-            .map(Compilation::createClassFile)
-            .collect(toImmutableList()));
+        generatedFiles.stream().map(Compilation::createClassFile).collect(toImmutableList()),
+        generatedFiles);
   }
 
   private static SourceFile createSourceFile(JavaFileObject i) {
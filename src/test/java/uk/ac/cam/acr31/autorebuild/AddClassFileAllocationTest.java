@@ -0,0 +1,94 @@
+/*
+ * Copyright © 2019 Andrew Rice (acr31@cam.ac.uk)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.cam.acr31.autorebuild;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import com.sun.management.ThreadMXBean;
+import java.lang.management.ManagementFactory;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import uk.ac.cam.acr31.autorebuild.clazzinfo.ClassFile;
+import uk.ac.cam.acr31.autorebuild.testing.AutoSource;
+import uk.ac.cam.acr31.autorebuild.testing.Compilation;
+
+// Reports the bytes allocated per addClassFile for a chain of classes which each use every member
+// of the next one, added both in dependency order and against it so that identifiers are resolved
+// straight away in one case and left unresolved until later in the other
+@RunWith(JUnit4.class)
+public class AddClassFileAllocationTest {
+
+  private static final int CLASSES = 40;
+  private static final int MEMBERS = 10;
+  private static final int WARMUP = 200;
+  private static final int ITERATIONS = 1000;
+
+  @Test
+  public void addClassFile_reportsAllocatedBytesPerClass() {
+    // ARRANGE
+    AutoSource[] sources = new AutoSource[CLASSES];
+    for (int i = 0; i < CLASSES; i++) {
+      AutoSource.Builder builder = AutoSource.builder().setClassName("C" + i);
+      for (int j = 0; j < MEMBERS; j++) {
+        builder.addDeclared("m" + j);
+        if (i + 1 < CLASSES) {
+          builder.addReferenced("C" + (i + 1), "m" + j);
+        }
+      }
+      sources[i] = builder.build();
+    }
+    Compilation compilation = Compilation.create(sources);
+    ImmutableList.Builder<ClassFile> inOrder = ImmutableList.builder();
+    for (AutoSource source : sources) {
+      inOrder.addAll(compilation.classFiles(source));
+    }
+    ImmutableList<ClassFile> forwards = inOrder.build();
+    ImmutableList<ClassFile> backwards = forwards.reverse();
+    StandardLibrary standardLibrary = new StandardLibrary();
+    ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+    long thread = Thread.currentThread().getId();
+    for (int i = 0; i < WARMUP; i++) {
+      addAll(standardLibrary, forwards);
+      addAll(standardLibrary, backwards);
+    }
+
+    // ACT
+    long before = threads.getThreadAllocatedBytes(thread);
+    Repository forwardsRepository = null;
+    Repository backwardsRepository = null;
+    for (int i = 0; i < ITERATIONS; i++) {
+      forwardsRepository = addAll(standardLibrary, forwards);
+      backwardsRepository = addAll(standardLibrary, backwards);
+    }
+    long allocated = threads.getThreadAllocatedBytes(thread) - before;
+
+    // ASSERT
+    System.out.printf(
+        "Allocated %d bytes per addClassFile%n", allocated / (2L * ITERATIONS * CLASSES));
+    assertThat(forwardsRepository.isSatisfied()).isTrue();
+    assertThat(backwardsRepository.isSatisfied()).isTrue();
+    assertThat(forwardsRepository.classes()).hasSize(CLASSES);
+  }
+
+  private static Repository addAll(
+      StandardLibrary standardLibrary, ImmutableList<ClassFile> classFiles) {
+    Repository repository = new Repository(standardLibrary);
+    repository.addClassFiles(classFiles);
+    return repository;
+  }
+}
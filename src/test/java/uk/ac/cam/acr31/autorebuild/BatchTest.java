@@ -0,0 +1,121 @@
+/*
+ * Copyright © 2019 Andrew Rice (acr31@cam.ac.uk)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.cam.acr31.autorebuild;
+
+import static com.google.common.collect.ImmutableSet.toImmutableSet;
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import uk.ac.cam.acr31.autorebuild.clazzinfo.ClassFile;
+import uk.ac.cam.acr31.autorebuild.metrics.Counter;
+import uk.ac.cam.acr31.autorebuild.metrics.Metrics;
+import uk.ac.cam.acr31.autorebuild.testing.AutoSource;
+import uk.ac.cam.acr31.autorebuild.testing.Compilation;
+
+@RunWith(JUnit4.class)
+public class BatchTest {
+
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @Test
+  public void rebuild_searchesSharedLibraryForEachProject() throws Exception {
+    // ARRANGE
+    AutoSource a = AutoSource.builder().setClassName("A").addDeclared("f").build();
+    AutoSource b = AutoSource.builder().setClassName("B").addReferenced("A", "f").build();
+    AutoSource c = AutoSource.builder().setClassName("C").addReferenced("A", "f").build();
+    AutoSource unused = AutoSource.builder().setClassName("D").build();
+    Path root = temporaryFolder.getRoot().toPath();
+    Path library = root.resolve("library");
+    Files.createDirectories(library);
+    Compilation.create(a, unused).writeJar(library.resolve("shared.jar"));
+    Compilation projectB = Compilation.create(a, b);
+    Compilation projectC = Compilation.create(a, c);
+    Batch.Project first = project(root.resolve("b"), projectB, "B", b);
+    Batch.Project second = project(root.resolve("c"), projectC, "C", c);
+
+    Counter precomputed = Metrics.global().counter("search_provides_precomputed", "");
+    long before = precomputed.get();
+
+    // ACT
+    ImmutableMap<Batch.Project, SearchResult> results;
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      results =
+          Batch.rebuild(
+              ImmutableList.of(first, second),
+              ImmutableList.of(library),
+              SearchOptions.defaults(),
+              executor);
+    } finally {
+      executor.shutdownNow();
+    }
+
+    // ASSERT
+    assertThat(results.keySet()).containsExactly(first, second);
+    assertThat(digests(results.get(first))).isEqualTo(digests(projectB));
+    assertThat(digests(results.get(second))).isEqualTo(digests(projectC));
+    assertThat(Files.exists(first.targetRoot().resolve("lib/foo/bar/A.class"))).isTrue();
+    // the shared closures answered the searches rather than walks up the hierarchy
+    assertThat(precomputed.get()).isGreaterThan(before);
+  }
+
+  @Test
+  public void readManifest_readsProjectAndTargetRoots() throws IOException {
+    // ARRANGE
+    Path manifest = temporaryFolder.getRoot().toPath().resolve("manifest");
+    Files.write(manifest, "p1\tt1\n\np2\tt2\n".getBytes(StandardCharsets.UTF_8));
+
+    // ACT
+    ImmutableList<Batch.Project> projects = Batch.readManifest(manifest);
+
+    // ASSERT
+    assertThat(projects)
+        .containsExactly(
+            Batch.Project.create(Paths.get("p1"), Paths.get("t1")),
+            Batch.Project.create(Paths.get("p2"), Paths.get("t2")))
+        .inOrder();
+  }
+
+  private static Batch.Project project(
+      Path root, Compilation compilation, String className, AutoSource source) throws IOException {
+    Path sourceFile = root.resolve("src/foo/bar/" + className + ".java");
+    Files.createDirectories(sourceFile.getParent());
+    Files.write(sourceFile, source.toString().getBytes(StandardCharsets.UTF_8));
+    compilation.writeClasses(root.resolve("classes"));
+    return Batch.Project.create(root, root.resolve("target"));
+  }
+
+  private static Object digests(SearchResult result) {
+    return result.repository().classes().stream().map(ClassFile::digest).collect(toImmutableSet());
+  }
+
+  private static Object digests(Compilation compilation) {
+    return compilation.classFiles().stream().map(ClassFile::digest).collect(toImmutableSet());
+  }
+}
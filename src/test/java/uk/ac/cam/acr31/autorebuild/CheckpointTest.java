@@ -0,0 +1,127 @@
+/*
+ * Copyright © 2019 Andrew Rice (acr31@cam.ac.uk)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.cam.acr31.autorebuild;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import uk.ac.cam.acr31.autorebuild.testing.AutoSource;
+import uk.ac.cam.acr31.autorebuild.testing.Compilation;
+
+@RunWith(JUnit4.class)
+public class CheckpointTest {
+
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private static final AutoSource A =
+      AutoSource.builder().setClassName("A").addDeclared("f").build();
+  private static final AutoSource B =
+      AutoSource.builder()
+          .setClassName("B")
+          .addReferenced("A", "f")
+          .addReferenced("C", "g")
+          .build();
+  private static final AutoSource C =
+      AutoSource.builder().setClassName("C").addDeclared("g").build();
+
+  @Test
+  public void stoppedSearch_writesCheckpoint() throws IOException {
+    // ARRANGE
+    Compilation compilation = Compilation.create(A, B, C);
+    OriginalProject originalProject = project(compilation);
+    Path path = temporaryFolder.getRoot().toPath().resolve("checkpoint");
+
+    // ACT
+    SearchResult result =
+        Searcher.search(
+            originalProject,
+            new StandardLibrary(),
+            SearchOptions.builder().setIterationBudget(0).setCheckpoint(path).build());
+
+    // ASSERT
+    assertThat(result.isComplete()).isFalse();
+    Checkpoint checkpoint = Checkpoint.read(path);
+    assertThat(checkpoint).isEqualTo(result.repository().checkpoint());
+    assertThat(checkpoint.unresolved()).isNotEmpty();
+  }
+
+  @Test
+  public void resume_finishesStoppedSearch() throws IOException {
+    // ARRANGE
+    Compilation compilation = Compilation.create(A, B, C);
+    OriginalProject originalProject = project(compilation);
+    Path path = temporaryFolder.getRoot().toPath().resolve("checkpoint");
+    Searcher.search(
+        originalProject,
+        new StandardLibrary(),
+        SearchOptions.builder().setIterationBudget(0).setCheckpoint(path).build());
+
+    // ACT
+    SearchResult result =
+        Searcher.search(
+            originalProject,
+            new StandardLibrary(),
+            SearchOptions.builder().setResumeFrom(Checkpoint.read(path)).build());
+
+    // ASSERT
+    assertThat(result.isComplete()).isTrue();
+    assertThat(result.repository().classes())
+        .containsExactlyElementsIn(Searcher.search(originalProject).classes());
+  }
+
+  @Test
+  public void checkpointState_capturesRepositoryAtMark() {
+    // ARRANGE
+    Compilation compilation = Compilation.create(A, B, C);
+    Repository repository = new Repository();
+    repository.addClassFiles(compilation.classFiles(B));
+    CheckpointState state = repository.trackCheckpointState();
+    repository.addClassFiles(compilation.classFiles(A));
+    repository.nextUnresolved();
+    Checkpoint expected = repository.checkpoint();
+    state.mark();
+    repository.addClassFiles(compilation.classFiles(C));
+
+    // ACT
+    Checkpoint checkpoint = state.capture();
+
+    // ASSERT
+    assertThat(checkpoint).isEqualTo(expected);
+    assertThat(checkpoint).isNotEqualTo(repository.checkpoint());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void minimalClosure_rejectsCheckpoint() {
+    // ACT
+    SearchOptions.builder()
+        .setStrategy(SearchOptions.Strategy.MINIMAL_CLOSURE)
+        .setCheckpoint(temporaryFolder.getRoot().toPath().resolve("checkpoint"))
+        .build();
+  }
+
+  private static OriginalProject project(Compilation compilation) {
+    return OriginalProject.builder()
+        .addSourceFile(compilation.sourceFile(B))
+        .addClassFiles(compilation.classFiles())
+        .build();
+  }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright © 2019 Andrew Rice (acr31@cam.ac.uk)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.cam.acr31.autorebuild;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import uk.ac.cam.acr31.autorebuild.clazzinfo.Extractor;
+import uk.ac.cam.acr31.autorebuild.testing.AutoSource;
+import uk.ac.cam.acr31.autorebuild.testing.Compilation;
+
+@RunWith(JUnit4.class)
+public class ClassPathCacheTest {
+
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private final AtomicInteger loads = new AtomicInteger();
+  private Compilation compilation;
+  private Path jar;
+  private ClassPathCache.Loader loader;
+
+  @Before
+  public void setUp() throws IOException {
+    compilation = Compilation.create(AutoSource.builder().setClassName("A").build());
+    jar = temporaryFolder.getRoot().toPath().resolve("a.jar");
+    compilation.writeJar(jar);
+    loader =
+        file -> {
+          loads.incrementAndGet();
+          return compilation.classFiles();
+        };
+  }
+
+  @Test
+  public void load_reusesUnchangedFile() throws IOException {
+    // ARRANGE
+    ClassPathCache cache = new ClassPathCache();
+    cache.load(jar, attributes(), ScanOptions.defaults(), loader);
+
+    // ACT
+    cache.load(jar, attributes(), ScanOptions.defaults(), loader);
+
+    // ASSERT
+    assertThat(loads.get()).isEqualTo(1);
+  }
+
+  @Test
+  public void load_rereadsFileWithNewModificationTime() throws IOException {
+    // ARRANGE
+    ClassPathCache cache = new ClassPathCache();
+    cache.load(jar, attributes(), ScanOptions.defaults(), loader);
+    FileTime modified = Files.getLastModifiedTime(jar);
+    Files.setLastModifiedTime(jar, FileTime.fromMillis(modified.toMillis() + 1000));
+
+    // ACT
+    cache.load(jar, attributes(), ScanOptions.defaults(), loader);
+
+    // ASSERT
+    assertThat(loads.get()).isEqualTo(2);
+  }
+
+  @Test
+  public void load_rereadsFileWithNewSize() throws IOException {
+    // ARRANGE
+    ClassPathCache cache = new ClassPathCache();
+    cache.load(jar, attributes(), ScanOptions.defaults(), loader);
+    FileTime modified = Files.getLastModifiedTime(jar);
+    Files.write(jar, new byte[] {0}, StandardOpenOption.APPEND);
+    Files.setLastModifiedTime(jar, modified);
+
+    // ACT
+    cache.load(jar, attributes(), ScanOptions.defaults(), loader);
+
+    // ASSERT
+    assertThat(loads.get()).isEqualTo(2);
+  }
+
+  @Test
+  public void load_rereadsFileForOtherOptions() throws IOException {
+    // ARRANGE
+    ClassPathCache cache = new ClassPathCache();
+    cache.load(jar, attributes(), ScanOptions.defaults(), loader);
+
+    // ACT
+    cache.load(
+        jar,
+        attributes(),
+        ScanOptions.create(Extractor.VISITOR, ScanOptions.defaults().release()),
+        loader);
+
+    // ASSERT
+    assertThat(loads.get()).isEqualTo(2);
+  }
+
+  private BasicFileAttributes attributes() throws IOException {
+    return Files.readAttributes(jar, BasicFileAttributes.class);
+  }
+}
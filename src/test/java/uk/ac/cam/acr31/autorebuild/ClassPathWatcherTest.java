@@ -0,0 +1,71 @@
+/*
+ * Copyright © 2019 Andrew Rice (acr31@cam.ac.uk)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.cam.acr31.autorebuild;
+
+import static com.google.common.truth.Truth8.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import uk.ac.cam.acr31.autorebuild.testing.AutoSource;
+import uk.ac.cam.acr31.autorebuild.testing.Compilation;
+
+@RunWith(JUnit4.class)
+public class ClassPathWatcherTest {
+
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @Test(timeout = 30_000)
+  public void watch_evictsChangedJar() throws Exception {
+    // ARRANGE
+    Path root = temporaryFolder.getRoot().toPath();
+    Path lib = Files.createDirectories(root.resolve("lib"));
+    Path changed = lib.resolve("changed.jar");
+    Path unchanged = lib.resolve("unchanged.jar");
+    Compilation compilation = Compilation.create(AutoSource.builder().setClassName("A").build());
+    compilation.writeJar(changed);
+    compilation.writeJar(unchanged);
+    ClassPathCache cache = new ClassPathCache();
+    cache.put(changed, attributes(changed), ScanOptions.defaults(), compilation.classFiles());
+    cache.put(unchanged, attributes(unchanged), ScanOptions.defaults(), ImmutableList.of());
+
+    try (ClassPathWatcher watcher = new ClassPathWatcher(cache)) {
+      watcher.watch(root);
+
+      // ACT
+      Files.write(changed, new byte[] {0}, StandardOpenOption.APPEND);
+
+      // ASSERT
+      while (cache.size() > 1) {
+        Thread.sleep(10);
+      }
+    }
+    assertThat(cache.getIfPresent(unchanged, attributes(unchanged), ScanOptions.defaults()))
+        .isPresent();
+  }
+
+  private static BasicFileAttributes attributes(Path file) throws IOException {
+    return Files.readAttributes(file, BasicFileAttributes.class);
+  }
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright © 2019 Andrew Rice (acr31@cam.ac.uk)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.cam.acr31.autorebuild;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import uk.ac.cam.acr31.autorebuild.testing.AutoSource;
+import uk.ac.cam.acr31.autorebuild.testing.Compilation;
+
+@RunWith(JUnit4.class)
+public class DaemonTest {
+
+  private static final Pattern OUTPUT_FILES = Pattern.compile("\"output_files\": (\\d+)");
+
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @Test
+  public void rebuild_reportsMetricsOfEachRequestOnly() throws IOException {
+    // ARRANGE
+    Path project = project();
+    Path first = temporaryFolder.getRoot().toPath().resolve("first.json");
+    Path second = temporaryFolder.getRoot().toPath().resolve("second.json");
+    // the daemon serves every request with the same caches
+    ClassPathCache classPathCache = new ClassPathCache();
+    StandardLibrary standardLibrary = new StandardLibrary();
+
+    // ACT
+    Main.rebuild(request(project, "target1", first), classPathCache, standardLibrary);
+    Main.rebuild(request(project, "target2", second), classPathCache, standardLibrary);
+
+    // ASSERT
+    long files = outputFiles(first);
+    assertThat(files).isGreaterThan(0L);
+    assertThat(outputFiles(second)).isEqualTo(files);
+  }
+
+  @Test
+  public void send_rebuildsThroughDaemon() throws IOException {
+    // ARRANGE
+    Path project = project();
+    Path tokens = temporaryFolder.getRoot().toPath().resolve("tokens");
+    Path metricsJson = temporaryFolder.getRoot().toPath().resolve("metrics.json");
+    Daemon daemon = new Daemon(tokens);
+
+    try (ServerSocket serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+      int port = serverSocket.getLocalPort();
+      serve(daemon, serverSocket, daemon.writeToken(port));
+
+      // ACT
+      Daemon.send(tokens, port, request(project, "target", metricsJson));
+
+      // ASSERT
+      assertThat(Files.getPosixFilePermissions(Daemon.tokenFile(tokens, port)))
+          .containsExactly(PosixFilePermission.OWNER_READ, PosixFilePermission.OWNER_WRITE);
+    }
+    assertThat(outputFiles(metricsJson)).isGreaterThan(0L);
+    assertThat(Files.exists(temporaryFolder.getRoot().toPath().resolve("target/src"))).isTrue();
+  }
+
+  @Test
+  public void handle_rejectsRequestWithoutToken() throws IOException {
+    // ARRANGE
+    Path project = project();
+    Path target = temporaryFolder.newFolder("target").toPath();
+    Path kept = Files.createFile(target.resolve("kept"));
+    Daemon daemon = new Daemon(temporaryFolder.getRoot().toPath().resolve("tokens"));
+    String response;
+
+    try (ServerSocket serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+      serve(daemon, serverSocket, daemon.writeToken(serverSocket.getLocalPort()));
+
+      // ACT
+      try (Socket socket =
+          new Socket(InetAddress.getLoopbackAddress(), serverSocket.getLocalPort())) {
+        PrintWriter writer =
+            new PrintWriter(
+                new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8), true);
+        writer.println(project + "\t" + target);
+        response =
+            new BufferedReader(
+                    new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8))
+                .readLine();
+      }
+    }
+
+    // ASSERT
+    assertThat(response).isEqualTo("error invalid token");
+    assertThat(Files.exists(kept)).isTrue();
+  }
+
+  @Test
+  public void send_rejectsTargetRootContainingProject() throws IOException {
+    // ARRANGE
+    Path project = project();
+    Path tokens = temporaryFolder.getRoot().toPath().resolve("tokens");
+    Daemon daemon = new Daemon(tokens);
+    IOException thrown = null;
+
+    try (ServerSocket serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+      int port = serverSocket.getLocalPort();
+      serve(daemon, serverSocket, daemon.writeToken(port));
+
+      // ACT
+      try {
+        Daemon.send(
+            tokens, port, Options.parse(project.toString(), project.getParent().toString()));
+      } catch (IOException e) {
+        thrown = e;
+      }
+    }
+
+    // ASSERT
+    assertThat(thrown).isNotNull();
+    assertThat(thrown).hasMessageThat().contains("Target root contains the project root");
+    assertThat(Files.exists(project.resolve("src/foo/bar/B.java"))).isTrue();
+  }
+
+  private Path project() throws IOException {
+    AutoSource a = AutoSource.builder().setClassName("A").addDeclared("f").build();
+    AutoSource b = AutoSource.builder().setClassName("B").addReferenced("A", "f").build();
+    Path project = temporaryFolder.newFolder("project").toPath();
+    Path sourceFile = project.resolve("src/foo/bar/B.java");
+    Files.createDirectories(sourceFile.getParent());
+    Files.write(sourceFile, b.toString().getBytes(StandardCharsets.UTF_8));
+    Compilation.create(a, b).writeClasses(project.resolve("classes"));
+    return project;
+  }
+
+  // Serves requests on a background thread until the socket is closed
+  private static void serve(Daemon daemon, ServerSocket serverSocket, String token) {
+    Thread thread =
+        new Thread(
+            () -> {
+              try {
+                daemon.serve(serverSocket, token);
+              } catch (IOException e) {
+                throw new UncheckedIOException(e);
+              }
+            });
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  private Options request(Path project, String target, Path metricsJson) {
+    return Options.parse(
+        "--metrics-json=" + metricsJson,
+        project.toString(),
+        temporaryFolder.getRoot().toPath().resolve(target).toString());
+  }
+
+  private static long outputFiles(Path metricsJson) throws IOException {
+    Matcher matcher =
+        OUTPUT_FILES.matcher(new String(Files.readAllBytes(metricsJson), StandardCharsets.UTF_8));
+    assertThat(matcher.find()).isTrue();
+    return Long.parseLong(matcher.group(1));
+  }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright © 2019 Andrew Rice (acr31@cam.ac.uk)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.cam.acr31.autorebuild;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assume.assumeTrue;
+
+import com.google.common.collect.ImmutableList;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import uk.ac.cam.acr31.autorebuild.testing.AutoSource;
+import uk.ac.cam.acr31.autorebuild.testing.Compilation;
+
+@RunWith(JUnit4.class)
+public class ExtractorVerifierTest {
+
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private final ExecutorService executor = Executors.newFixedThreadPool(2);
+
+  @After
+  public void shutdown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void verify_findsNoMismatches_inClassesAndJars() throws IOException {
+    // ARRANGE
+    AutoSource a = AutoSource.builder().setClassName("A").addDeclared("f").build();
+    AutoSource b = AutoSource.builder().setClassName("B").addReferenced("A", "f").build();
+    Path root = temporaryFolder.getRoot().toPath();
+    Compilation.create(a, b).writeClasses(root.resolve("classes"));
+    Compilation.create(a).writeJar(root.resolve("a.jar"));
+
+    // ACT
+    ExtractorVerifier.Report report = ExtractorVerifier.verify(ImmutableList.of(root), executor);
+
+    // ASSERT
+    assertThat(report.mismatches()).isEmpty();
+    assertThat(report.classes()).isEqualTo(3);
+    assertThat(report.fallbacks()).isEqualTo(0);
+  }
+
+  // Opt in with -Dautorebuild.verifyLocalRepository=true
+  @Test
+  public void verify_findsNoMismatches_inLocalMavenRepository() throws IOException {
+    // ARRANGE
+    Path repository = Paths.get(System.getProperty("user.home"), ".m2", "repository");
+    assumeTrue(Boolean.getBoolean("autorebuild.verifyLocalRepository"));
+    assumeTrue(Files.isDirectory(repository));
+
+    // ACT
+    ExtractorVerifier.Report report =
+        ExtractorVerifier.verify(ImmutableList.of(repository), executor);
+
+    // ASSERT
+    report.print(System.out);
+    assertThat(report.mismatches()).isEmpty();
+  }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright © 2019 Andrew Rice (acr31@cam.ac.uk)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.cam.acr31.autorebuild;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth8.assertThat;
+
+import com.google.common.collect.Iterables;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import uk.ac.cam.acr31.autorebuild.clazzinfo.ClassFile;
+import uk.ac.cam.acr31.autorebuild.clazzinfo.Identifier;
+import uk.ac.cam.acr31.autorebuild.testing.AutoSource;
+import uk.ac.cam.acr31.autorebuild.testing.Compilation;
+
+@RunWith(JUnit4.class)
+public class FrozenClassFileStoreTest {
+
+  @Test
+  public void provides_findsInheritedName() {
+    // ARRANGE
+    AutoSource b = AutoSource.builder().setClassName("B").addDeclared("g").build();
+    AutoSource a = AutoSource.builder().setClassName("A").setSuperClass("B").build();
+    Compilation compilation = Compilation.create(a, b);
+    FrozenClassFileStore store =
+        FrozenClassFileStore.of(compilation.classFiles(), new StandardLibrary());
+    ClassFile classFile = Iterables.getOnlyElement(compilation.classFiles(a));
+
+    // ACT
+    Providers providers = new Providers(store, new StandardLibrary());
+
+    // ASSERT
+    assertThat(store.provides(classFile, "g()V")).hasValue(true);
+    assertThat(store.provides(classFile, "hashCode()I")).hasValue(true);
+    assertThat(store.provides(classFile, "h()V")).hasValue(false);
+    assertThat(providers.provides(Identifier.create("foo/bar/A", "g()V")))
+        .containsExactly(classFile);
+  }
+
+  @Test
+  public void provides_isEmpty_forClassNotInStore() {
+    // ARRANGE
+    AutoSource a = AutoSource.builder().setClassName("A").addDeclared("f").build();
+    AutoSource b = AutoSource.builder().setClassName("B").build();
+    Compilation compilation = Compilation.create(a, b);
+    FrozenClassFileStore store =
+        FrozenClassFileStore.of(compilation.classFiles(a), new StandardLibrary());
+    ClassFile other = Iterables.getOnlyElement(compilation.classFiles(b));
+
+    // ACT
+    boolean found = store.provides(other, "f()V").isPresent();
+
+    // ASSERT
+    assertThat(found).isFalse();
+    assertThat(store.size()).isEqualTo(1);
+    assertThat(store.get("foo/bar/B")).isEmpty();
+  }
+
+  @Test
+  public void layer_reworksClosuresOfClassesInheritingFromAddedVersions() {
+    // ARRANGE
+    AutoSource oldB = AutoSource.builder().setClassName("B").build();
+    AutoSource newB = AutoSource.builder().setClassName("B").addDeclared("g").build();
+    AutoSource a = AutoSource.builder().setClassName("A").setSuperClass("B").build();
+    Compilation original = Compilation.create(a, oldB);
+    Compilation changed = Compilation.create(newB);
+    ClassFile classFile = Iterables.getOnlyElement(original.classFiles(a));
+    FrozenClassFileStore base =
+        FrozenClassFileStore.of(original.classFiles(), new StandardLibrary());
+
+    // ACT
+    FrozenClassFileStore layer = base.layer(changed.classFiles(), new StandardLibrary());
+
+    // ASSERT
+    assertThat(base.provides(classFile, "g()V")).hasValue(false);
+    assertThat(layer.provides(classFile, "g()V")).hasValue(true);
+    assertThat(layer.provides(classFile, "hashCode()I")).hasValue(true);
+    assertThat(layer.get("foo/bar/B")).hasSize(2);
+    assertThat(layer.size()).isEqualTo(3);
+  }
+}
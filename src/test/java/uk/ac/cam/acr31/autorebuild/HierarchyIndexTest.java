@@ -0,0 +1,79 @@
+/*
+ * Copyright © 2019 Andrew Rice (acr31@cam.ac.uk)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.cam.acr31.autorebuild;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import uk.ac.cam.acr31.autorebuild.clazzinfo.ClassFile;
+import uk.ac.cam.acr31.autorebuild.testing.AutoSource;
+import uk.ac.cam.acr31.autorebuild.testing.Compilation;
+
+@RunWith(JUnit4.class)
+public class HierarchyIndexTest {
+
+  @Test
+  public void definedNames_followsSuperclassVersionsAsTheyChange() {
+    // ARRANGE
+    AutoSource b = AutoSource.builder().setClassName("B").addDeclared("g").build();
+    AutoSource a = AutoSource.builder().setClassName("A").setSuperClass("B").build();
+    Compilation compilation = Compilation.create(a, b);
+    ClassFile classA = Iterables.getOnlyElement(compilation.classFiles(a));
+    ClassFile classB = Iterables.getOnlyElement(compilation.classFiles(b));
+    ClassFileStore store = new ClassFileStore(new StandardLibrary());
+    store.add(classA);
+
+    // ACT
+    boolean before = store.definedNames(classA).containsKey("g()V");
+    store.add(classB);
+    boolean added = store.definedNames(classA).containsKey("g()V");
+    store.remove(classB);
+    boolean removed = store.definedNames(classA).containsKey("g()V");
+
+    // ASSERT
+    assertThat(before).isFalse();
+    assertThat(added).isTrue();
+    assertThat(removed).isFalse();
+  }
+
+  @Test
+  public void closure_listsClassBeforeAncestors() {
+    // ARRANGE
+    AutoSource c = AutoSource.builder().setClassName("C").build();
+    AutoSource b = AutoSource.builder().setClassName("B").setSuperClass("C").build();
+    AutoSource a = AutoSource.builder().setClassName("A").setSuperClass("B").build();
+    Compilation compilation = Compilation.create(a, b, c);
+    ClassFileStore store = new ClassFileStore(new StandardLibrary());
+    compilation.classFiles().forEach(store::add);
+    HierarchyIndex index = new HierarchyIndex(store::get);
+
+    // ACT
+    ImmutableList<ClassFile> closure =
+        index.closure(Iterables.getOnlyElement(compilation.classFiles(a)));
+
+    // ASSERT
+    assertThat(closure)
+        .containsExactly(
+            Iterables.getOnlyElement(compilation.classFiles(a)),
+            Iterables.getOnlyElement(compilation.classFiles(b)),
+            Iterables.getOnlyElement(compilation.classFiles(c)))
+        .inOrder();
+  }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright © 2019 Andrew Rice (acr31@cam.ac.uk)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.cam.acr31.autorebuild;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import uk.ac.cam.acr31.autorebuild.clazzinfo.ClassFile;
+import uk.ac.cam.acr31.autorebuild.clazzinfo.Extractor;
+import uk.ac.cam.acr31.autorebuild.testing.AutoSource;
+import uk.ac.cam.acr31.autorebuild.testing.Compilation;
+
+@RunWith(JUnit4.class)
+public class JarEntriesTest {
+
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @Test
+  public void readJar_picksVariantForRelease() throws IOException {
+    // ARRANGE
+    Path jar = writeJar(true);
+    ScanOptions options = ScanOptions.create(Extractor.CONSTANT_POOL, 11);
+
+    // ACT
+    ImmutableList<ClassFile> classFiles = OriginalProject.readJar(jar, options);
+
+    // ASSERT
+    ClassFile classFile = Iterables.getOnlyElement(classFiles);
+    assertThat(classFile.classFileName()).isEqualTo("META-INF/versions/11/foo/bar/A.class");
+    assertThat(classFile.declares("release11()V")).isTrue();
+  }
+
+  @Test
+  public void readJar_picksBaseClass_beforeVariantRelease() throws IOException {
+    // ARRANGE
+    Path jar = writeJar(true);
+    ScanOptions options = ScanOptions.create(Extractor.CONSTANT_POOL, 10);
+
+    // ACT
+    ImmutableList<ClassFile> classFiles = OriginalProject.readJar(jar, options);
+
+    // ASSERT
+    ClassFile classFile = Iterables.getOnlyElement(classFiles);
+    assertThat(classFile.classFileName()).isEqualTo("foo/bar/A.class");
+    assertThat(classFile.declares("base()V")).isTrue();
+  }
+
+  @Test
+  public void readJar_ignoresVariants_ofPlainJar() throws IOException {
+    // ARRANGE
+    Path jar = writeJar(false);
+    ScanOptions options = ScanOptions.create(Extractor.CONSTANT_POOL, 11);
+
+    // ACT
+    ImmutableList<ClassFile> classFiles = OriginalProject.readJar(jar, options);
+
+    // ASSERT
+    assertThat(Iterables.getOnlyElement(classFiles).classFileName()).isEqualTo("foo/bar/A.class");
+  }
+
+  @Test
+  public void load_rereadsCachedJar_forAnotherRelease() throws IOException {
+    // ARRANGE
+    Path jar = writeJar(true);
+    Path root = jar.getParent();
+    ClassPathCache cache = new ClassPathCache();
+    OriginalProject.load(root, cache, ScanOptions.create(Extractor.CONSTANT_POOL, 11));
+
+    // ACT
+    OriginalProject project =
+        OriginalProject.load(root, cache, ScanOptions.create(Extractor.CONSTANT_POOL, 10));
+
+    // ASSERT
+    ClassFile classFile = Iterables.getOnlyElement(project.classFiles());
+    assertThat(classFile.classFileName()).isEqualTo("foo/bar/A.class");
+  }
+
+  // A jar with a base and a release 11 variant of foo.bar.A, and a module descriptor which would
+  // fail to parse if it were read
+  private Path writeJar(boolean multiRelease) throws IOException {
+    byte[] base =
+        Iterables.getOnlyElement(
+            Compilation.create(AutoSource.builder().setClassName("A").addDeclared("base").build())
+                .classBytes());
+    byte[] release11 =
+        Iterables.getOnlyElement(
+            Compilation.create(
+                    AutoSource.builder().setClassName("A").addDeclared("release11").build())
+                .classBytes());
+    Manifest manifest = new Manifest();
+    manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+    if (multiRelease) {
+      manifest.getMainAttributes().put(Attributes.Name.MULTI_RELEASE, "true");
+    }
+    Path jar = temporaryFolder.getRoot().toPath().resolve("a.jar");
+    try (JarOutputStream jos = new JarOutputStream(Files.newOutputStream(jar), manifest)) {
+      jos.putNextEntry(new JarEntry("module-info.class"));
+      jos.write(new byte[] {1, 2, 3});
+      jos.putNextEntry(new JarEntry("foo/bar/A.class"));
+      jos.write(base);
+      jos.putNextEntry(new JarEntry("META-INF/versions/11/foo/bar/A.class"));
+      jos.write(release11);
+    }
+    return jar;
+  }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright © 2019 Andrew Rice (acr31@cam.ac.uk)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.cam.acr31.autorebuild;
+
+import static com.google.common.collect.ImmutableSet.toImmutableSet;
+import static com.google.common.truth.Truth.assertThat;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import uk.ac.cam.acr31.autorebuild.clazzinfo.ClassFile;
+import uk.ac.cam.acr31.autorebuild.testing.AutoSource;
+import uk.ac.cam.acr31.autorebuild.testing.Compilation;
+
+@RunWith(JUnit4.class)
+public class LazyProjectTest {
+
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @Test
+  public void parsesOnlyReferencedOwners() throws IOException {
+    // ARRANGE
+    AutoSource a = AutoSource.builder().setClassName("A").addDeclared("f").build();
+    AutoSource b = AutoSource.builder().setClassName("B").addReferenced("A", "f").build();
+    AutoSource c = AutoSource.builder().setClassName("C").build();
+    AutoSource d = AutoSource.builder().setClassName("D").build();
+
+    Compilation compilation = Compilation.create(a, b);
+    Path root = temporaryFolder.getRoot().toPath();
+    Path source = root.resolve("src/foo/bar/B.java");
+    Files.createDirectories(source.getParent());
+    Files.write(source, b.toString().getBytes(StandardCharsets.UTF_8));
+    compilation.writeJar(root.resolve("project.jar"));
+    Compilation.create(c, d).writeJar(root.resolve("unrelated.jar"));
+
+    // ACT
+    Repository repository;
+    String statistics;
+    try (LazyProject lazyProject = LazyProject.open(root, ScanOptions.defaults())) {
+      repository =
+          Searcher.search(
+                  lazyProject.generatedClasses(),
+                  lazyProject,
+                  new StandardLibrary(),
+                  SearchOptions.defaults())
+              .repository();
+      statistics = lazyProject.statistics();
+    }
+
+    // ASSERT
+    assertThat(repository.classes().stream().map(ClassFile::digest).collect(toImmutableSet()))
+        .containsExactlyElementsIn(
+            compilation.classFiles().stream().map(ClassFile::digest).collect(toImmutableSet()));
+    assertThat(statistics).startsWith("Parsed 2 of 4 jar entries");
+  }
+}
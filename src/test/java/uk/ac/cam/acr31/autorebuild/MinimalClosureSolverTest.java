@@ -0,0 +1,131 @@
+/*
+ * Copyright © 2019 Andrew Rice (acr31@cam.ac.uk)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.cam.acr31.autorebuild;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import uk.ac.cam.acr31.autorebuild.testing.AutoSource;
+import uk.ac.cam.acr31.autorebuild.testing.Compilation;
+
+@RunWith(JUnit4.class)
+public class MinimalClosureSolverTest {
+
+  private static final SearchOptions MINIMAL_CLOSURE =
+      SearchOptions.builder().setStrategy(SearchOptions.Strategy.MINIMAL_CLOSURE).build();
+
+  @Test
+  public void minimalClosure_avoidsVersionWithExtraDependencies() {
+    // ARRANGE
+    AutoSource c = AutoSource.builder().setClassName("C").addDeclared("g").build();
+    AutoSource aNeedingC =
+        AutoSource.builder().setClassName("A").addDeclared("f").addReferenced("C", "g").build();
+    AutoSource aAlone = AutoSource.builder().setClassName("A").addDeclared("f").build();
+    AutoSource b = AutoSource.builder().setClassName("B").addReferenced("A", "f").build();
+
+    Compilation compilation1 = Compilation.create(aNeedingC, c);
+    Compilation compilation2 = Compilation.create(aAlone, b);
+
+    OriginalProject originalProject =
+        OriginalProject.builder()
+            .addSourceFile(compilation2.sourceFile(b))
+            .addClassFiles(compilation1.classFiles())
+            .addClassFiles(compilation2.classFiles())
+            .build();
+
+    // ACT
+    Repository greedy = Searcher.search(originalProject);
+    Repository minimal = Searcher.search(originalProject, MINIMAL_CLOSURE);
+
+    // ASSERT
+    assertThat(greedy.classes()).hasSize(3);
+    assertThat(minimal.classes()).containsExactlyElementsIn(compilation2.classFiles());
+  }
+
+  @Test
+  public void minimalClosure_findsMissingInheritedSymbol() {
+    // ARRANGE
+    AutoSource aWithF = AutoSource.builder().setClassName("A").addDeclared("f").build();
+    AutoSource bExtendsA = AutoSource.builder().setClassName("B").setSuperClass("A").build();
+    AutoSource b = AutoSource.builder().setClassName("B").build();
+    AutoSource cRequiresFInB =
+        AutoSource.builder().setClassName("C").addReferenced("B", "f").build();
+
+    Compilation compilation1 = Compilation.create(aWithF, bExtendsA, cRequiresFInB);
+    Compilation compilation2 = Compilation.create(b);
+
+    OriginalProject originalProject =
+        OriginalProject.builder()
+            .addSourceFile(compilation1.sourceFile(cRequiresFInB))
+            .addClassFiles(compilation1.classFiles())
+            .addClassFiles(compilation2.classFiles())
+            .build();
+
+    // ACT
+    Repository repository = Searcher.search(originalProject, MINIMAL_CLOSURE);
+
+    // ASSERT
+    assertThat(repository.classes()).containsExactlyElementsIn(compilation1.classFiles());
+    assertThat(repository.unresolvable()).isEmpty();
+  }
+
+  @Test(timeout = 30_000)
+  public void minimalClosure_visitsEachAncestorVersionOnce() {
+    // ARRANGE
+    // Two versions of every class in a chain, so there are 2^depth paths from the bottom to the
+    // top, none of which lead to h
+    int depth = 27;
+    List<AutoSource> chain1 = new ArrayList<>();
+    List<AutoSource> chain2 = new ArrayList<>();
+    chain1.add(AutoSource.builder().setClassName("L0").build());
+    chain2.add(AutoSource.builder().setClassName("L0").addDeclared("g").build());
+    for (int i = 1; i <= depth; i++) {
+      String parent = "L" + (i - 1);
+      chain1.add(AutoSource.builder().setClassName("L" + i).setSuperClass(parent).build());
+      chain2.add(
+          AutoSource.builder()
+              .setClassName("L" + i)
+              .setSuperClass(parent)
+              .addDeclared("g")
+              .build());
+    }
+    AutoSource top = AutoSource.builder().setClassName("L" + depth).addDeclared("h").build();
+    AutoSource user =
+        AutoSource.builder().setClassName("U").addReferenced("L" + depth, "h").build();
+    Compilation compilation1 = Compilation.create(chain1.toArray(new AutoSource[0]));
+    Compilation compilation2 = Compilation.create(chain2.toArray(new AutoSource[0]));
+    Compilation compilation3 = Compilation.create(top, user);
+
+    OriginalProject originalProject =
+        OriginalProject.builder()
+            .addSourceFile(compilation3.sourceFile(user))
+            .addClassFiles(compilation1.classFiles())
+            .addClassFiles(compilation2.classFiles())
+            .addClassFiles(compilation3.classFiles())
+            .build();
+
+    // ACT
+    Repository repository = Searcher.search(originalProject, MINIMAL_CLOSURE);
+
+    // ASSERT
+    assertThat(repository.classes()).containsExactlyElementsIn(compilation3.classFiles());
+    assertThat(repository.unresolvable()).isEmpty();
+  }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright © 2019 Andrew Rice (acr31@cam.ac.uk)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.cam.acr31.autorebuild;
+
+import static com.google.common.collect.ImmutableMap.toImmutableMap;
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth8.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Iterables;
+import com.google.common.util.concurrent.Uninterruptibles;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import uk.ac.cam.acr31.autorebuild.clazzinfo.ClassFile;
+import uk.ac.cam.acr31.autorebuild.testing.AutoSource;
+import uk.ac.cam.acr31.autorebuild.testing.Compilation;
+
+@RunWith(JUnit4.class)
+public class NestedJarTest {
+
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @Test
+  public void readJar_recordsNestedProvenance() throws IOException {
+    // ARRANGE
+    Path war = writeWar();
+
+    // ACT
+    ImmutableList<ClassFile> classFiles = OriginalProject.readJar(war, ScanOptions.defaults());
+
+    // ASSERT
+    ImmutableMap<String, String> jars =
+        classFiles.stream()
+            .collect(toImmutableMap(ClassFile::descriptor, c -> c.classFileJar().get()));
+    assertThat(jars)
+        .containsExactly(
+            "foo/bar/A", war + "!/WEB-INF/lib/fat.jar!/BOOT-INF/lib/inner.jar",
+            "foo/bar/B", war + "!/WEB-INF/lib/fat.jar",
+            "foo/bar/C", war.toString());
+  }
+
+  @Test
+  public void write_extractsNestedClasses() throws IOException {
+    // ARRANGE
+    Path war = writeWar();
+    Repository repository = new Repository();
+    repository.addClassFiles(OriginalProject.readJar(war, ScanOptions.defaults()));
+    Path targetRoot = temporaryFolder.getRoot().toPath().resolve("target");
+
+    // ACT
+    TargetWriter.write(OriginalProject.builder().build(), repository, targetRoot);
+
+    // ASSERT
+    Path lib = targetRoot.resolve("lib/foo/bar");
+    assertThat(Files.readAllBytes(lib.resolve("A.class"))).isEqualTo(classBytes("A"));
+    assertThat(Files.readAllBytes(lib.resolve("B.class"))).isEqualTo(classBytes("B"));
+    assertThat(Files.readAllBytes(lib.resolve("C.class"))).isEqualTo(classBytes("C"));
+  }
+
+  @Test
+  public void streamingScan_waitsForNestedClasses() throws Exception {
+    // ARRANGE
+    Path project = temporaryFolder.newFolder("project").toPath();
+    Files.copy(writeWar(), project.resolve("app.war"));
+    // Parsing starts late so that the lookup below would run first if it did not wait
+    Executor delayed =
+        runnable ->
+            new Thread(
+                    () -> {
+                      Uninterruptibles.sleepUninterruptibly(200, TimeUnit.MILLISECONDS);
+                      runnable.run();
+                    })
+                .start();
+
+    // ACT
+    StreamingScan scan =
+        StreamingScan.start(project, new ClassPathCache(), ScanOptions.defaults(), delayed);
+    Set<ClassFile> a = scan.providers().get("foo/bar/A");
+    Set<ClassFile> b = scan.providers().get("foo/bar/B");
+
+    // ASSERT
+    assertThat(Iterables.getOnlyElement(a).classFileJar())
+        .hasValue(project.resolve("app.war") + "!/WEB-INF/lib/fat.jar!/BOOT-INF/lib/inner.jar");
+    assertThat(Iterables.getOnlyElement(b).classFileJar())
+        .hasValue(project.resolve("app.war") + "!/WEB-INF/lib/fat.jar");
+  }
+
+  // A war holding C and a fat jar, which holds B and a jar holding A
+  private Path writeWar() throws IOException {
+    Path inner = temporaryFolder.getRoot().toPath().resolve("inner.jar");
+    writeJar(inner, "foo/bar/A.class", classBytes("A"));
+    Path fat = temporaryFolder.getRoot().toPath().resolve("fat.jar");
+    writeJar(
+        fat,
+        "BOOT-INF/classes/foo/bar/B.class",
+        classBytes("B"),
+        "BOOT-INF/lib/inner.jar",
+        Files.readAllBytes(inner));
+    Path war = temporaryFolder.getRoot().toPath().resolve("app.war");
+    writeJar(
+        war,
+        "WEB-INF/classes/foo/bar/C.class",
+        classBytes("C"),
+        "WEB-INF/lib/fat.jar",
+        Files.readAllBytes(fat));
+    return war;
+  }
+
+  private static byte[] classBytes(String className) throws IOException {
+    return Iterables.getOnlyElement(
+        Compilation.create(AutoSource.builder().setClassName(className).build()).classBytes());
+  }
+
+  // entries alternate between names and contents
+  private static void writeJar(Path jar, Object... entries) throws IOException {
+    try (JarOutputStream jos = new JarOutputStream(Files.newOutputStream(jar))) {
+      for (int i = 0; i < entries.length; i += 2) {
+        jos.putNextEntry(new JarEntry((String) entries[i]));
+        jos.write((byte[]) entries[i + 1]);
+      }
+    }
+  }
+}
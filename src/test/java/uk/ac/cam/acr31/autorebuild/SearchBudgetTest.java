@@ -0,0 +1,56 @@
+/*
+ * Copyright © 2019 Andrew Rice (acr31@cam.ac.uk)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.cam.acr31.autorebuild;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class SearchBudgetTest {
+
+  private static final int CHUNK = 1024;
+
+  // keeps the garbage below from being optimised away
+  private static volatile byte[] sink;
+
+  @Test(timeout = 60_000)
+  public void isExhausted_countsDataKeptThroughYoungCollections() {
+    // ARRANGE
+    Runtime runtime = Runtime.getRuntime();
+    long inUse = runtime.totalMemory() - runtime.freeMemory();
+    long heapBudget = inUse + (160 << 20);
+    SearchBudget budget =
+        SearchBudget.start(SearchOptions.builder().setHeapBudget(heapBudget).build());
+    List<byte[]> retained = new ArrayList<>();
+
+    // ACT
+    // Small arrays start out young, so what is kept only reaches the old generation by surviving
+    // young collections, which the garbage keeps triggering
+    while (!budget.isExhausted() && (long) retained.size() * CHUNK < heapBudget + (128 << 20)) {
+      retained.add(new byte[CHUNK]);
+      sink = new byte[16 * CHUNK];
+    }
+
+    // ASSERT
+    assertThat(budget.stopReason()).isEqualTo(SearchResult.StopReason.HEAP_BUDGET);
+    assertThat(retained).isNotEmpty();
+  }
+}
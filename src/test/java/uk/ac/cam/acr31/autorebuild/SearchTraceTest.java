@@ -0,0 +1,94 @@
+/*
+ * Copyright © 2019 Andrew Rice (acr31@cam.ac.uk)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.cam.acr31.autorebuild;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import uk.ac.cam.acr31.autorebuild.clazzinfo.Identifier;
+import uk.ac.cam.acr31.autorebuild.testing.AutoSource;
+import uk.ac.cam.acr31.autorebuild.testing.Compilation;
+
+@RunWith(JUnit4.class)
+public class SearchTraceTest {
+
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @Test
+  public void replay_reconstructsSearch() throws IOException {
+    // ARRANGE
+    AutoSource c = AutoSource.builder().setClassName("C").addDeclared("h").build();
+    AutoSource b =
+        AutoSource.builder().setClassName("B").addDeclared("g").addReferenced("C", "h").build();
+    AutoSource a =
+        AutoSource.builder()
+            .setClassName("A")
+            .addReferenced("B", "g")
+            .addReferenced("D", "missing")
+            .build();
+    AutoSource d = AutoSource.builder().setClassName("D").addDeclared("missing").build();
+    Compilation compilation = Compilation.create(a, b, c, d);
+    OriginalProject originalProject =
+        OriginalProject.builder()
+            .addSourceFile(compilation.sourceFile(a))
+            .addClassFiles(compilation.classFiles(a))
+            .addClassFiles(compilation.classFiles(b))
+            .addClassFiles(compilation.classFiles(c))
+            .build();
+    Path trace = temporaryFolder.getRoot().toPath().resolve("search.trace");
+
+    // ACT
+    SearchResult result =
+        Searcher.search(
+            originalProject,
+            new StandardLibrary(),
+            SearchOptions.builder().setTrace(trace).build());
+    TraceReplay.Report report = TraceReplay.replay(trace);
+
+    // ASSERT
+    assertThat(report.finalVersions()).isEqualTo((long) result.repository().classes().size());
+    assertThat(report.unresolvable())
+        .isEqualTo((long) result.repository().unresolvable().size());
+    assertThat(report.thrashing()).isEmpty();
+  }
+
+  @Test
+  public void trace_keepsEveryEvent_whenRingWrapsAround() throws IOException {
+    // ARRANGE
+    Path path = temporaryFolder.getRoot().toPath().resolve("wrapped.trace");
+    int events = 100_000;
+
+    // ACT
+    try (OutputStream out = Files.newOutputStream(path);
+        SearchTrace trace = SearchTrace.create(out, 64)) {
+      for (int i = 0; i < events; i++) {
+        trace.unresolvable(Identifier.create("foo/bar/A", "f" + (i % 100) + "()V"));
+      }
+    }
+    TraceReplay.Report report = TraceReplay.replay(path);
+
+    // ASSERT
+    assertThat(report.unresolvable()).isEqualTo((long) events);
+  }
+}
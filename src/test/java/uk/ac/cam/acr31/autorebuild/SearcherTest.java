@@ -17,15 +17,23 @@ package uk.ac.cam.acr31.autorebuild;
 
 import static com.google.common.truth.Truth.assertThat;
 
+import java.time.Duration;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
+import uk.ac.cam.acr31.autorebuild.clazzinfo.Identifier;
+import uk.ac.cam.acr31.autorebuild.metrics.Counter;
+import uk.ac.cam.acr31.autorebuild.metrics.Metrics;
+import uk.ac.cam.acr31.autorebuild.metrics.Timer;
 import uk.ac.cam.acr31.autorebuild.testing.AutoSource;
 import uk.ac.cam.acr31.autorebuild.testing.Compilation;
 
 @RunWith(JUnit4.class)
 public class SearcherTest {
 
+  private static final Timer PROVIDES = Metrics.global().timer("search_provides", "");
+  private static final Counter ITERATIONS = Metrics.global().counter("search_iterations", "");
+
   @Test
   public void findsMissingDirectSymbol() {
     // ARRANGE
@@ -136,4 +144,140 @@ public class SearcherTest {
     // ASSERT
     assertThat(repository.classes()).containsAllIn(compilation.classFiles());
   }
+
+  @Test
+  public void replaysPreviousSolution() {
+    // ARRANGE
+    AutoSource aWithF = AutoSource.builder().setClassName("A").addDeclared("f").build();
+    AutoSource aWithoutF = AutoSource.builder().setClassName("A").build();
+    AutoSource b = AutoSource.builder().setClassName("B").addReferenced("A", "f").build();
+
+    Compilation compilation1 = Compilation.create(aWithF, b);
+    Compilation compilation2 = Compilation.create(aWithoutF);
+
+    OriginalProject originalProject =
+        OriginalProject.builder()
+            .addSourceFile(compilation1.sourceFile(b))
+            .addClassFiles(compilation1.classFiles())
+            .addClassFiles(compilation2.classFiles())
+            .build();
+    long providesBefore = PROVIDES.count();
+    Solution previous = Solution.of(Searcher.search(originalProject));
+    long freshProvides = PROVIDES.count() - providesBefore;
+
+    // ACT
+    providesBefore = PROVIDES.count();
+    long iterationsBefore = ITERATIONS.get();
+    Repository repository =
+        Searcher.search(
+            originalProject, SearchOptions.builder().setPreviousSolution(previous).build());
+
+    // ASSERT
+    assertThat(repository.classes()).containsExactlyElementsIn(compilation1.classFiles());
+    assertThat(Solution.of(repository)).isEqualTo(previous);
+    // the replayed classes leave nothing to look for
+    assertThat(freshProvides).isGreaterThan(0L);
+    assertThat(PROVIDES.count()).isEqualTo(providesBefore);
+    assertThat(ITERATIONS.get()).isEqualTo(iterationsBefore);
+  }
+
+  @Test
+  public void replaysPreviousSolution_searchesChangedReferences() {
+    // ARRANGE
+    AutoSource aWithF = AutoSource.builder().setClassName("A").addDeclared("f").build();
+    AutoSource aWithoutF = AutoSource.builder().setClassName("A").build();
+    AutoSource b = AutoSource.builder().setClassName("B").addReferenced("A", "f").build();
+    AutoSource c = AutoSource.builder().setClassName("C").addDeclared("g").build();
+    AutoSource changedB =
+        AutoSource.builder()
+            .setClassName("B")
+            .addReferenced("A", "f")
+            .addReferenced("C", "g")
+            .build();
+
+    Compilation compilation1 = Compilation.create(aWithF, b);
+    Compilation compilation2 = Compilation.create(aWithoutF);
+    Compilation compilation3 = Compilation.create(aWithF, changedB, c);
+
+    OriginalProject before =
+        OriginalProject.builder()
+            .addSourceFile(compilation1.sourceFile(b))
+            .addClassFiles(compilation1.classFiles())
+            .addClassFiles(compilation2.classFiles())
+            .build();
+    Solution previous = Solution.of(Searcher.search(before));
+
+    OriginalProject after =
+        OriginalProject.builder()
+            .addSourceFile(compilation3.sourceFile(changedB))
+            .addClassFiles(compilation3.classFiles())
+            .addClassFiles(compilation2.classFiles())
+            .build();
+
+    // ACT
+    long providesBefore = PROVIDES.count();
+    Repository repository =
+        Searcher.search(after, SearchOptions.builder().setPreviousSolution(previous).build());
+
+    // ASSERT
+    assertThat(repository.classes()).containsExactlyElementsIn(compilation3.classFiles());
+    assertThat(repository.isSatisfied()).isTrue();
+    // only the new reference to C is searched for, while A comes from the previous solution
+    assertThat(PROVIDES.count()).isEqualTo(providesBefore + 1);
+  }
+
+  @Test
+  public void search_stopsWhenIterationBudgetRunsOut() {
+    // ARRANGE
+    AutoSource a = AutoSource.builder().setClassName("A").addDeclared("f").build();
+    AutoSource b = AutoSource.builder().setClassName("B").addReferenced("A", "f").build();
+    Compilation compilation = Compilation.create(a, b);
+    OriginalProject originalProject =
+        OriginalProject.builder()
+            .addSourceFile(compilation.sourceFile(b))
+            .addClassFiles(compilation.classFiles())
+            .build();
+
+    // ACT
+    SearchResult result =
+        Searcher.search(
+            originalProject,
+            new StandardLibrary(),
+            SearchOptions.builder().setIterationBudget(0).build());
+
+    // ASSERT
+    assertThat(result.stopReason()).isEqualTo(SearchResult.StopReason.ITERATION_BUDGET);
+    assertThat(result.repository().classes())
+        .containsExactlyElementsIn(compilation.classFiles(b));
+    assertThat(result.remaining()).contains(Identifier.create("foo/bar/A", "f()V"));
+  }
+
+  @Test
+  public void search_completesWithinBudgets() {
+    // ARRANGE
+    AutoSource a = AutoSource.builder().setClassName("A").addDeclared("f").build();
+    AutoSource b = AutoSource.builder().setClassName("B").addReferenced("A", "f").build();
+    Compilation compilation = Compilation.create(a, b);
+    OriginalProject originalProject =
+        OriginalProject.builder()
+            .addSourceFile(compilation.sourceFile(b))
+            .addClassFiles(compilation.classFiles())
+            .build();
+
+    // ACT
+    SearchResult result =
+        Searcher.search(
+            originalProject,
+            new StandardLibrary(),
+            SearchOptions.builder()
+                .setTimeBudget(Duration.ofMinutes(1))
+                .setIterationBudget(1000)
+                .setHeapBudget(Long.MAX_VALUE)
+                .build());
+
+    // ASSERT
+    assertThat(result.isComplete()).isTrue();
+    assertThat(result.repository().classes()).containsExactlyElementsIn(compilation.classFiles());
+    assertThat(result.remaining()).isEmpty();
+  }
 }
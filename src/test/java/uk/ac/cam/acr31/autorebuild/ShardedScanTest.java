@@ -0,0 +1,81 @@
+/*
+ * Copyright © 2019 Andrew Rice (acr31@cam.ac.uk)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.cam.acr31.autorebuild;
+
+import static com.google.common.collect.ImmutableSet.toImmutableSet;
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import uk.ac.cam.acr31.autorebuild.clazzinfo.ClassFile;
+import uk.ac.cam.acr31.autorebuild.testing.AutoSource;
+import uk.ac.cam.acr31.autorebuild.testing.Compilation;
+
+@RunWith(JUnit4.class)
+public class ShardedScanTest {
+
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @Test
+  public void load_matchesSingleProcessScan() throws IOException {
+    // ARRANGE
+    AutoSource a = AutoSource.builder().setClassName("A").addDeclared("f").build();
+    AutoSource b = AutoSource.builder().setClassName("B").addReferenced("A", "f").build();
+    AutoSource c = AutoSource.builder().setClassName("C").build();
+    Path root = temporaryFolder.getRoot().toPath();
+    Path source = root.resolve("src/foo/bar/B.java");
+    Files.createDirectories(source.getParent());
+    Files.write(source, b.toString().getBytes(StandardCharsets.UTF_8));
+    Compilation.create(a, b).writeClasses(root.resolve("classes"));
+    Compilation.create(a).writeJar(root.resolve("a.jar"));
+    Compilation.create(c).writeJar(root.resolve("c.jar"));
+
+    // ACT
+    OriginalProject sharded = ShardedScan.load(root, 2, ScanOptions.defaults());
+
+    // ASSERT
+    OriginalProject expected = OriginalProject.load(root);
+    assertThat(sharded.sourceFiles()).containsExactlyElementsIn(expected.sourceFiles());
+    assertThat(sharded.classFiles().stream().map(ClassFile::digest).collect(toImmutableSet()))
+        .containsExactlyElementsIn(
+            expected.classFiles().stream().map(ClassFile::digest).collect(toImmutableSet()));
+  }
+
+  @Test
+  public void partition_balancesBySize() throws IOException {
+    // ARRANGE
+    Path root = temporaryFolder.getRoot().toPath();
+    Path large = Files.write(root.resolve("large"), new byte[100]);
+    Path medium = Files.write(root.resolve("medium"), new byte[60]);
+    Path small = Files.write(root.resolve("small"), new byte[50]);
+
+    // ACT
+    ImmutableList<List<Path>> shards =
+        ShardedScan.partition(ImmutableList.of(small, medium, large), 2);
+
+    // ASSERT
+    assertThat(shards).containsExactly(ImmutableList.of(large), ImmutableList.of(medium, small));
+  }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright © 2019 Andrew Rice (acr31@cam.ac.uk)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.cam.acr31.autorebuild;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import uk.ac.cam.acr31.autorebuild.testing.AutoSource;
+import uk.ac.cam.acr31.autorebuild.testing.Compilation;
+
+@RunWith(JUnit4.class)
+public class SolutionTest {
+
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @Test
+  public void writeThenRead_roundTrips() throws IOException {
+    // ARRANGE
+    AutoSource a = AutoSource.builder().setClassName("A").addDeclared("f").build();
+    AutoSource b =
+        AutoSource.builder()
+            .setClassName("B")
+            .addReferenced("A", "f")
+            .addReferenced("C", "g")
+            .build();
+    AutoSource c = AutoSource.builder().setClassName("C").addDeclared("g").build();
+    Compilation compilation = Compilation.create(a, b, c);
+    OriginalProject originalProject =
+        OriginalProject.builder()
+            .addSourceFile(compilation.sourceFile(b))
+            .addClassFiles(compilation.classFiles(a))
+            .addClassFiles(compilation.classFiles(b))
+            .build();
+    Solution solution = Solution.of(Searcher.search(originalProject));
+    Path path = temporaryFolder.getRoot().toPath().resolve("solution");
+
+    // ACT
+    solution.write(path);
+    Solution read = Solution.read(path);
+
+    // ASSERT
+    assertThat(read).isEqualTo(solution);
+    assertThat(read.unresolvable()).isNotEmpty();
+  }
+}
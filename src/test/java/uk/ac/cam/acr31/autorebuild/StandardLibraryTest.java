@@ -0,0 +1,72 @@
+/*
+ * Copyright © 2019 Andrew Rice (acr31@cam.ac.uk)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.cam.acr31.autorebuild;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import uk.ac.cam.acr31.autorebuild.clazzinfo.Identifier;
+import uk.ac.cam.acr31.autorebuild.metrics.Counter;
+import uk.ac.cam.acr31.autorebuild.metrics.Metrics;
+
+@RunWith(JUnit4.class)
+public class StandardLibraryTest {
+
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @Test
+  public void provides_findsInheritedMember() {
+    // ARRANGE
+    StandardLibrary standardLibrary = new StandardLibrary();
+    Identifier getClass = Identifier.create("java/lang/String", "getClass()Ljava/lang/Class;");
+    Identifier nope = Identifier.create("java/lang/String", "nope()V");
+
+    // ACT
+    boolean inherited = standardLibrary.provides(getClass);
+    boolean missing = standardLibrary.provides(nope);
+
+    // ASSERT
+    assertThat(inherited).isTrue();
+    assertThat(missing).isFalse();
+  }
+
+  @Test
+  public void readProvidesCache_servesPreviousResults() throws IOException {
+    // ARRANGE
+    Identifier missing = Identifier.create("java/lang/String", "nope()V");
+    StandardLibrary first = new StandardLibrary();
+    first.provides(missing);
+    Path path = temporaryFolder.getRoot().toPath().resolve("cache");
+    first.writeProvidesCache(path);
+    StandardLibrary second = new StandardLibrary();
+    Counter hits = Metrics.global().counter("stdlib_provides_hits", "");
+    long before = hits.get();
+
+    // ACT
+    second.readProvidesCache(path);
+    boolean result = second.provides(missing);
+
+    // ASSERT
+    assertThat(result).isFalse();
+    assertThat(hits.get()).isEqualTo(before + 1);
+  }
+}
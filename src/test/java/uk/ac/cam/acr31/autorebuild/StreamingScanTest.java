@@ -0,0 +1,81 @@
+/*
+ * Copyright © 2019 Andrew Rice (acr31@cam.ac.uk)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.cam.acr31.autorebuild;
+
+import static com.google.common.collect.ImmutableSet.toImmutableSet;
+import static com.google.common.truth.Truth.assertThat;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import uk.ac.cam.acr31.autorebuild.clazzinfo.ClassFile;
+import uk.ac.cam.acr31.autorebuild.testing.AutoSource;
+import uk.ac.cam.acr31.autorebuild.testing.Compilation;
+
+@RunWith(JUnit4.class)
+public class StreamingScanTest {
+
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private final ExecutorService executor = Executors.newFixedThreadPool(2);
+
+  @After
+  public void shutdown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void findsMissingSymbolInJar() throws IOException {
+    // ARRANGE
+    AutoSource aWithF = AutoSource.builder().setClassName("A").addDeclared("f").build();
+    AutoSource aWithoutF = AutoSource.builder().setClassName("A").build();
+    AutoSource b = AutoSource.builder().setClassName("B").addReferenced("A", "f").build();
+
+    Compilation compilation1 = Compilation.create(aWithF, b);
+    Compilation compilation2 = Compilation.create(aWithoutF);
+    Compilation compilation3 = Compilation.create(aWithF);
+
+    Path root = temporaryFolder.getRoot().toPath();
+    Path source = root.resolve("src/foo/bar/B.java");
+    Files.createDirectories(source.getParent());
+    Files.write(source, b.toString().getBytes(StandardCharsets.UTF_8));
+    Compilation.create(b, aWithF).writeClasses(root.resolve("classes"));
+    Files.delete(root.resolve("classes/foo/bar/A.class"));
+    compilation2.writeJar(root.resolve("without.jar"));
+    compilation3.writeJar(root.resolve("with.jar"));
+
+    // ACT
+    StreamingScan scan =
+        StreamingScan.start(root, new ClassPathCache(), ScanOptions.defaults(), executor);
+    Repository repository =
+        Searcher.search(scan, new StandardLibrary(), SearchOptions.defaults()).repository();
+
+    // ASSERT
+    assertThat(repository.classes().stream().map(ClassFile::digest).collect(toImmutableSet()))
+        .containsExactlyElementsIn(
+            compilation1.classFiles().stream().map(ClassFile::digest).collect(toImmutableSet()));
+    assertThat(scan.await().classFiles()).hasSize(3);
+  }
+}
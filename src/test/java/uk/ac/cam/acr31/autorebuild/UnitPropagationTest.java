@@ -0,0 +1,138 @@
+/*
+ * Copyright © 2019 Andrew Rice (acr31@cam.ac.uk)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.cam.acr31.autorebuild;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+import java.util.Optional;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import uk.ac.cam.acr31.autorebuild.clazzinfo.ClassFile;
+import uk.ac.cam.acr31.autorebuild.clazzinfo.Identifier;
+import uk.ac.cam.acr31.autorebuild.testing.AutoSource;
+import uk.ac.cam.acr31.autorebuild.testing.Compilation;
+
+@RunWith(JUnit4.class)
+public class UnitPropagationTest {
+
+  @Test
+  public void propagate_addsChainOfSingleVersions() {
+    // ARRANGE
+    AutoSource c = AutoSource.builder().setClassName("C").addDeclared("h").build();
+    AutoSource b =
+        AutoSource.builder().setClassName("B").addDeclared("g").addReferenced("C", "h").build();
+    AutoSource a = AutoSource.builder().setClassName("A").addReferenced("B", "g").build();
+    Compilation compilation = Compilation.create(a, b, c);
+
+    StandardLibrary standardLibrary = new StandardLibrary();
+    ClassFileStore candidates = new ClassFileStore(standardLibrary);
+    compilation.classFiles().forEach(candidates::add);
+    Repository repository = new Repository(standardLibrary);
+    repository.addClassFiles(compilation.classFiles(a));
+    UnitPropagation propagation =
+        new UnitPropagation(
+            repository,
+            new Providers(candidates, standardLibrary),
+            Optional.empty(),
+            SearchBudget.start(SearchOptions.defaults()));
+
+    // ACT
+    int settled = propagation.propagate();
+
+    // ASSERT
+    assertThat(settled).isEqualTo(2);
+    assertThat(repository.classes()).containsExactlyElementsIn(compilation.classFiles());
+    assertThat(repository.isSatisfied()).isTrue();
+  }
+
+  @Test
+  public void propagate_leavesChoiceOfVersions() {
+    // ARRANGE
+    AutoSource b1 = AutoSource.builder().setClassName("B").addDeclared("g").build();
+    AutoSource b2 =
+        AutoSource.builder().setClassName("B").addDeclared("g").addDeclared("h").build();
+    AutoSource a = AutoSource.builder().setClassName("A").addReferenced("B", "g").build();
+    Compilation compilation1 = Compilation.create(a, b1);
+    Compilation compilation2 = Compilation.create(b2);
+
+    StandardLibrary standardLibrary = new StandardLibrary();
+    ClassFileStore candidates = new ClassFileStore(standardLibrary);
+    compilation1.classFiles().forEach(candidates::add);
+    compilation2.classFiles().forEach(candidates::add);
+    ClassFile generated = Iterables.getOnlyElement(compilation1.classFiles(a));
+    Repository repository = new Repository(standardLibrary);
+    repository.addClassFile(generated);
+    UnitPropagation propagation =
+        new UnitPropagation(
+            repository,
+            new Providers(candidates, standardLibrary),
+            Optional.empty(),
+            SearchBudget.start(SearchOptions.defaults()));
+
+    // ACT
+    int settled = propagation.propagate();
+
+    // ASSERT
+    assertThat(settled).isEqualTo(0);
+    assertThat(repository.classes()).containsExactly(generated);
+    assertThat(repository.unresolvedIdentifiers()).contains(Identifier.create("foo/bar/B", "g()V"));
+  }
+
+  @Test
+  public void search_keepsGreedyChoiceOfVersions() {
+    // ARRANGE
+    AutoSource o = AutoSource.builder().setClassName("O").addDeclared("f").addDeclared("g").build();
+    AutoSource o1 = AutoSource.builder().setClassName("O").addDeclared("f").build();
+    AutoSource o2 = AutoSource.builder().setClassName("O").addDeclared("g").build();
+    AutoSource b =
+        AutoSource.builder().setClassName("B").addDeclared("b").addReferenced("O", "f").build();
+    AutoSource a =
+        AutoSource.builder().setClassName("A").addDeclared("a").addReferenced("B", "b").build();
+    AutoSource generated =
+        AutoSource.builder()
+            .setClassName("G")
+            .addReferenced("A", "a")
+            .addReferenced("O", "g")
+            .build();
+    Compilation compilation = Compilation.create(generated, a, b, o);
+    Compilation compilation1 = Compilation.create(o1);
+    Compilation compilation2 = Compilation.create(o2);
+
+    StandardLibrary standardLibrary = new StandardLibrary();
+    ClassFileStore candidates = new ClassFileStore(standardLibrary);
+    compilation.classFiles(a).forEach(candidates::add);
+    compilation.classFiles(b).forEach(candidates::add);
+    compilation1.classFiles().forEach(candidates::add);
+    compilation2.classFiles().forEach(candidates::add);
+
+    // ACT
+    SearchResult result =
+        Searcher.search(
+            ImmutableSet.copyOf(compilation.classFiles(generated)),
+            candidates,
+            standardLibrary,
+            SearchOptions.builder().setIterationBudget(100).build());
+
+    // ASSERT
+    // Greedy reaches O#g before B's reference to O#f and keeps the version of O declaring g.
+    // Forcing A and then B ahead of the search would have settled on the other version instead.
+    assertThat(result.repository().classes()).containsAllIn(compilation2.classFiles());
+    assertThat(result.remaining()).containsExactly(Identifier.create("foo/bar/O", "f()V"));
+  }
+}
@@ -88,4 +88,24 @@ public class DefinitionTest {
     // ASSERT
     assertThat(classFile.declares("myField"));
   }
+
+  @Test
+  public void undeclaredName_isNotFound() throws IOException {
+    // ARRANGE
+    JavaFileObject sourceFile =
+        JavaFileObjects.forSourceLines(
+            "foo.bar.Test", //
+            "package foo.bar;",
+            "public class Test {",
+            "  int myField;",
+            "}");
+    Compilation compilation = javac().compile(sourceFile);
+    JavaFileObject output = Iterables.getOnlyElement(compilation.generatedFiles());
+
+    // ACT
+    ClassFile classFile = ClassFile.create(output.getName(), output.openInputStream());
+
+    // ASSERT
+    assertThat(classFile.declares("otherField")).isFalse();
+  }
 }
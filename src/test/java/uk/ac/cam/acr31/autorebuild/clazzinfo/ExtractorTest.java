@@ -0,0 +1,80 @@
+/*
+ * Copyright © 2019 Andrew Rice (acr31@cam.ac.uk)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.cam.acr31.autorebuild.clazzinfo;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.testing.compile.Compiler.javac;
+
+import com.google.common.collect.ImmutableList;
+import com.google.testing.compile.Compilation;
+import com.google.testing.compile.JavaFileObjects;
+import java.io.IOException;
+import javax.tools.JavaFileObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class ExtractorTest {
+
+  @Test
+  public void constantPool_matchesVisitor() throws IOException {
+    // ARRANGE
+    JavaFileObject sourceFile =
+        JavaFileObjects.forSourceLines(
+            "foo.bar.Test", //
+            "package foo.bar;",
+            "import java.lang.annotation.*;",
+            "@Retention(RetentionPolicy.RUNTIME)",
+            "@Target({ElementType.TYPE_USE, ElementType.METHOD,",
+            "    ElementType.PARAMETER, ElementType.FIELD})",
+            "@interface Tag { Thread.State state() default Thread.State.NEW; }",
+            "@Deprecated",
+            "public class Test<T extends Comparable<T>> implements Runnable {",
+            "  @Tag(state = Thread.State.BLOCKED) private java.util.List<String> names;",
+            "  @Tag public void run() {",
+            "    Runnable r = () -> System.out.println(names.size());",
+            "    int[][] grid = new int[2][3];",
+            "    String[][] words = new String[2][3];",
+            "    Object o = words.clone();",
+            "    try {",
+            "      switch (grid.length) { case 1: case 7: r.run(); break; default: }",
+            "      switch (grid.length) { case 1: case 70000: r.run(); break; default: }",
+            "      java.util.function.Supplier<Object> s = Object::new;",
+            "      @Tag Object local = (@Tag Object) s.get();",
+            "    } catch (IllegalStateException | java.io.UncheckedIOException e) {",
+            "      throw new Error(e);",
+            "    }",
+            "  }",
+            "  void annotated(@Tag(state = Thread.State.WAITING) int x) {}",
+            "  class Inner {}",
+            "}");
+    Compilation compilation = javac().withOptions("-g").compile(sourceFile);
+    ImmutableList<JavaFileObject> outputs = compilation.generatedFiles();
+
+    // ACT
+    for (JavaFileObject output : outputs) {
+      ClassFile visitor =
+          ClassFile.create(Extractor.VISITOR, output.getName(), output.openInputStream());
+      ClassFile constantPool =
+          ClassFile.create(Extractor.CONSTANT_POOL, output.getName(), output.openInputStream());
+
+      // ASSERT
+      assertThat(constantPool).isEqualTo(visitor);
+    }
+    assertThat(outputs).hasSize(3);
+  }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright © 2019 Andrew Rice (acr31@cam.ac.uk)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.cam.acr31.autorebuild.clazzinfo;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.Iterables;
+import com.sun.management.ThreadMXBean;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import uk.ac.cam.acr31.autorebuild.testing.AutoSource;
+import uk.ac.cam.acr31.autorebuild.testing.Compilation;
+
+// Reports the bytes allocated per parsed class for a method-heavy class which references the same
+// few members many times over
+@RunWith(JUnit4.class)
+public class ParseAllocationTest {
+
+  private static final int WARMUP = 500;
+  private static final int ITERATIONS = 2000;
+
+  @Test
+  public void parse_reportsAllocatedBytesPerClass() throws IOException {
+    // ARRANGE
+    List<String> lines = new ArrayList<>();
+    lines.add("package foo.bar;");
+    lines.add("public class Heavy {");
+    lines.add("  private int count;");
+    for (int i = 0; i < 50; i++) {
+      lines.add("  String method" + i + "(StringBuilder b, java.util.List<String> l) {");
+      for (int j = 0; j < 10; j++) {
+        lines.add("    b.append(l.get(" + j + ")).append(count);");
+        lines.add("    count = Math.max(count, l.size());");
+      }
+      lines.add("    return b.toString();");
+      lines.add("  }");
+    }
+    lines.add("}");
+    AutoSource heavy =
+        AutoSource.builder()
+            .setClassName("Heavy")
+            .setSourceLines(lines.toArray(new String[0]))
+            .build();
+    byte[] bytes = Iterables.getOnlyElement(Compilation.create(heavy).classBytes());
+    ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+    long thread = Thread.currentThread().getId();
+    ClassFile expected = parse(bytes);
+    for (int i = 0; i < WARMUP; i++) {
+      parse(bytes);
+    }
+
+    // ACT
+    long before = threads.getThreadAllocatedBytes(thread);
+    ClassFile last = null;
+    for (int i = 0; i < ITERATIONS; i++) {
+      last = parse(bytes);
+    }
+    long allocated = threads.getThreadAllocatedBytes(thread) - before;
+
+    // ASSERT
+    System.out.printf(
+        "Allocated %d bytes per parsed class (%d bytes of class file)%n",
+        allocated / ITERATIONS, bytes.length);
+    assertThat(last).isEqualTo(expected);
+  }
+
+  private static ClassFile parse(byte[] bytes) throws IOException {
+    return ClassFile.create("Heavy.class", new ByteArrayInputStream(bytes));
+  }
+}
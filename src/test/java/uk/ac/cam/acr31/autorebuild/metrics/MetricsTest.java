@@ -0,0 +1,94 @@
+/*
+ * Copyright © 2019 Andrew Rice (acr31@cam.ac.uk)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.cam.acr31.autorebuild.metrics;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class MetricsTest {
+
+  @Test
+  public void counter_returnsSameInstanceForName() {
+    // ARRANGE
+    Metrics metrics = new Metrics();
+
+    // ACT
+    metrics.counter("files", "Files").add(2);
+    metrics.counter("files", "Files").increment();
+
+    // ASSERT
+    assertThat(metrics.counter("files", "Files").get()).isEqualTo(3);
+  }
+
+  @Test
+  public void toJson_includesCountersAndTimers() {
+    // ARRANGE
+    Metrics metrics = new Metrics();
+    metrics.counter("files", "Files").add(2);
+    Timer timer = metrics.timer("parse", "Parse");
+    timer.record(10);
+    timer.record(30);
+
+    // ACT
+    String json = metrics.toJson();
+
+    // ASSERT
+    assertThat(json).contains("\"files\": 2");
+    assertThat(json).contains("\"parse\": {\"count\": 2, \"totalNanos\": 40, \"maxNanos\": 30}");
+  }
+
+  @Test
+  public void toPrometheus_usesPrefixedNames() {
+    // ARRANGE
+    Metrics metrics = new Metrics();
+    metrics.counter("files", "Files").add(2);
+    metrics.timer("parse", "Parse").record(2_000_000_000L);
+
+    // ACT
+    String text = metrics.toPrometheus();
+
+    // ASSERT
+    assertThat(text)
+        .contains("# TYPE autorebuild_files_total counter\n" + "autorebuild_files_total 2\n");
+    assertThat(text).contains("autorebuild_parse_seconds_count 1\n");
+    assertThat(text).contains("autorebuild_parse_seconds_sum 2.0\n");
+  }
+
+  @Test
+  public void since_reportsOnlyLaterValues() {
+    // ARRANGE
+    Metrics metrics = new Metrics();
+    metrics.counter("files", "Files").add(2);
+    metrics.timer("parse", "Parse").record(50);
+    Metrics snapshot = metrics.snapshot();
+    metrics.counter("files", "Files").add(3);
+    metrics.timer("parse", "Parse").record(10);
+    metrics.counter("classes", "Classes").increment();
+
+    // ACT
+    String json = metrics.since(snapshot).toJson();
+
+    // ASSERT
+    assertThat(json).contains("\"files\": 3");
+    assertThat(json).contains("\"classes\": 1");
+    assertThat(json).contains("\"parse\": {\"count\": 1, \"totalNanos\": 10, \"maxNanos\": 10}");
+    assertThat(metrics.toJson()).contains("\"maxNanos\": 50");
+  }
+}